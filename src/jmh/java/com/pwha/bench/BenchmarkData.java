@@ -0,0 +1,16 @@
+package com.pwha.bench;
+
+/**
+ * Deterministic benchmark inputs for the JMH benchmarks.
+ * <p>
+ * Thin adapter over {@link CorpusGenerator}, so the micro-benchmarks and the corpus benchmark
+ * suite measure exactly the same data. The corpus is selected by name (a JMH {@code @Param}).
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {}
+
+    public static byte[] generate(String corpus, int size) {
+        return CorpusGenerator.generate(CorpusGenerator.Corpus.valueOf(corpus), size);
+    }
+}
@@ -0,0 +1,27 @@
+package com.pwha.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Convenience launcher that runs every PWHA benchmark with the GC profiler attached,
+ * so allocation rates ({@code gc.alloc.rate.norm}) are reported next to the timings.
+ * <p>
+ * An optional argument narrows the run with a regular expression (e.g. {@code "BitIO"}).
+ * The shaded jar ({@code java -jar target/benchmarks.jar -prof gc}) gives the same result.
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {}
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "com\\.pwha\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,47 @@
+package com.pwha.core;
+
+import com.pwha.bench.BenchmarkData;
+import com.pwha.io.ByteReader;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.service.FrequencyService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the Tree Construction stage: Super-Tree plus every Sub-Tree,
+ * built from the frequency maps of an analysed corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TreeBuildBenchmark {
+
+    @Param({"ENGLISH", "LOGS", "CSV", "SOURCE", "RANDOM"})
+    public String corpus;
+
+    @Param({"1048576"})
+    public int size;
+
+    private HashMap<Integer, ContextLeaf> frequencyMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        FrequencyService service = new FrequencyService();
+        new ByteReader(service, new ByteArrayInputStream(BenchmarkData.generate(corpus, size))).collectWords();
+        frequencyMap = service.getFrequencyMap();
+    }
+
+    @Benchmark
+    public HNode buildSuperTree() {
+        // Rebuilding is idempotent: each build starts from the untouched frequency maps.
+        return HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(frequencyMap));
+    }
+}
@@ -0,0 +1,96 @@
+package com.pwha.engine;
+
+import com.pwha.bench.BenchmarkData;
+import com.pwha.core.HuffmanStructure;
+import com.pwha.io.BitWriter;
+import com.pwha.io.ByteReader;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.service.FrequencyService;
+import com.pwha.util.SeparatorUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Encoding and Decoding engines on one 1 MB block.
+ * <p>
+ * 1. {@code processGreedyMatch}: the pattern split of every word (context codes excluded).
+ * 2. {@code encodeBlock}: full block encoding (contexts, patterns, separators).
+ * 3. {@code decodeBlock}: end-to-end block decoding through {@code Decoder.decodeContent}.
+ * Throughput in bytes/op can be derived from the {@code size} parameter.
+ * <p>
+ * There is no RANDOM corpus here: its segments are skipped by the analysis and its blocks are
+ * stored without reaching the matcher, so there is nothing to encode or decode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    @Param({"ENGLISH", "LOGS", "CSV", "SOURCE"})
+    public String corpus;
+
+    @Param({"1048576"})
+    public int size;
+
+    private byte[] data;
+    private HashMap<Integer, ContextLeaf> dictionary;
+    private Encoder encoder;
+    private Decoder decoder;
+    private byte[] encodedBlock;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.generate(corpus, size);
+
+        FrequencyService service = new FrequencyService();
+        new ByteReader(service, new ByteArrayInputStream(data), size).collectWords();
+        dictionary = service.getFrequencyMap();
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+
+        encoder = new Encoder(root, dictionary, size, 1);
+        encodedBlock = encoder.encodeBlock(data, data.length);
+
+        // Decode the full payload once: loads the header and warms the lazily built sub-trees.
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        encoder.compress(new ByteArrayInputStream(data), payload, data.length, null);
+        decoder = new Decoder();
+        decoder.decompress(new ByteArrayInputStream(payload.toByteArray()), OutputStream.nullOutputStream(), 1, null);
+    }
+
+    @Benchmark
+    public void processGreedyMatch() throws IOException {
+        BitWriter writer = new BitWriter(OutputStream.nullOutputStream());
+        int start = 0;
+        for(int i = 0; i <= data.length; i++) {
+            if(i == data.length || SeparatorUtils.isSeparator(data[i])) {
+                if(i - start > 1) {
+                    encoder.processGreedyMatch(data, start + 1, i, writer, dictionary.get((int) data[start]));
+                }
+                start = i + 1;
+            }
+        }
+        writer.flush();
+    }
+
+    @Benchmark
+    public byte[] encodeBlock() throws IOException {
+        return encoder.encodeBlock(data, data.length);
+    }
+
+    @Benchmark
+    public void decodeBlock(Blackhole blackhole) throws IOException {
+        blackhole.consume(decoder.decodeBlock(encodedBlock, data.length));
+    }
+}
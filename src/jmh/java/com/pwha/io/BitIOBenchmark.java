@@ -0,0 +1,67 @@
+package com.pwha.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks for the bit level I/O used by every encoded symbol.
+ * <p>
+ * {@code writeBits} is measured with a realistic mix of Huffman code lengths (2-20 bits),
+ * {@code readBit} by draining a 1 MB buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitIOBenchmark {
+
+    // Number of codes written per invocation.
+    private static final int CODE_COUNT = 4096;
+
+    private String[] codes;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        codes = new String[CODE_COUNT];
+        for(int i = 0; i < CODE_COUNT; i++) {
+            int length = 2 + random.nextInt(19);
+            StringBuilder sb = new StringBuilder(length);
+            for(int b = 0; b < length; b++) sb.append(random.nextBoolean() ? '1' : '0');
+            codes[i] = sb.toString();
+        }
+
+        encoded = new byte[1 << 20];
+        random.nextBytes(encoded);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CODE_COUNT)
+    public void writeBits() throws IOException {
+        BitWriter writer = new BitWriter(OutputStream.nullOutputStream());
+        for(String code : codes) {
+            writer.writeBits(code);
+        }
+        writer.flush();
+    }
+
+    @Benchmark
+    public void readBit(Blackhole blackhole) throws IOException {
+        BitReader reader = new BitReader(new ByteArrayInputStream(encoded));
+        int bit;
+        int ones = 0;
+        while((bit = reader.readBit()) != -1) {
+            ones += bit;
+        }
+        blackhole.consume(ones);
+    }
+}
@@ -0,0 +1,83 @@
+package com.pwha.service;
+
+import com.pwha.bench.BenchmarkData;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.util.Constant;
+import com.pwha.util.SeparatorUtils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Analysis Phase.
+ * <p>
+ * 1. {@code processWord}: pattern mining over every word of the corpus.
+ * 2. {@code addToFreqMap}: insertion into a single ContextLeaf whose map is kept full,
+ *    so most insertions go through the Space-Saving eviction path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnalysisBenchmark {
+
+    @Param({"ENGLISH", "LOGS", "CSV", "SOURCE", "RANDOM"})
+    public String corpus;
+
+    @Param({"1048576"})
+    public int size;
+
+    private List<byte[]> words;
+    private byte[][] evictionPatterns;
+
+    @Setup
+    public void setUp() {
+        byte[] data = BenchmarkData.generate(corpus, size);
+
+        // Tokenize once, the same way ByteReader does.
+        words = new ArrayList<>();
+        int start = 0;
+        for(int i = 0; i < data.length; i++) {
+            if(SeparatorUtils.isSeparator(data[i])) {
+                if(i > start) words.add(Arrays.copyOfRange(data, start, i));
+                words.add(new byte[]{data[i]});
+                start = i + 1;
+            }
+        }
+        if(start < data.length) words.add(Arrays.copyOfRange(data, start, data.length));
+
+        // Many distinct multi-byte patterns to keep the eviction path busy.
+        Random random = new Random(3);
+        evictionPatterns = new byte[Constant.MAX_PATTERN_AMOUNT * 8][];
+        for(int i = 0; i < evictionPatterns.length; i++) {
+            byte[] pattern = new byte[2 + random.nextInt(Constant.MAX_PATTERN_LENGTH - 1)];
+            random.nextBytes(pattern);
+            evictionPatterns[i] = pattern;
+        }
+    }
+
+    @Benchmark
+    public void processWord(Blackhole blackhole) {
+        FrequencyService service = new FrequencyService();
+        for(byte[] word : words) {
+            service.processWord(word);
+        }
+        blackhole.consume(service.getFrequencyMap());
+    }
+
+    @Benchmark
+    public void addToFreqMapWithEviction(Blackhole blackhole) {
+        ContextLeaf leaf = new ContextLeaf((byte) 't', 1);
+        for(byte[] pattern : evictionPatterns) {
+            leaf.addToFreqMap(pattern);
+        }
+        blackhole.consume(leaf.getPatternCount());
+    }
+}
@@ -1,5 +1,6 @@
 package com.pwha;
 
+import com.pwha.cli.PwhaCli;
 import com.pwha.gui.App;
 
 import javax.swing.*;
@@ -7,6 +8,12 @@ import java.io.IOException;
 
 public class Main {
     public static void main(String[] args) throws IOException, ClassNotFoundException {
+        // With arguments, run the headless CLI (c|d|bench) without initializing Swing.
+        if(args.length > 0){
+            PwhaCli.main(args);
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             try{
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -0,0 +1,274 @@
+package com.pwha.bench;
+
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.CompressionResult;
+import com.pwha.service.CompressionService;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reproducible Corpus Benchmark: PWHA vs. java.util.zip (Deflate).
+ * <p>
+ * For every (corpus, size) pair a deterministic input is generated by {@link CorpusGenerator}
+ * (and cached in the work directory). Then it is compressed and decompressed:
+ * 1. With PWHA, for every combination of maximum pattern length and pattern amount.
+ * 2. With {@link Deflater} at every requested level.
+ * <p>
+ * Each run is verified byte-for-byte and reports ratio, compress/decompress MB/s and peak heap.
+ * Results are written as {@code results.csv} and {@code results.json} so regressions can be tracked.
+ * <pre>
+ *   java -cp target/classes com.pwha.bench.CorpusBenchmark
+ *        [--corpora ENGLISH,LOGS,CSV,SOURCE,RANDOM] [--sizes 1m,16m,256m,1g,4g]
+ *        [--pattern-lengths 4,6,10] [--pattern-amounts 500,2500]
+ *        [--deflate-levels 1,6,9] [--work-dir dir] [--out dir]
+ * </pre>
+ */
+public final class CorpusBenchmark {
+
+    /**
+     * One measured run.
+     *
+     * @param codec           "pwha" or "deflate".
+     * @param settings        Human-readable codec settings (e.g. "len=6 amount=2500" or "level=6").
+     * @param originalBytes   Input size.
+     * @param compressedBytes Output size.
+     * @param compressMBps    Compression throughput (input MB per second).
+     * @param decompressMBps  Decompression throughput (restored MB per second).
+     * @param peakHeapBytes   Peak heap usage observed during the run.
+     */
+    public record Result(Corpus corpus, String codec, String settings, long originalBytes, long compressedBytes,
+                         double compressMBps, double decompressMBps, long peakHeapBytes) {
+
+        public double ratio() {
+            return originalBytes == 0 ? 0 : (double) compressedBytes / originalBytes;
+        }
+    }
+
+    private List<Corpus> corpora = List.of(Corpus.values());
+    private List<Long> sizes = List.of(1L << 20, 16L << 20);
+    private List<Integer> patternLengths = List.of(4, 6, 10);
+    private List<Integer> patternAmounts = List.of(500, 2500);
+    private List<Integer> deflateLevels = List.of(1, 6, 9);
+    private Path workDir = Path.of(System.getProperty("java.io.tmpdir"), "pwha-corpus");
+    private Path outDir = Path.of(".");
+
+    private CorpusBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        CorpusBenchmark benchmark = new CorpusBenchmark();
+        benchmark.parse(args);
+        List<Result> results = benchmark.run();
+        benchmark.writeCsv(results, benchmark.outDir.resolve("results.csv"));
+        benchmark.writeJson(results, benchmark.outDir.resolve("results.json"));
+        System.out.println("Results written to " + benchmark.outDir.toAbsolutePath());
+    }
+
+    private void parse(String[] args) {
+        for(int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            if(value == null) throw new IllegalArgumentException("Missing value for " + args[i]);
+            switch(args[i++]) {
+                case "--corpora" -> corpora = split(value).stream().map(s -> Corpus.valueOf(s.toUpperCase())).toList();
+                case "--sizes" -> sizes = split(value).stream().map(CorpusBenchmark::parseSize).toList();
+                case "--pattern-lengths" -> patternLengths = split(value).stream().map(Integer::parseInt).toList();
+                case "--pattern-amounts" -> patternAmounts = split(value).stream().map(Integer::parseInt).toList();
+                case "--deflate-levels" -> deflateLevels = split(value).stream().map(Integer::parseInt).toList();
+                case "--work-dir" -> workDir = Path.of(value);
+                case "--out" -> outDir = Path.of(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i - 1]);
+            }
+        }
+    }
+
+    private List<Result> run() throws Exception {
+        Files.createDirectories(workDir);
+        Files.createDirectories(outDir);
+        List<Result> results = new ArrayList<>();
+
+        for(Corpus corpus : corpora) {
+            for(long size : sizes) {
+                Path input = corpusFile(corpus, size);
+
+                for(int length : patternLengths) {
+                    for(int amount : patternAmounts) {
+                        CompressionOptions options = CompressionOptions.defaults()
+                                .withMaxPatternLength(length)
+                                .withMaxPatternAmount(amount);
+                        results.add(report(runPwha(corpus, input, options, "len=" + length + " amount=" + amount)));
+                    }
+                }
+                for(int level : deflateLevels) {
+                    results.add(report(runDeflate(corpus, input, level)));
+                }
+            }
+        }
+        return results;
+    }
+
+    // Generates the corpus file once; later runs reuse it (the content is deterministic).
+    private Path corpusFile(Corpus corpus, long size) throws IOException {
+        Path file = workDir.resolve(corpus.name().toLowerCase(Locale.ROOT) + "-" + size + ".dat");
+        if(!Files.exists(file) || Files.size(file) != size) {
+            System.out.println("Generating " + file.getFileName() + "...");
+            try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+                CorpusGenerator.write(corpus, size, out);
+            }
+        }
+        return file;
+    }
+
+    private Result runPwha(Corpus corpus, Path input, CompressionOptions options, String settings) throws Exception {
+        Path compressed = workDir.resolve("run.pwha");
+        Path restored = workDir.resolve("run.out");
+        CompressionService service = new CompressionService();
+
+        resetPeakHeap();
+        CompressionResult result = service.compress(input.toString(), compressed.toString(), options, null);
+        long decompressStart = System.nanoTime();
+        service.decompress(compressed.toString(), restored.toString(), null);
+        long decompressNanos = System.nanoTime() - decompressStart;
+        long peakHeap = peakHeap();
+
+        verify(input, restored);
+        return new Result(corpus, "pwha", settings, result.originalSize(), result.compressedSize(),
+                megabytesPerSecond(result.originalSize(), result.elapsedNanos()),
+                megabytesPerSecond(result.originalSize(), decompressNanos), peakHeap);
+    }
+
+    private Result runDeflate(Corpus corpus, Path input, int level) throws IOException {
+        Path compressed = workDir.resolve("run.deflate");
+        Path restored = workDir.resolve("run.out");
+        byte[] buffer = new byte[1 << 16];
+
+        resetPeakHeap();
+        long compressStart = System.nanoTime();
+        Deflater deflater = new Deflater(level);
+        try(InputStream in = new BufferedInputStream(Files.newInputStream(input), 1 << 16);
+            OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(compressed), 1 << 16), deflater, 1 << 16)) {
+            in.transferTo(out);
+        } finally {
+            deflater.end();
+        }
+        long compressNanos = System.nanoTime() - compressStart;
+
+        long decompressStart = System.nanoTime();
+        try(InputStream in = new InflaterInputStream(
+                new BufferedInputStream(Files.newInputStream(compressed), 1 << 16), new Inflater(), 1 << 16);
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(restored), 1 << 16)) {
+            int n;
+            while((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+        }
+        long decompressNanos = System.nanoTime() - decompressStart;
+        long peakHeap = peakHeap();
+
+        verify(input, restored);
+        long originalBytes = Files.size(input);
+        return new Result(corpus, "deflate", "level=" + level, originalBytes, Files.size(compressed),
+                megabytesPerSecond(originalBytes, compressNanos),
+                megabytesPerSecond(originalBytes, decompressNanos), peakHeap);
+    }
+
+    private static void verify(Path original, Path restored) throws IOException {
+        if(Files.mismatch(original, restored) != -1) {
+            throw new IOException("Round-trip mismatch for " + original);
+        }
+    }
+
+    private static Result report(Result r) {
+        System.out.printf(Locale.ROOT, "%-8s %-10s %-8s %-22s ratio %.4f  c %8.2f MB/s  d %8.2f MB/s  heap %6.1f MB%n",
+                r.corpus(), formatSize(r.originalBytes()), r.codec(), r.settings(), r.ratio(),
+                r.compressMBps(), r.decompressMBps(), r.peakHeapBytes() / 1048576.0);
+        return r;
+    }
+
+    // ---------------------------------------------------------------- Heap measurement
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Sum of the per-pool peaks: an upper bound of the real peak, stable across collectors.
+    private static long peakHeap() {
+        long total = 0;
+        for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if(pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                total += pool.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    // ---------------------------------------------------------------- Output
+
+    private void writeCsv(List<Result> results, Path file) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("corpus,size,codec,settings,compressed,ratio,compress_mbps,decompress_mbps,peak_heap_bytes");
+            for(Result r : results) {
+                out.printf(Locale.ROOT, "%s,%d,%s,%s,%d,%.6f,%.3f,%.3f,%d%n", r.corpus(), r.originalBytes(),
+                        r.codec(), r.settings(), r.compressedBytes(), r.ratio(), r.compressMBps(),
+                        r.decompressMBps(), r.peakHeapBytes());
+            }
+        }
+    }
+
+    private void writeJson(List<Result> results, Path file) throws IOException {
+        try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("[");
+            for(int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.printf(Locale.ROOT, "  {\"corpus\": \"%s\", \"size\": %d, \"codec\": \"%s\", \"settings\": \"%s\", "
+                                + "\"compressed\": %d, \"ratio\": %.6f, \"compressMBps\": %.3f, "
+                                + "\"decompressMBps\": %.3f, \"peakHeapBytes\": %d}%s%n",
+                        r.corpus(), r.originalBytes(), r.codec(), r.settings(), r.compressedBytes(), r.ratio(),
+                        r.compressMBps(), r.decompressMBps(), r.peakHeapBytes(), i + 1 < results.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    // ---------------------------------------------------------------- Helpers
+
+    private static List<String> split(String value) {
+        return List.of(value.split(","));
+    }
+
+    // Parses sizes such as "1048576", "64k", "16m" or "4g".
+    private static long parseSize(String value) {
+        String lower = value.trim().toLowerCase(Locale.ROOT);
+        long multiplier = switch(lower.charAt(lower.length() - 1)) {
+            case 'k' -> 1L << 10;
+            case 'm' -> 1L << 20;
+            case 'g' -> 1L << 30;
+            default -> 1;
+        };
+        if(multiplier != 1) lower = lower.substring(0, lower.length() - 1);
+        return Long.parseLong(lower) * multiplier;
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : (bytes / 1048576.0) / (nanos / 1e9);
+    }
+
+    private static String formatSize(long v) {
+        if (v < 1024) return v + " B";
+        int z = (63 - Long.numberOfLeadingZeros(v)) / 10;
+        return String.format(Locale.ROOT, "%.1f %sB", (double)v / (1L << (z*10)), " KMGTPE".charAt(z));
+    }
+}
@@ -0,0 +1,220 @@
+package com.pwha.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Deterministic Synthetic Corpus Generator.
+ * <p>
+ * Produces reproducible benchmark inputs of any size (up to several GB) by streaming records to
+ * an OutputStream. Every corpus uses a fixed seed, so the same (corpus, size) pair always yields
+ * exactly the same bytes on every machine, and results can be tracked over time.
+ * <p>
+ * Corpora:
+ * 1. **ENGLISH:** English-like text, words drawn from a Zipfian distribution (s = 1.1).
+ * 2. **LOGS:** Structured application log lines (timestamp, level, component, message, fields).
+ * 3. **CSV:** Tabular records with ids, names, cities, amounts and dates.
+ * 4. **SOURCE:** Java-like source code with indentation, keywords and identifiers.
+ * 5. **RANDOM:** Uniform random bytes (incompressible worst case).
+ */
+public final class CorpusGenerator {
+
+    public enum Corpus { ENGLISH, LOGS, CSV, SOURCE, RANDOM }
+
+    // Base vocabulary; the Zipfian tail is extended with synthetic words built from syllables.
+    private static final String[] COMMON_WORDS = {
+            "the", "of", "and", "to", "in", "a", "is", "that", "for", "it", "as", "was", "with", "be", "by",
+            "on", "not", "he", "this", "are", "or", "his", "from", "at", "which", "but", "have", "an", "had",
+            "they", "you", "were", "their", "one", "all", "we", "can", "her", "has", "there", "been", "if",
+            "more", "when", "will", "would", "who", "so", "no", "compression", "pattern", "context", "tree",
+            "huffman", "frequency", "symbol", "encoder", "decoder", "between", "international", "information"
+    };
+    private static final String[] SYLLABLES = {
+            "ka", "ter", "in", "or", "ma", "tion", "re", "con", "de", "al", "is", "ent", "ing", "pro", "ly",
+            "com", "ver", "st", "an", "ex", "per", "un", "ous", "ble"
+    };
+    private static final int VOCABULARY_SIZE = 20_000;
+
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final String[] COMPONENTS = {"http.server", "db.pool", "auth.service", "cache", "scheduler"};
+    private static final String[] MESSAGES = {
+            "request completed", "connection acquired", "token validated", "cache miss for key",
+            "job finished", "slow query detected", "user logged in", "retrying operation"
+    };
+    private static final String[] FIRST_NAMES = {"Ali", "Ayse", "John", "Maria", "Mehmet", "Elif", "Chen", "Anna"};
+    private static final String[] CITIES = {"Istanbul", "Ankara", "Izmir", "Berlin", "London", "Paris", "Tokyo"};
+    private static final String[] TYPES = {"int", "long", "String", "byte[]", "boolean", "double", "List<String>"};
+    private static final String[] IDENTIFIERS = {
+            "count", "index", "buffer", "result", "context", "pattern", "frequency", "node", "value", "size",
+            "offset", "length", "reader", "writer", "map", "queue", "tree", "code", "data", "total"
+    };
+
+    // Lazily built Zipfian vocabulary and its cumulative distribution.
+    private static String[] vocabulary;
+    private static double[] cumulative;
+
+    private CorpusGenerator() {}
+
+    /**
+     * Writes exactly {@code size} bytes of the given corpus to the stream.
+     */
+    public static void write(Corpus corpus, long size, OutputStream out) throws IOException {
+        Random random = new Random(seedOf(corpus));
+        StringBuilder record = new StringBuilder(256);
+        RecordState state = new RecordState();
+        byte[] randomChunk = new byte[64 * 1024];
+        long written = 0;
+
+        while(written < size) {
+            byte[] chunk;
+            if(corpus == Corpus.RANDOM) {
+                random.nextBytes(randomChunk);
+                chunk = randomChunk;
+            } else {
+                record.setLength(0);
+                appendRecord(corpus, random, record, state);
+                chunk = record.toString().getBytes(StandardCharsets.UTF_8);
+            }
+
+            int length = (int) Math.min(chunk.length, size - written);
+            out.write(chunk, 0, length);
+            written += length;
+        }
+    }
+
+    /**
+     * Generates a corpus in memory. Intended for small sizes (micro-benchmarks).
+     */
+    public static byte[] generate(Corpus corpus, int size) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        try {
+            write(corpus, size, out);
+        } catch(IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream never throws
+        }
+        return out.toByteArray();
+    }
+
+    private static long seedOf(Corpus corpus) {
+        return 0x5057_4841L + corpus.ordinal();
+    }
+
+    // Mutable state carried between records (timestamps, row ids, indentation...).
+    private static final class RecordState {
+        long timestamp = 1_700_000_000_000L;
+        long rowId = 0;
+        int depth = 0;
+        int wordsInSentence = 0;
+    }
+
+    private static void appendRecord(Corpus corpus, Random random, StringBuilder sb, RecordState state) {
+        switch(corpus) {
+            case ENGLISH -> appendSentenceFragment(random, sb, state);
+            case LOGS -> appendLogLine(random, sb, state);
+            case CSV -> appendCsvRow(random, sb, state);
+            case SOURCE -> appendSourceLine(random, sb, state);
+            case RANDOM -> throw new IllegalStateException("RANDOM is generated in bulk");
+        }
+    }
+
+    private static void appendSentenceFragment(Random random, StringBuilder sb, RecordState state) {
+        sb.append(zipfWord(random));
+        state.wordsInSentence++;
+        if(state.wordsInSentence > 8 && random.nextInt(6) == 0) {
+            sb.append(random.nextInt(4) == 0 ? ".\n" : ". ");
+            state.wordsInSentence = 0;
+        } else {
+            sb.append(random.nextInt(12) == 0 ? ", " : " ");
+        }
+    }
+
+    private static void appendLogLine(Random random, StringBuilder sb, RecordState state) {
+        state.timestamp += random.nextInt(500);
+        sb.append(state.timestamp).append(' ')
+          .append(LEVELS[random.nextInt(LEVELS.length)]).append(" [")
+          .append(COMPONENTS[random.nextInt(COMPONENTS.length)]).append("] ")
+          .append(MESSAGES[random.nextInt(MESSAGES.length)])
+          .append(" id=").append(random.nextInt(100_000))
+          .append(" took=").append(random.nextInt(2_000)).append("ms\n");
+    }
+
+    private static void appendCsvRow(Random random, StringBuilder sb, RecordState state) {
+        if(state.rowId == 0) {
+            sb.append("id,name,city,amount,date\n");
+        }
+        state.rowId++;
+        sb.append(state.rowId).append(',')
+          .append(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]).append(',')
+          .append(CITIES[random.nextInt(CITIES.length)]).append(',')
+          .append(random.nextInt(100_000)).append('.').append(random.nextInt(100)).append(',')
+          .append(2020 + random.nextInt(6)).append('-')
+          .append(1 + random.nextInt(12)).append('-')
+          .append(1 + random.nextInt(28)).append('\n');
+    }
+
+    private static void appendSourceLine(Random random, StringBuilder sb, RecordState state) {
+        String indent = "    ".repeat(state.depth + 1);
+        String name = IDENTIFIERS[random.nextInt(IDENTIFIERS.length)];
+        switch(random.nextInt(6)) {
+            case 0 -> {
+                sb.append(indent).append("if(").append(name).append(" > ").append(random.nextInt(100)).append(") {\n");
+                if(state.depth < 4) state.depth++;
+            }
+            case 1 -> {
+                sb.append(indent).append("for(int i = 0; i < ").append(name).append(".length; i++) {\n");
+                if(state.depth < 4) state.depth++;
+            }
+            case 2 -> {
+                if(state.depth > 0) {
+                    state.depth--;
+                    sb.append("    ".repeat(state.depth + 1)).append("}\n");
+                } else {
+                    sb.append("\n    // ").append(zipfWord(random)).append(' ').append(zipfWord(random)).append('\n');
+                }
+            }
+            default -> sb.append(indent).append(TYPES[random.nextInt(TYPES.length)]).append(' ')
+                    .append(name).append(" = ").append(IDENTIFIERS[random.nextInt(IDENTIFIERS.length)])
+                    .append(".get(").append(random.nextInt(10)).append(");\n");
+        }
+    }
+
+    // Draws a word from the Zipfian vocabulary (rank r has probability proportional to 1 / r^1.1).
+    private static String zipfWord(Random random) {
+        ensureVocabulary();
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        if(index < 0) index = -index - 1;
+        return vocabulary[Math.min(index, vocabulary.length - 1)];
+    }
+
+    private static synchronized void ensureVocabulary() {
+        if(vocabulary != null) return;
+
+        Random random = new Random(99);
+        String[] words = new String[VOCABULARY_SIZE];
+        for(int i = 0; i < words.length; i++) {
+            if(i < COMMON_WORDS.length) {
+                words[i] = COMMON_WORDS[i];
+            } else {
+                StringBuilder sb = new StringBuilder();
+                int syllables = 1 + random.nextInt(4);
+                for(int s = 0; s < syllables; s++) sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                words[i] = sb.toString();
+            }
+        }
+
+        double[] cdf = new double[words.length];
+        double sum = 0;
+        for(int i = 0; i < words.length; i++) {
+            sum += 1.0 / Math.pow(i + 1, 1.1);
+            cdf[i] = sum;
+        }
+        for(int i = 0; i < cdf.length; i++) cdf[i] /= sum;
+
+        cumulative = cdf;
+        vocabulary = words;
+    }
+}
@@ -0,0 +1,443 @@
+package com.pwha.cli;
+
+import com.pwha.engine.EntropyCoder;
+import com.pwha.engine.ParseStrategy;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.metrics.PipelineMetrics;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.CompressionResult;
+import com.pwha.service.AutoTuner;
+import com.pwha.service.BatchCompressor;
+import com.pwha.service.CompressionService;
+import com.pwha.tokenizer.Tokenizer;
+import com.pwha.tokenizer.Tokenizers;
+import com.pwha.util.Constant;
+import com.pwha.util.SeparatorSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+
+/**
+ * Headless Command Line Interface.
+ * <p>
+ * Runs the compression pipeline without loading Swing/AWT, so the codec can be used on servers.
+ * <pre>
+ *   pwha c     [options] &lt;input&gt; [output]   Compress a file, or every file under a directory.
+ *   pwha d     [options] &lt;input&gt; [output]   Decompress a file, or every .pwha file under a directory.
+ *   pwha bench [options] &lt;input&gt;            Round-trip a file or directory and report MB/s.
+ * </pre>
+ * Directory inputs switch to batch mode: files are processed concurrently by a
+ * {@link BatchCompressor} ({@code --threads} encoding workers), each file on a single thread.
+ * A single file instead uses the threads for parallel block encoding/decoding.
+ * With {@code --metrics}, per-stage timings are collected, exposed over JMX while the command
+ * runs, and printed at the end.
+ */
+public final class PwhaCli {
+
+    private static final String USAGE = """
+            Usage: pwha <c|d|bench> [options] <input> [output]
+              c       compress a file, or every file under a directory (batch mode)
+              d       decompress a .pwha file, or every .pwha file under a directory
+              bench   compress + decompress to temporary files and report throughput
+            Options:
+              -L, --level LEVEL        fast, default or max (default: default)
+              -l, --pattern-length N   maximum pattern length (overrides the level, default %d)
+              -a, --pattern-amount N   maximum patterns per context (overrides the level, default %d)
+              -t, --threads N          worker threads (default %d)
+              -b, --block-size SIZE    block size, accepts k/m suffixes (default %d)
+              -p, --parse MODE         greedy or optimal (overrides the level)
+              --max-token N            split runs without separators into words of N bytes (default %d)
+              -s, --separators SET     bytes that end a word, e.g. ", \\n" (escapes \\n \\t \\r), "auto" to
+                                       pick them from the input, or "default" for " \\n\\t.,;!?"
+                                       (default: the tokenizer's own)
+              -T, --tokenizer NAME     text, utf8 (no split inside a character), or the separator presets
+                                       log and csv (default: text)
+              --order N                context order: 1 (first symbol) or 2 (first two bytes, rare
+                                       pairs fall back to order 1) (default 1)
+              --phrases                mine frequent runs of tokens (e.g. "of the ") and code each as one symbol
+              --templates              mine log line templates; matching lines only code their variable fields
+              --coder NAME             entropy coder: huffman or rans (fractional bits per symbol) (default: huffman)
+              --off-heap               keep the pattern code tables outside the Java heap while encoding
+              --auto-tune BUDGET       pick the settings by trial runs on samples, so that compression
+                                       fits the time budget (e.g. 500ms, 30s, 5m); single files only
+              --no-preflight           always run the full analysis, even on incompressible inputs
+              -m, --metrics            print per-stage timings and counters (also exposed over JMX)
+            """;
+
+    // Parsed options.
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int blockSize = Constant.DEFAULT_BLOCK_SIZE;
+    private CompressionOptions options = CompressionOptions.defaults();
+    private Duration autoTuneBudget;
+    private boolean preflight = true;
+    private PipelineMetrics metrics;
+    private final List<String> operands = new ArrayList<>();
+
+    private PwhaCli() {}
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Parses the arguments and executes the command.
+     *
+     * @return Process exit code: 0 on success, 1 on failure, 2 on invalid usage.
+     */
+    public static int run(String[] args) {
+        if(args.length == 0) {
+            printUsage();
+            return 2;
+        }
+
+        PwhaCli cli = new PwhaCli();
+        try {
+            cli.parseOptions(args);
+        } catch(IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            printUsage();
+            return 2;
+        }
+
+        if(cli.operands.isEmpty()) {
+            printUsage();
+            return 2;
+        }
+
+        if(cli.metrics != null) {
+            cli.metrics.register("cli");
+        }
+        try {
+            int exitCode = switch(args[0]) {
+                case "c" -> cli.compress();
+                case "d" -> cli.decompress();
+                case "bench" -> cli.bench();
+                default -> {
+                    System.err.println("Unknown command: " + args[0]);
+                    printUsage();
+                    yield 2;
+                }
+            };
+            if(cli.metrics != null && exitCode != 2) {
+                System.out.println();
+                System.out.print(cli.metrics.report());
+            }
+            return exitCode;
+        } catch(Exception e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        } finally {
+            if(cli.metrics != null) {
+                cli.metrics.unregister();
+            }
+        }
+    }
+
+    private void parseOptions(String[] args) {
+        // The level is applied first, so explicit overrides win regardless of their position.
+        CompressionOptions.Level level = CompressionOptions.Level.DEFAULT;
+        Integer patternLength = null, patternAmount = null, tokenLength = null, contextOrder = null;
+        String separators = null;
+        Tokenizer tokenizer = Tokenizers.TEXT;
+        ParseStrategy parseStrategy = null;
+        boolean phrases = false, templates = false, offHeap = false;
+        EntropyCoder.Backend coder = EntropyCoder.Backend.HUFFMAN;
+
+        for(int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            switch(arg) {
+                case "-L", "--level" -> level = CompressionOptions.Level.parse(value(args, ++i));
+                case "-l", "--pattern-length" -> patternLength = positive(arg, value(args, ++i));
+                case "-a", "--pattern-amount" -> patternAmount = positive(arg, value(args, ++i));
+                case "-t", "--threads" -> threads = positive(arg, value(args, ++i));
+                case "-b", "--block-size" -> blockSize = parseSize(value(args, ++i));
+                case "-p", "--parse" -> parseStrategy = parseStrategy(value(args, ++i));
+                case "--max-token" -> tokenLength = positive(arg, value(args, ++i));
+                case "-s", "--separators" -> separators = value(args, ++i);
+                case "-T", "--tokenizer" -> tokenizer = Tokenizers.byName(value(args, ++i));
+                case "--order" -> contextOrder = positive(arg, value(args, ++i));
+                case "--phrases" -> phrases = true;
+                case "--templates" -> templates = true;
+                case "--coder" -> coder = EntropyCoder.Backend.parse(value(args, ++i));
+                case "--off-heap" -> offHeap = true;
+                case "--auto-tune" -> autoTuneBudget = parseDuration(value(args, ++i));
+                case "--no-preflight" -> preflight = false;
+                case "-m", "--metrics" -> metrics = new PipelineMetrics();
+                default -> {
+                    if(arg.startsWith("-")) throw new IllegalArgumentException("Unknown option: " + arg);
+                    operands.add(arg);
+                }
+            }
+        }
+
+        options = CompressionOptions.of(level);
+        if(patternLength != null) options = options.withMaxPatternLength(patternLength);
+        if(patternAmount != null) options = options.withMaxPatternAmount(patternAmount);
+        if(parseStrategy != null) options = options.withParseStrategy(parseStrategy);
+        if(tokenLength != null) options = options.withMaxTokenLength(tokenLength);
+        if(contextOrder != null) options = options.withContextOrder(contextOrder);
+        options = options.withPhrases(phrases).withTemplates(templates).withCoder(coder).withOffHeap(offHeap);
+        // The tokenizer brings its own separators unless they are given explicitly.
+        options = options.withTokenizer(tokenizer);
+        if(separators != null) options = options.withSeparators(separators(separators));
+    }
+
+    // ---------------------------------------------------------------- Commands
+
+    private int compress() throws Exception {
+        Path input = Path.of(operands.get(0));
+        if(Files.isDirectory(input)) {
+            Path output = operands.size() > 1 ? Path.of(operands.get(1)) : Path.of(input + "_pwha");
+            if(autoTuneBudget != null) {
+                System.err.println("--auto-tune applies to single files; using " + options);
+            }
+            return runBatch(input, output, true);
+        }
+
+        String output = operands.size() > 1 ? operands.get(1) : input + ".pwha";
+        if(autoTuneBudget != null) {
+            options = autoTune(input);
+        }
+        CompressionService service = new CompressionService(blockSize, threads, options, preflight, null, listener());
+        CompressionResult result = service.compress(input.toString(), output, null);
+
+        System.out.printf("%s -> %s%n", input, output);
+        System.out.printf("%s -> %s (%.2f%% saved) in %.2f sec, %.2f MB/s%n",
+                formatSize(result.originalSize()), formatSize(result.compressedSize()),
+                result.spaceSavedPercent(), result.elapsedNanos() / 1e9, result.throughputMBps());
+        return 0;
+    }
+
+    private int decompress() throws Exception {
+        Path input = Path.of(operands.get(0));
+        if(Files.isDirectory(input)) {
+            Path output = operands.size() > 1 ? Path.of(operands.get(1)) : Path.of(input + "_decoded");
+            return runBatch(input, output, false);
+        }
+
+        String output = operands.size() > 1 ? operands.get(1) : decodedName(input.toString());
+        long start = System.nanoTime();
+        new CompressionService(blockSize, threads, options, null, listener()).decompress(input.toString(), output, null);
+        long elapsed = System.nanoTime() - start;
+
+        long restored = new File(output).length();
+        System.out.printf("%s -> %s%n", input, output);
+        System.out.printf("%s restored in %.2f sec, %.2f MB/s%n",
+                formatSize(restored), elapsed / 1e9, megabytesPerSecond(restored, elapsed));
+        return 0;
+    }
+
+    /**
+     * Round-trips every input file through temporary files, verifies the restored bytes
+     * and reports compression ratio and throughput of both directions.
+     */
+    private int bench() throws Exception {
+        List<Path> files = listFiles(Path.of(operands.get(0)), false);
+        long totalIn = 0, totalOut = 0, compressNanos = 0, decompressNanos = 0;
+        CompressionService service = new CompressionService(blockSize, threads, options, preflight, null, listener());
+
+        for(Path file : files) {
+            Path compressed = Files.createTempFile("pwha-bench", ".pwha");
+            Path restored = Files.createTempFile("pwha-bench", ".out");
+            try {
+                CompressionOptions fileOptions = autoTuneBudget != null ? autoTune(file) : options;
+                CompressionResult result = service.compress(file.toString(), compressed.toString(), fileOptions, null);
+
+                long start = System.nanoTime();
+                service.decompress(compressed.toString(), restored.toString(), null);
+                decompressNanos += System.nanoTime() - start;
+
+                if(Files.mismatch(file, restored) != -1) {
+                    System.err.println("Round-trip mismatch: " + file);
+                    return 1;
+                }
+                totalIn += result.originalSize();
+                totalOut += result.compressedSize();
+                compressNanos += result.elapsedNanos();
+            } finally {
+                Files.deleteIfExists(compressed);
+                Files.deleteIfExists(restored);
+            }
+        }
+
+        System.out.printf("Files      : %d%n", files.size());
+        System.out.printf("Original   : %s%n", formatSize(totalIn));
+        System.out.printf("Compressed : %s (%.2f%% saved)%n", formatSize(totalOut),
+                totalIn == 0 ? 0 : 100.0 * (1.0 - (double) totalOut / totalIn));
+        System.out.printf("Compress   : %.2f MB/s%n", megabytesPerSecond(totalIn, compressNanos));
+        System.out.printf("Decompress : %.2f MB/s%n", megabytesPerSecond(totalIn, decompressNanos));
+        return 0;
+    }
+
+    /**
+     * Batch Mode: processes a directory tree through a {@link BatchCompressor}.
+     * File I/O runs on virtual threads, encoding on {@code --threads} workers, and the number of
+     * in-flight files is bounded. The relative directory layout is mirrored under {@code outputRoot}.
+     */
+    private int runBatch(Path inputRoot, Path outputRoot, boolean compress) throws Exception {
+        List<Path> files = listFiles(inputRoot, !compress);
+        List<CompletableFuture<BatchCompressor.JobResult>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        long totalBytes = 0;
+        int failures = 0;
+
+        try(BatchCompressor batch = new BatchCompressor(threads, threads * 4, blockSize, options, preflight, listener())) {
+            for(Path file : files) {
+                Path relative = inputRoot.relativize(file);
+                Path target = outputRoot.resolve(compress ? relative + ".pwha" : decodedName(relative.toString()));
+                results.add(compress ? batch.submit(file, target) : batch.submitDecompression(file, target));
+            }
+
+            for(int i = 0; i < results.size(); i++) {
+                try {
+                    BatchCompressor.JobResult result = results.get(i).join();
+                    totalBytes += compress ? result.inputBytes() : result.outputBytes();
+                } catch(CompletionException e) {
+                    failures++;
+                    System.err.println("Failed: " + files.get(i) + " (" + e.getCause().getMessage() + ")");
+                }
+            }
+
+            BatchCompressor.Stats stats = batch.getStats();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%d files, %s %s in %.2f sec with %d threads: %.2f MB/s%n",
+                    files.size() - failures, formatSize(totalBytes), compress ? "compressed" : "restored",
+                    elapsed / 1e9, threads, megabytesPerSecond(totalBytes, elapsed));
+            System.out.printf("Latency p50/p95/p99: %.1f / %.1f / %.1f ms%n",
+                    stats.p50Nanos() / 1e6, stats.p95Nanos() / 1e6, stats.p99Nanos() / 1e6);
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs the {@link AutoTuner} on samples of the input and prints every candidate's estimate.
+     */
+    private CompressionOptions autoTune(Path input) throws IOException {
+        AutoTuner.Result tuning = new AutoTuner().tune(input, autoTuneBudget);
+        System.out.printf("Auto-tune: %d candidates on %s of samples in %.2f sec%n", tuning.candidates().size(),
+                formatSize(tuning.sampleBytes()), tuning.elapsedNanos() / 1e9);
+        for(AutoTuner.Candidate candidate : tuning.candidates()) {
+            System.out.printf("  %s %-66s ~%s, %.2f MB/s, ~%.1f sec%n", candidate == tuning.best() ? "*" : " ",
+                    candidate.options(), formatSize(candidate.estimatedBytes()), candidate.throughputMBps(),
+                    candidate.predictedNanos() / 1e9);
+        }
+        // The tokenization, phrase and template mining, the coder and the code storage are not tuned: keep them from the command line.
+        return tuning.best().options().withTokenizer(options.tokenizer())
+                .withMaxTokenLength(options.maxTokenLength()).withSeparators(options.separators())
+                .withPhrases(options.phrases()).withTemplates(options.templates()).withCoder(options.coder())
+                .withOffHeap(options.offHeap());
+    }
+
+    // ---------------------------------------------------------------- Helpers
+
+    private MetricsListener listener() {
+        return metrics != null ? metrics : MetricsListener.NOOP;
+    }
+
+    // Lists the regular files under a path (or the path itself), optionally only .pwha files.
+    private static List<Path> listFiles(Path root, boolean onlyCompressed) throws IOException {
+        if(!Files.isDirectory(root)) {
+            return List.of(root);
+        }
+        try(Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(p -> !onlyCompressed || p.toString().endsWith(".pwha"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static ParseStrategy parseStrategy(String value) {
+        try {
+            return ParseStrategy.valueOf(value.toUpperCase());
+        } catch(IllegalArgumentException e) {
+            throw new IllegalArgumentException("--parse expects greedy or optimal, got: " + value);
+        }
+    }
+
+    // "auto" (null: chosen by the preflight), "default", or the separator characters themselves.
+    private static SeparatorSet separators(String value) {
+        return switch(value) {
+            case "auto" -> null;
+            case "default" -> SeparatorSet.DEFAULT;
+            default -> SeparatorSet.of(value);
+        };
+    }
+
+    private static String decodedName(String compressedName) {
+        return compressedName.endsWith(".pwha")
+                ? compressedName.substring(0, compressedName.length() - 5)
+                : compressedName + ".out";
+    }
+
+    private static String value(String[] args, int index) {
+        if(index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static int positive(String option, String value) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if(parsed <= 0) throw new NumberFormatException();
+            return parsed;
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException(option + " expects a positive integer, got: " + value);
+        }
+    }
+
+    // Parses sizes such as "65536", "256k" or "4m".
+    static int parseSize(String value) {
+        String lower = value.toLowerCase();
+        int multiplier = 1;
+        if(lower.endsWith("k")) multiplier = 1 << 10;
+        else if(lower.endsWith("m")) multiplier = 1 << 20;
+        if(multiplier != 1) lower = lower.substring(0, lower.length() - 1);
+
+        long size = (long) positive("--block-size", lower) * multiplier;
+        if(size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Block size too large: " + value);
+        }
+        return (int) size;
+    }
+
+    // Parses durations such as "500ms", "30s", "5m" or a plain number of seconds.
+    static Duration parseDuration(String value) {
+        String lower = value.toLowerCase();
+        try {
+            Duration duration;
+            if(lower.endsWith("ms")) duration = Duration.ofMillis(Long.parseLong(lower.substring(0, lower.length() - 2)));
+            else if(lower.endsWith("s")) duration = Duration.ofSeconds(Long.parseLong(lower.substring(0, lower.length() - 1)));
+            else if(lower.endsWith("m")) duration = Duration.ofMinutes(Long.parseLong(lower.substring(0, lower.length() - 1)));
+            else duration = Duration.ofSeconds(Long.parseLong(lower));
+            if(duration.isNegative() || duration.isZero()) throw new NumberFormatException();
+            return duration;
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("--auto-tune expects a duration such as 500ms, 30s or 5m, got: " + value);
+        }
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return nanos == 0 ? 0 : (bytes / 1048576.0) / (nanos / 1e9);
+    }
+
+    private static String formatSize(long v) {
+        if (v < 1024) return v + " B";
+        int z = (63 - Long.numberOfLeadingZeros(v)) / 10;
+        return String.format("%.1f %sB", (double)v / (1L << (z*10)), " KMGTPE".charAt(z));
+    }
+
+    private static void printUsage() {
+        System.err.printf(USAGE, Constant.MAX_PATTERN_LENGTH, Constant.MAX_PATTERN_AMOUNT,
+                Runtime.getRuntime().availableProcessors(), Constant.DEFAULT_BLOCK_SIZE, Constant.MAX_TOKEN_LENGTH);
+    }
+}
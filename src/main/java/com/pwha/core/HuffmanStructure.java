@@ -1,11 +1,14 @@
 package com.pwha.core;
 
 import com.pwha.Main;
+import com.pwha.metrics.SubTreeBuildEvent;
+import com.pwha.metrics.SuperTreeBuildEvent;
 import com.pwha.model.node.ContextLeaf;
 import com.pwha.model.node.HNode;
 import com.pwha.model.node.InternalNode;
 import com.pwha.util.CustomPriorityQueue;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -27,13 +30,18 @@ public class HuffmanStructure {
      * Takes the frequency map generated during the Analysis Phase and populates
      * a Min-Priority Queue to start the Huffman Tree construction.
      *
-     * @param freqMap The map of Byte -> ContextLeaf.
+     * @param freqMap The map of context symbol -> ContextLeaf.
      * @return A priority queue containing all Context leaves, sorted by frequency.
      */
-    public static CustomPriorityQueue<ContextLeaf> setQueue(Map<Byte, ContextLeaf> freqMap) {
+    public static CustomPriorityQueue<ContextLeaf> setQueue(Map<Integer, ContextLeaf> freqMap) {
         CustomPriorityQueue<ContextLeaf> pq = new CustomPriorityQueue<>();
-        for(ContextLeaf contextNode : freqMap.values()){
-            pq.add(contextNode);
+
+        // Insert in symbol order so frequency ties are broken the same way on both sides.
+        // Byte contexts keep their signed value, which is the order headers were always built in.
+        Integer[] keys = freqMap.keySet().toArray(new Integer[0]);
+        Arrays.sort(keys);
+        for(Integer key : keys){
+            pq.add(freqMap.get(key));
         }
 
         return pq;
@@ -54,6 +62,25 @@ public class HuffmanStructure {
      * @return The root node of the fully constructed Super-Tree.
      */
     public static HNode buildSuperTree(CustomPriorityQueue<ContextLeaf> pq) {
+        return buildSuperTree(pq, true);
+    }
+
+    /**
+     * Builds the SUPER-TREE, optionally skipping the sub-tree construction.
+     * <p>
+     * The Encoder needs every sub-tree (and its codes) up front. The Decoder does not:
+     * it passes {@code false} and materializes a context's sub-tree the first time the
+     * bit stream switches into it (see {@link #ensureSubTree(ContextLeaf)}).
+     *
+     * @param pq            The priority queue initialized with ContextLeaf nodes.
+     * @param buildSubTrees Whether the pattern sub-trees are built while merging.
+     * @return The root node of the fully constructed Super-Tree.
+     */
+    public static HNode buildSuperTree(CustomPriorityQueue<ContextLeaf> pq, boolean buildSubTrees) {
+        SuperTreeBuildEvent event = new SuperTreeBuildEvent();
+        event.begin();
+        int contexts = pq.size();
+
         CustomPriorityQueue<HNode> pqUpper = new CustomPriorityQueue<>();
         pqUpper.addAll(pq);
 
@@ -63,10 +90,10 @@ public class HuffmanStructure {
 
             // LAZY LOADING: Construct the sub-tree only when the context is being processed.
             // This ensures we don't build trees for contexts that might be optimized away or processed differently.
-            if(left.isLeaf()) {
+            if(buildSubTrees && left.isLeaf()) {
                 buildSubTree((ContextLeaf) left);
             }
-            if(right.isLeaf()) {
+            if(buildSubTrees && right.isLeaf()) {
                 buildSubTree((ContextLeaf) right);
             }
 
@@ -81,7 +108,19 @@ public class HuffmanStructure {
             pqUpper.add(parentNode);
         }
 
-        return pqUpper.poll(); // Return the Root of the Super-Tree
+        HNode root = pqUpper.poll(); // The Root of the Super-Tree
+
+        // A single-context input never enters the merge loop, so its sub-tree is built here.
+        if(buildSubTrees && root instanceof ContextLeaf onlyContext) {
+            buildSubTree(onlyContext);
+        }
+
+        if(event.shouldCommit()) {
+            event.contexts = contexts;
+            event.buildSubTrees = buildSubTrees;
+            event.commit();
+        }
+        return root;
     }
 
     /**
@@ -93,6 +132,9 @@ public class HuffmanStructure {
      * @param contextNode The context leaf for which the sub-tree is being built.
      */
     public static void buildSubTree(ContextLeaf contextNode) {
+        SubTreeBuildEvent event = new SubTreeBuildEvent();
+        event.begin();
+
         CustomPriorityQueue<HNode> pqSub = new CustomPriorityQueue<>();
 
         // Populate the queue with patterns (SimpleLeaves) belonging to this context.
@@ -119,6 +161,32 @@ public class HuffmanStructure {
 
         // Assign the root of this new Pattern Tree to the ContextLeaf.
         contextNode.setSubTreeRoot(pqSub.poll());
+
+        if(event.shouldCommit()) {
+            event.context = contextNode.getSymbol();
+            event.patterns = contextNode.getPatternCount();
+            event.commit();
+        }
+    }
+
+    /**
+     * Materializes the sub-tree of a context if it has not been built yet.
+     * <p>
+     * Used by the Decoder for lazy reconstruction: a short payload usually touches only a
+     * handful of contexts, so building every pattern tree up front is wasted work.
+     * The tree is rebuilt from the stored pattern frequencies and cached on the leaf.
+     * Blocks may be decoded in parallel, so the first build is guarded by the leaf's monitor.
+     *
+     * @param contextNode The context the decoder is switching into.
+     */
+    public static void ensureSubTree(ContextLeaf contextNode) {
+        if(!contextNode.isSubTreeBuilt()) {
+            synchronized (contextNode) {
+                if(!contextNode.isSubTreeBuilt()) {
+                    buildSubTree(contextNode);
+                }
+            }
+        }
     }
 
     /**
@@ -135,13 +203,13 @@ public class HuffmanStructure {
      * @param currentCode The binary code accumulated so far.
      * @param dictionary  The map to store the generated codes.
      */
-    public static void buildDictionary(HNode node, String currentCode, Map<Byte, ContextLeaf> dictionary) {
+    public static void buildDictionary(HNode node, String currentCode, Map<Integer, ContextLeaf> dictionary) {
         if(node == null){return;}
 
         // Base Case: Reached a Context (Leaf of Super-Tree).
         if(node instanceof ContextLeaf contextNode){
             contextNode.setCode(currentCode);
-            dictionary.put(contextNode.getData(), contextNode);
+            dictionary.put(contextNode.getSymbol(), contextNode);
 
             // Delegate code generation to the sub-tree (Pattern Tree)
             contextNode.generateCode();
@@ -1,15 +1,30 @@
 package com.pwha.engine;
 
 import com.pwha.core.HuffmanStructure;
-import com.pwha.io.BitReader;
+import com.pwha.engine.EntropyCoder.SymbolReader;
+import com.pwha.metrics.DecodeBlockEvent;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.metrics.Stage;
+import com.pwha.metrics.StageTimer;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.TemplateTable;
 import com.pwha.model.node.ContextLeaf;
 import com.pwha.model.node.HNode;
-import com.pwha.model.node.InternalNode;
 import com.pwha.model.node.SimpleLeaf;
-import com.pwha.util.SeparatorUtils;
+import com.pwha.tokenizer.Tokenizer;
+import com.pwha.tokenizer.Tokenizers;
+import com.pwha.util.Constant;
+import com.pwha.util.SeparatorSet;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
@@ -17,18 +32,84 @@ import java.util.function.Consumer;
  * <p>
  * This class handles the reverse process of the Encoder:
  * 1. Reads the serialized dictionary (Header) to reconstruct the Huffman Trees.
- * 2. Reads the compressed bit stream.
- * 3. Traverses the trees to decode characters and patterns.
+ * 2. Reads the compressed blocks.
+ * 3. Reads the symbols through the file's {@link EntropyCoder} (walking the Huffman trees, or rANS).
  * 4. Implements "Dynamic Context Switching" to select the correct tree for each step.
+ * <p>
+ * Stored blocks (raw bytes written by the Encoder's incompressible fallback) skip the trees
+ * entirely and are copied to the output as they are.
  */
 public class Decoder {
 
-    // The reconstructed dictionary mapping starting characters to their ContextLeaf nodes.
-    private HashMap<Byte, ContextLeaf> globalContextMap;
+    // The reconstructed dictionary mapping context symbols (see ContextLeaf#symbolOf) to their ContextLeaf nodes.
+    private Map<Integer, ContextLeaf> globalContextMap;
 
     // The root of the reconstructed Super-Tree (connecting all Contexts).
     private HNode globalTreeRoot;
 
+    // When true, a context's sub-tree is built the first time the stream switches into it.
+    // When false, every sub-tree is rebuilt up front (the original behaviour).
+    private final boolean lazySubTrees;
+
+    // Number of worker threads decoding blocks in parallel (1 = decode on the calling thread).
+    private final int threads;
+
+    // Compression level recorded in the header of the last decoded file.
+    private CompressionOptions.Level level;
+
+    // Longest word of the last decoded file: the context is dropped after this many bytes.
+    private int maxTokenLength = Integer.MAX_VALUE;
+
+    // Separators of the last decoded file: decoding one of them ends the current context.
+    private SeparatorSet separators = SeparatorSet.DEFAULT;
+
+    // Tokenizer of the last decoded file: decides when a word without a separator is complete.
+    private Tokenizer tokenizer = Tokenizers.TEXT;
+
+    // Entropy coder of the last decoded file, set up once its trees are rebuilt.
+    private EntropyCoder.Backend backend = EntropyCoder.Backend.HUFFMAN;
+    private EntropyCoder coder;
+
+    // Log templates of the last decoded file, or null if it was coded token by token.
+    private TemplateTable templates;
+
+    // Where a wildcard field of a template line ends (the field contains neither), and where an escaped line ends.
+    private static final SeparatorSet FIELD_END = SeparatorSet.of(" \\n");
+    private static final SeparatorSet LINE_END = SeparatorSet.of("\\n");
+
+    // Receives the DECODE stage timings.
+    private final MetricsListener metrics;
+
+    // CPU time spent by pool workers in the current run, only maintained while metrics are enabled.
+    private final LongAdder blockCpuNanos = new LongAdder();
+
+    // Default: lazy reconstruction, which keeps time-to-first-byte low for small payloads.
+    public Decoder() {
+        this(true);
+    }
+
+    public Decoder(boolean lazySubTrees) {
+        this(lazySubTrees, 1);
+    }
+
+    public Decoder(boolean lazySubTrees, int threads) {
+        this(lazySubTrees, threads, MetricsListener.NOOP);
+    }
+
+    public Decoder(boolean lazySubTrees, int threads, MetricsListener metrics) {
+        if(threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        this.lazySubTrees = lazySubTrees;
+        this.threads = threads;
+        this.metrics = metrics;
+    }
+
+    // Level the last decoded file was compressed with (null before the first header is read).
+    public CompressionOptions.Level getLevel() {
+        return level;
+    }
+
     /**
      * Main entry point for decompression.
      * Handles file I/O, progress tracking, and orchestrates the decoding flow.
@@ -39,154 +120,393 @@ public class Decoder {
      * @param onProgress     Callback for UI progress updates.
      */
     public void decompress(String compressedFile, String outputFile, long totalSize, Consumer<Double> onProgress) throws IOException , ClassNotFoundException {
-        System.out.println("Decompressing " + compressedFile + " to " + outputFile);
-
-        FileInputStream fis = new FileInputStream(compressedFile);
-
-        // Use BufferedInputStream for efficient disk reading (System Optimization).
-        BufferedInputStream bis = new BufferedInputStream(fis);
-
-        // Step 1: Read the Header (Serialized Dictionary)
-        // This object contains the Frequency Map needed to rebuild the tree.
-        ObjectInputStream ois = new ObjectInputStream(bis);
+        // Use Buffered streams for efficient disk reading and writing (System Optimization).
+        try(FileInputStream fis = new FileInputStream(compressedFile);
+            BufferedInputStream bis = new BufferedInputStream(fis);
+            FileOutputStream fos = new FileOutputStream(outputFile);
+            BufferedOutputStream bos = new BufferedOutputStream(fos)) {
 
-        this.globalContextMap = (HashMap<Byte, ContextLeaf>) ois.readObject();
+            decompress(bis, bos, totalSize, onProgress);
+        }
+    }
 
-        System.out.println("Dictionary is downloaded. Huffman Tree is rebuilding...");
+    // Overloaded method for simple decompression without progress tracking.
+    public void decompress(String compressedFile, String outputFile) throws IOException , ClassNotFoundException {
+        decompress(compressedFile, outputFile, 1, null);
+    }
 
-        // Step 2: Reconstruct the exact Huffman Tree structure in memory.
-        rebuildAllTrees();
+    /**
+     * Stream based decompression, used by the file based entry point and by headless callers.
+     * The streams are not closed; the output is flushed when the last block has been written.
+     */
+    public void decompress(InputStream input, OutputStream output, long totalSize, Consumer<Double> onProgress) throws IOException, ClassNotFoundException {
+        StageTimer timer = metrics.isEnabled() ? StageTimer.start() : null;
+        blockCpuNanos.reset();
+        long[] bytesIn = new long[1];
 
         // Custom InputStream wrapper to track bytes read for the progress bar.
         InputStream progressStream = new InputStream() {
             long bytesRead = 0;
+            long lastReported = 0;
 
             @Override
             public int read() throws IOException {
-                int b = bis.read();
-                if(b != -1) update();
+                int b = input.read();
+                if(b != -1) update(1);
                 return b;
             }
 
             @Override
             public int read(byte[] b, int off, int len) throws IOException {
-                int n = bis.read(b, off, len);
+                int n = input.read(b, off, len);
                 if(n != -1) update(n);
                 return n;
             }
 
-            private void update() { update(1); }
-
             private void update(int n) {
                 bytesRead += n;
+                bytesIn[0] = bytesRead;
                 // Update progress every 10KB
-                if(onProgress != null && bytesRead % 10240 == 0){
+                if(onProgress != null && bytesRead - lastReported >= 10240){
+                    lastReported = bytesRead;
                     double p = (double) bytesRead / totalSize * 100;
                     onProgress.accept(p > 100 ? 100 : p);
                 }
             }
         };
+        DataInputStream dis = new DataInputStream(progressStream);
 
-        // Initialize BitReader to read the compressed data bit-by-bit.
-        BitReader bitReader = new BitReader(progressStream);
-
-        FileOutputStream fos = new FileOutputStream(outputFile);
-        BufferedOutputStream bos = new BufferedOutputStream(fos);
+        // Step 1: Read the Header (Serialized Dictionary)
+        // This object contains the Frequency Map needed to rebuild the tree.
+        readHeader(dis);
 
-        System.out.println("Decompressing starting...");
+        // Step 2: Reconstruct the exact Huffman Tree structure in memory.
+        rebuildAllTrees();
 
-        // Step 3: Start the actual decoding loop.
-        decodeContent(bitReader, bos);
+        // Step 3: Decode the blocks.
+        long bytesOut = decodeBlocks(dis, output);
+        output.flush();
 
-        // Close resources
-        bos.close();
-        bitReader.close();
-        System.out.println("Decompressing complete...");
+        if(timer != null) {
+            long cpu = threads > 1 ? timer.cpuNanos() + blockCpuNanos.sum() : timer.cpuNanos();
+            metrics.stageCompleted(Stage.DECODE, timer.wallNanos(), cpu, bytesIn[0], bytesOut);
+        }
     }
 
-    // Overloaded method for simple decompression without progress tracking.
-    public void decompress(String compressedFile, String outputFile) throws IOException , ClassNotFoundException {
-        decompress(compressedFile, outputFile, 1, null);
+    @SuppressWarnings("unchecked")
+    private void readHeader(DataInputStream dis) throws IOException, ClassNotFoundException {
+        if(dis.readInt() != Constant.FILE_MAGIC) {
+            throw new IOException("Not a PWHA file");
+        }
+        int version = dis.readUnsignedByte();
+        if(version != Constant.FORMAT_VERSION) {
+            throw new IOException("Unsupported PWHA format version: " + version);
+        }
+        try {
+            this.level = CompressionOptions.Level.fromId(dis.readUnsignedByte());
+        } catch(IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        dis.readInt(); // Block size, informational: every block carries its own raw length.
+        this.maxTokenLength = dis.readInt();
+        if(maxTokenLength <= 0) {
+            throw new IOException("Invalid maximum token length: " + maxTokenLength);
+        }
+        byte[] separatorBytes = new byte[dis.readUnsignedShort()];
+        if(separatorBytes.length > 256) {
+            throw new IOException("Invalid separator count: " + separatorBytes.length);
+        }
+        dis.readFully(separatorBytes);
+        this.separators = SeparatorSet.of(separatorBytes);
+        try {
+            this.tokenizer = Tokenizers.byId(dis.readUnsignedByte()).withSeparators(separators);
+            this.backend = EntropyCoder.Backend.fromId(dis.readUnsignedByte());
+        } catch(IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        byte[] dictionaryBytes = new byte[dis.readInt()];
+        dis.readFully(dictionaryBytes);
+        try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(dictionaryBytes))) {
+            this.globalContextMap = (Map<Integer, ContextLeaf>) ois.readObject();
+        }
+
+        // An empty template table means the file has none.
+        this.templates = null;
+        byte[] templateBytes = new byte[dis.readInt()];
+        dis.readFully(templateBytes);
+        if(templateBytes.length > 0) {
+            try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(templateBytes))) {
+                this.templates = (TemplateTable) ois.readObject();
+            }
+        }
     }
 
     /**
-     * Reconstructs the entire Two-Layered Huffman Tree from the frequency map.
+     * Reconstructs the Two-Layered Huffman Tree from the frequency map.
      * Since Huffman trees are deterministic, this results in the exact same tree used during compression.
+     * <p>
+     * In lazy mode only the Super-Tree is built here; the Sub-Trees are materialized on demand
+     * in {@link #decodeContent}.
      */
     private void rebuildAllTrees() {
-        // 1. Build Sub-Trees (Pattern Trees) for every Context.
-        for(ContextLeaf contextNode : globalContextMap.values()) {
-            contextNode.setSubQueue();
-            HuffmanStructure.buildSubTree(contextNode);
+        // 1. Build Sub-Trees (Pattern Trees) for every Context, unless they are built on demand.
+        if(!lazySubTrees) {
+            for(ContextLeaf contextNode : globalContextMap.values()) {
+                HuffmanStructure.buildSubTree(contextNode);
+            }
         }
 
         // 2. Build the Super-Tree (Context Tree) that connects all contexts.
         var globalQueue = HuffmanStructure.setQueue(globalContextMap);
-        this.globalTreeRoot = HuffmanStructure.buildSuperTree(globalQueue);
+        this.globalTreeRoot = HuffmanStructure.buildSuperTree(globalQueue, false);
+
+        // 3. The template id table, if the file has one.
+        if(templates != null) {
+            HuffmanStructure.buildSubTree(templates.getIdTable());
+        }
+        this.coder = backend.create(globalTreeRoot, separators);
     }
 
     /**
-     * Decodes the compressed bit stream by traversing the trees.
-     * Implements the logic to switch between the Super-Tree and Sub-Trees based on context.
+     * Reads [Raw Length][Block Type][Encoded Length][Encoded Bits] blocks until the end marker and
+     * writes the decoded bytes in order. With more than one thread, blocks are decoded concurrently.
+     * Stored blocks are passed through without decoding.
+     *
+     * @return The number of decoded bytes.
      */
-    private void decodeContent(BitReader bitReader, OutputStream os) throws IOException {
-        ContextLeaf currentContext = null;
+    private long decodeBlocks(DataInputStream dis, OutputStream os) throws IOException {
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        ArrayDeque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        long decoded = 0;
+
+        try {
+            int rawLength;
+            while((rawLength = dis.readInt()) > 0) {
+                int type = dis.readUnsignedByte();
+                byte[] encoded = new byte[dis.readInt()];
+                dis.readFully(encoded);
+
+                final int length = rawLength;
+                if(type == Constant.BLOCK_STORED) {
+                    if(encoded.length != rawLength) {
+                        throw new IOException("Corrupted stored block: expected " + rawLength + " bytes, found " + encoded.length);
+                    }
+                    inFlight.add(CompletableFuture.completedFuture(encoded));
+                } else if(type != Constant.BLOCK_HUFFMAN) {
+                    throw new IOException("Unknown block type: " + type);
+                } else if(pool == null) {
+                    inFlight.add(CompletableFuture.completedFuture(decodeBlock(encoded, length)));
+                } else {
+                    inFlight.add(pool.submit(() -> decodeBlockMeasured(encoded, length)));
+                }
+                decoded += rawLength;
 
-        while(true) {
-            HNode currentNode;
+                // Bound the number of buffered blocks to keep memory usage flat.
+                while(inFlight.size() >= threads * 2 || (pool == null && !inFlight.isEmpty())) {
+                    os.write(await(inFlight.poll()));
+                }
+            }
 
-            // Context Switching Logic:
-            // If we have no context (start of file or after separator) -> Search Super-Tree.
-            // If we have a context -> Search that context's Sub-Tree.
-            if(currentContext == null || currentContext.getSubTreeRoot() == null) {
-                currentNode = globalTreeRoot;
-            }else {
-                currentNode = currentContext.getSubTreeRoot();
+            while(!inFlight.isEmpty()) {
+                os.write(await(inFlight.poll()));
             }
+            return decoded;
+        } finally {
+            if(pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private byte[] await(Future<byte[]> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Decompression interrupted");
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Block decoding failed", e.getCause());
+        }
+    }
+
+    // Decodes one block. Every block starts without a context, mirroring the Encoder.
+    byte[] decodeBlock(byte[] encoded, int rawLength) throws IOException {
+        DecodeBlockEvent event = new DecodeBlockEvent();
+        event.begin();
+
+        byte[] out = new byte[rawLength];
+        int[] contextSwitches = new int[1];
+        SymbolReader symbols = coder.newReader(encoded);
+        int written = templates != null ? decodeLines(symbols, out, contextSwitches)
+                : decodeContent(symbols, out, 0, null, contextSwitches);
+
+        if(event.shouldCommit()) {
+            event.encodedBytes = encoded.length;
+            event.rawBytes = written;
+            event.contextSwitches = contextSwitches[0];
+            event.commit();
+        }
+
+        if(written != rawLength) {
+            throw new IOException("Corrupted block: expected " + rawLength + " bytes, decoded " + written);
+        }
+        return out;
+    }
 
-            // Tree Traversal Loop: Read bits until a leaf is found.
-            while(!currentNode.isLeaf()) {
-                int bit = bitReader.readBit();
+    // Pool task: decodes a block and adds the worker's CPU time to the run total.
+    private byte[] decodeBlockMeasured(byte[] encoded, int rawLength) throws IOException {
+        if(!metrics.isEnabled()) {
+            return decodeBlock(encoded, rawLength);
+        }
+        long cpuStart = StageTimer.currentThreadCpuNanos();
+        try {
+            return decodeBlock(encoded, rawLength);
+        } finally {
+            blockCpuNanos.add(StageTimer.currentThreadCpuNanos() - cpuStart);
+        }
+    }
 
-                if(bit == -1) {
-                    return; // End of file/stream
+    /**
+     * Decodes a block coded line by line with log templates (the Encoder's {@code encodeLines}).
+     * <p>
+     * Each line starts with a template id from the id table. The escape id is followed by the line
+     * as regular tokens, up to its newline. Any other id writes the template: constant fields are
+     * copied from it, wildcard fields are decoded as regular tokens up to the space or newline that
+     * the template expects after them.
+     *
+     * @return The number of bytes decoded.
+     */
+    private int decodeLines(SymbolReader symbols, byte[] out, int[] contextSwitches) throws IOException {
+        int rawLength = out.length;
+        int written = 0;
+
+        while(written < rawLength) {
+            // Template id: a leaf of the id table.
+            HNode node = symbols.read(templates.getIdTable());
+            if(!(node instanceof SimpleLeaf leaf)) return written; // End of block
+
+            int id = TemplateTable.idOf(leaf);
+            if(id == templates.escapeId()) {
+                written = decodeContent(symbols, out, written, LINE_END, contextSwitches);
+                continue;
+            }
+
+            byte[][] template = templates.get(id);
+            for(int i = 0; i < template.length; i++) {
+                byte terminator = i == template.length - 1 ? (byte) '\n' : (byte) ' ';
+                if(template[i] != null) {
+                    if(template[i].length + 1 > rawLength - written) {
+                        throw new IOException("Corrupted block: template overruns the raw length " + rawLength);
+                    }
+                    System.arraycopy(template[i], 0, out, written, template[i].length);
+                    written += template[i].length;
+                    out[written++] = terminator;
+                } else {
+                    int fieldStart = written;
+                    written = decodeContent(symbols, out, written, FIELD_END, contextSwitches);
+                    if(written == fieldStart || out[written - 1] != terminator) {
+                        throw new IOException("Corrupted block: template field does not end with the expected separator");
+                    }
                 }
+            }
+        }
+        return written;
+    }
 
-                InternalNode internal = (InternalNode) currentNode;
-                // '0' -> Go Left, '1' -> Go Right
-                currentNode = (bit == 0) ? internal.getLeft() : internal.getRight();
+    /**
+     * Decodes the symbols of a block, reading each from the tree of the current context.
+     * Implements the logic to switch between the Super-Tree and Sub-Trees based on context.
+     * Stops once {@code out} is full, so the zero padding of the last byte is never decoded.
+     * The decoded bytes of the current word stay in {@code out}, where the tokenizer checks them
+     * for a forced split.
+     *
+     * @param out             Receives the block; its length is the raw length of the block.
+     * @param written         Bytes of {@code out} already decoded; decoding starts without a context.
+     * @param stopAt          Also stop right after one of these separators ends a token (null: only at the end).
+     * @param contextSwitches Receives the number of times a context's sub-tree was entered (reported to JFR).
+     * @return The number of bytes decoded.
+     */
+    private int decodeContent(SymbolReader symbols, byte[] out, int written, SeparatorSet stopAt, int[] contextSwitches) throws IOException {
+        ContextLeaf currentContext = null;
+        int rawLength = out.length;
+        int wordStart = written; // Position of the current word's context byte, to mirror the Encoder's forced splits.
+        int minSplitLength = tokenizer.minSplitLength(maxTokenLength);
 
-                if(currentNode == null) {return;} // Should not happen in a valid tree
+        while(written < rawLength) {
+            // Context Switching Logic:
+            // If we have no context (start of block or after separator) -> Read from the Super-Tree.
+            // If we have a context -> Read from that context's Sub-Tree.
+            ContextLeaf table = currentContext == null || currentContext.getSubTreeRoot() == null ? null : currentContext;
+
+            // Fast path: several patterns of the sub-tree at once. The run stays short of the length where
+            // the tokenizer could force a split, so none of the checks it skips could have fired.
+            if(table != null) {
+                int maxBytes = Math.min(rawLength - written, minSplitLength - (written - wordStart) - 1);
+                int run = maxBytes > 0 ? symbols.readRun(table, out, written, maxBytes) : 0;
+                if(run > 0) {
+                    written += run;
+                    // Only the last pattern of a run can be a separator.
+                    if(separators.isSeparator(out[written - 1])) {
+                        currentContext = null;
+                        if(stopAt != null && stopAt.isSeparator(out[written - 1])) return written;
+                    }
+                    continue;
+                }
             }
 
+            HNode currentNode = symbols.read(table);
+
+            if(currentNode == null) {return written;} // Empty dictionary, or end of block
+
             // Leaf Node Reached! Process the data.
             if(currentNode instanceof ContextLeaf) {
                 // We found a "Context" character (e.g., the first letter of a word).
                 ContextLeaf leaf = (ContextLeaf) currentNode;
-                byte data = leaf.getData();
-                os.write(data);
+                byte[] data = leaf.getSymbolBytes(); // One byte, a whole character with code-point contexts, or a phrase.
+                if(data.length > rawLength - written) {
+                    throw new IOException("Corrupted block: context overruns the raw length " + rawLength);
+                }
+                wordStart = written;
+                System.arraycopy(data, 0, out, written, data.length);
+                written += data.length;
 
                 // Update Context:
-                // If the character is a separator (space, dot), reset context.
+                // If the character is a separator (space, dot), reset context; a phrase ends at a token boundary too.
                 // Otherwise, this character becomes the new context for the next pattern.
-                if(SeparatorUtils.isSeparator(data)){
+                if(leaf.isPhrase() || (data.length == 1 && separators.isSeparator(data[0]))){
                     currentContext = null;
+                    if(stopAt != null && data.length == 1 && stopAt.isSeparator(data[0])) return written;
                 } else{
+                    // Lazy mode: the sub-tree is built (and cached) the first time we enter this context.
+                    HuffmanStructure.ensureSubTree(leaf);
                     currentContext  = leaf;
+                    contextSwitches[0]++;
                 }
             }else if(currentNode instanceof SimpleLeaf) {
                 // We found a "Pattern" (sequence of bytes).
                 SimpleLeaf leaf = (SimpleLeaf) currentNode;
                 byte[] data = leaf.getPattern().data();
-                os.write(data);
+                if(data.length > rawLength - written) {
+                    throw new IOException("Corrupted block: pattern overruns the raw length " + rawLength);
+                }
+                System.arraycopy(data, 0, out, written, data.length);
+                written += data.length;
 
                 // Check if the pattern contains a separator (usually single-byte patterns).
-                if(data.length == 1 && SeparatorUtils.isSeparator(data[0])){
+                // For multi-byte patterns, the context continues.
+                if(data.length == 1 && separators.isSeparator(data[0])){
                     currentContext = null;
-                }else{
-                    // For multi-byte patterns, the context usually continues or logic can be extended here.
+                    if(stopAt != null && stopAt.isSeparator(data[0])) return written;
                 }
             }
+
+            // Forced split: the Encoder started a new word where the tokenizer declared this one complete.
+            if(currentContext != null && tokenizer.isWordComplete(out, wordStart, written, maxTokenLength)){
+                currentContext = null;
+            }
         }
+        return written;
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,31 @@
 package com.pwha.engine;
 
+import com.pwha.core.HuffmanStructure;
+import com.pwha.engine.EntropyCoder.SymbolWriter;
+import com.pwha.io.BitCounter;
 import com.pwha.io.BitWriter;
+import com.pwha.metrics.EncodeBlockEvent;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.metrics.Stage;
+import com.pwha.metrics.StageTimer;
 import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.PatternArena;
+import com.pwha.model.TemplateTable;
 import com.pwha.model.node.ContextLeaf;
 import com.pwha.model.node.HNode;
-import com.pwha.util.SeparatorUtils;
+import com.pwha.tokenizer.Tokenizer;
+import com.pwha.util.Constant;
+import com.pwha.util.EntropyUtils;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
 /**
@@ -16,16 +34,132 @@ import java.util.function.Consumer;
  * This class handles the core encoding logic of the Pattern-Aware Huffman algorithm.
  * Key Steps:
  * 1. Writes the Dictionary (Frequency Map) to the file header.
- * 2. Reads the input file to identify words and separators.
- * 3. Encodes each word using "Context-Aware Greedy Matching".
+ * 2. Splits the input into fixed-size blocks and identifies words and separators in each block.
+ * 3. Encodes each word using "Context-Aware Greedy Matching", or the minimum-cost split
+ *    of the word with {@link ParseStrategy#OPTIMAL}.
+ * 4. Hands every chosen symbol to the file's {@link EntropyCoder}: its Huffman code as is, or rANS.
+ * <p>
+ * File Layout:
+ * [Magic][Version][Level][Block Size][Max Token Length][Separators][Tokenizer][Entropy Coder]
+ * [Header Length][Serialized Dictionary][Templates Length][Serialized Templates]
+ * followed by blocks of [Raw Length][Block Type][Encoded Length][Encoded Bits], terminated by a Raw Length of 0.
+ * <p>
+ * Stored Blocks: a block that would not shrink (high entropy, or bytes the model cannot express)
+ * is written as {@link Constant#BLOCK_STORED} with its raw bytes, so the output never expands by
+ * more than the block header and the Decoder can copy it through unchanged.
  */
 public class Encoder {
+    // Optimal parse: cost of skipping an unmatched byte. Larger than any real code, so a match always wins.
+    private static final long UNMATCHED_COST = 1L << 32;
+
     private final HNode root;
-    private final Map<Byte, ContextLeaf> dictionary;
+    private final Map<Integer, ContextLeaf> dictionary;
+
+    // Number of input bytes per independently encoded block.
+    private final int blockSize;
+
+    // Number of worker threads encoding blocks in parallel (1 = encode on the calling thread).
+    private final int threads;
+
+    // Level and parse strategy of this run (longest match or minimum bit cost).
+    private final CompressionOptions options;
+
+    // Word boundaries of this run (written to the header for the Decoder).
+    private final Tokenizer tokenizer;
+
+    // Turns the chosen symbols into bits (its backend is written to the header for the Decoder).
+    private final EntropyCoder coder;
+
+    // Phrase leaves of the dictionary by their bytes, and the first two bytes of every phrase
+    // (a cheap filter before the lookup). Empty unless the run mined phrases.
+    private final Map<ByteArrayWrapper, ContextLeaf> phrases = new HashMap<>();
+    private final BitSet phrasePrefixes = new BitSet(1 << 16);
+
+    // Bits already written for recent words, one cache per encoding thread; null unless the coder
+    // writes plain concatenated codes.
+    private final ThreadLocal<WordCache> wordCaches;
+
+    // Off-heap pattern codes of the dictionary, probed instead of the contexts' sub-dictionaries; null to
+    // use those. Owned by the caller, which closes it after the run.
+    private final PatternArena arena;
+
+    // Log templates of the run and the codes of their ids (the escape id last), or null without templates.
+    private final TemplateTable templates;
+    private final String[] templateCodes;
+
+    // Receives the ENCODE stage timings and the greedy matching counters.
+    private final MetricsListener metrics;
 
-    public Encoder(HNode root, Map<Byte, ContextLeaf> dictionary) {
+    // Per-run totals, only maintained while metrics are enabled.
+    private final LongAdder blockCpuNanos = new LongAdder();
+    private long bytesOut;
+
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary) {
+        this(root, dictionary, Constant.DEFAULT_BLOCK_SIZE, 1);
+    }
+
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary, int blockSize, int threads) {
+        this(root, dictionary, blockSize, threads, MetricsListener.NOOP);
+    }
+
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary, int blockSize, int threads, MetricsListener metrics) {
+        this(root, dictionary, blockSize, threads, CompressionOptions.defaults(), metrics);
+    }
+
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary, int blockSize, int threads,
+                   CompressionOptions options, MetricsListener metrics) {
+        this(root, dictionary, null, blockSize, threads, options, metrics);
+    }
+
+    /**
+     * @param templates Log templates mined with the dictionary (see {@code FrequencyService#selectTemplates}),
+     *                  or null to encode token by token.
+     */
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary, TemplateTable templates, int blockSize, int threads,
+                   CompressionOptions options, MetricsListener metrics) {
+        this(root, dictionary, templates, null, blockSize, threads, options, metrics);
+    }
+
+    /**
+     * @param arena Pattern codes compiled off-heap from the same dictionary (see {@code PatternArena#compile}),
+     *              or null to look them up in the contexts. Must stay open until the run is done.
+     */
+    public Encoder(HNode root, Map<Integer, ContextLeaf> dictionary, TemplateTable templates, PatternArena arena,
+                   int blockSize, int threads, CompressionOptions options, MetricsListener metrics) {
+        if(blockSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Block size and thread count must be positive");
+        }
         this.root = root;
         this.dictionary = dictionary;
+        this.arena = arena;
+        this.blockSize = blockSize;
+        this.threads = threads;
+        this.options = options;
+        this.tokenizer = options.configuredTokenizer();
+        this.coder = options.coder().create(root, tokenizer.separators());
+        this.wordCaches = coder.concatenatesCodes()
+                ? ThreadLocal.withInitial(() -> new WordCache(Constant.WORD_CACHE_ENTRIES, Constant.WORD_CACHE_MAX_LENGTH))
+                : null;
+        this.metrics = metrics;
+        for(ContextLeaf leaf : dictionary.values()) {
+            if(!leaf.isPhrase()) continue;
+            byte[] phrase = leaf.getSymbolBytes();
+            phrases.put(new ByteArrayWrapper(phrase), leaf);
+            phrasePrefixes.set(prefixOf(phrase, 0));
+        }
+
+        this.templates = templates;
+        if(templates != null) {
+            // The id table is a sub-tree of its own, built like a context's pattern tree.
+            HuffmanStructure.buildSubTree(templates.getIdTable());
+            templates.getIdTable().generateCode();
+            this.templateCodes = new String[templates.size() + 1];
+            for(int id = 0; id <= templates.size(); id++) {
+                templateCodes[id] = templates.getCode(id);
+            }
+        } else {
+            this.templateCodes = null;
+        }
     }
 
     /**
@@ -38,22 +172,13 @@ public class Encoder {
      * @param onProgress  Callback function to report progress percentage.
      */
     public void compress(String inputFile, String outputFile, long totalSize, Consumer<Double> onProgress) throws IOException {
-        System.out.println("Compressing and File Writing");
-
         // Use Buffered streams for performance optimization (minimizes disk I/O).
-        // BitWriter is used to write variable-length bits (Huffman codes) to the stream.
-        try(FileOutputStream fos = new FileOutputStream(outputFile);
-            BufferedOutputStream bos = new BufferedOutputStream(fos);
-            BitWriter bitWriter = new BitWriter(bos)) {
-
-            // Step 1: Write the Header (Dictionary) so the decoder can rebuild the tree.
-            writeHeader(fos);
+        try(FileInputStream fis = new FileInputStream(inputFile);
+            FileOutputStream fos = new FileOutputStream(outputFile);
+            BufferedOutputStream bos = new BufferedOutputStream(fos)) {
 
-            // Step 2: Encode the actual content of the file.
-            encodeContent(inputFile, bitWriter, totalSize, onProgress);
+            compress(fis, bos, totalSize, onProgress);
         }
-
-        System.out.println("Compressing complete... " + outputFile);
     }
 
     // Overloaded method for simple compression calls without progress tracking.
@@ -61,133 +186,531 @@ public class Encoder {
         compress(inputFile, outputFile, 1, null);
     }
 
+    /**
+     * Stream based compression, used by the file based entry point and by headless callers.
+     * The streams are not closed; the output is flushed when the last block has been written.
+     */
+    public void compress(InputStream input, OutputStream output, long totalSize, Consumer<Double> onProgress) throws IOException {
+        DataOutputStream dos = new DataOutputStream(output);
+        StageTimer timer = metrics.isEnabled() ? StageTimer.start() : null;
+        blockCpuNanos.reset();
+        bytesOut = 0;
+
+        // Step 1: Write the Header (Dictionary) so the decoder can rebuild the tree.
+        writeHeader(dos);
+
+        // Step 2: Encode the actual content of the file.
+        long bytesIn = encodeContent(input, dos, totalSize, onProgress);
+        dos.flush();
+
+        if(timer != null) {
+            // Blocks encoded on the pool are measured by the workers; the rest is the writer thread.
+            long cpu = threads > 1 ? timer.cpuNanos() + blockCpuNanos.sum() : timer.cpuNanos();
+            metrics.stageCompleted(Stage.ENCODE, timer.wallNanos(), cpu, bytesIn, bytesOut);
+        }
+    }
+
+    // Size in bytes of the header compress() writes, for size estimates.
+    public long headerBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeHeader(new DataOutputStream(bytes));
+        return bytes.size();
+    }
+
     /**
      * Serializes the Dictionary (Frequency Map) to the beginning of the file.
      * This creates a self-contained compressed file that holds its own decoding key.
+     * The serialized bytes are length-prefixed so the decoder never reads past them.
      */
-    private void writeHeader(OutputStream outputFile) throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(outputFile);
-        oos.writeObject(this.dictionary);
-        oos.flush();
+    private void writeHeader(DataOutputStream dos) throws IOException {
+        dos.writeInt(Constant.FILE_MAGIC);
+        dos.writeByte(Constant.FORMAT_VERSION);
+        dos.writeByte(options.level().id());
+        dos.writeInt(blockSize);
+        dos.writeInt(options.maxTokenLength());
+        byte[] separators = tokenizer.separators().toBytes();
+        dos.writeShort(separators.length);
+        dos.write(separators);
+        dos.writeByte(tokenizer.id());
+        dos.writeByte(coder.backend().id());
+
+        ByteArrayOutputStream dictionaryBytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream oos = new ObjectOutputStream(dictionaryBytes)) {
+            oos.writeObject(this.dictionary);
+        }
+        dos.writeInt(dictionaryBytes.size());
+        dictionaryBytes.writeTo(dos);
+
+        ByteArrayOutputStream templateBytes = new ByteArrayOutputStream();
+        if(templates != null) {
+            try(ObjectOutputStream oos = new ObjectOutputStream(templateBytes)) {
+                oos.writeObject(templates);
+            }
+        }
+        dos.writeInt(templateBytes.size());
+        templateBytes.writeTo(dos);
+        bytesOut += 26 + separators.length + dictionaryBytes.size() + templateBytes.size();
     }
 
     /**
-     * Reads the input file byte-by-byte and processes it into "Words".
+     * Reads the input block by block and writes the encoded blocks in their original order.
+     * <p>
+     * With more than one thread, up to {@code 2 * threads} blocks are encoded concurrently.
+     * The dictionary is read-only at this point, so workers can share it safely.
+     *
+     * @return The number of input bytes encoded.
+     */
+    private long encodeContent(InputStream input, DataOutputStream dos, long totalSize, Consumer<Double> onProgress) throws IOException {
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        ArrayDeque<Future<EncodedBlock>> inFlight = new ArrayDeque<>();
+        long bytesReadSoFar = 0;
+
+        try {
+            while(true) {
+                byte[] block = new byte[blockSize];
+                int length = input.readNBytes(block, 0, blockSize);
+                if(length <= 0) break;
+
+                if(pool == null) {
+                    inFlight.add(CompletableFuture.completedFuture(encodeOrStore(block, length)));
+                } else {
+                    inFlight.add(pool.submit(() -> encodeBlockMeasured(block, length)));
+                }
+
+                // Bound the number of buffered blocks to keep memory usage flat.
+                while(inFlight.size() >= threads * 2 || (pool == null && !inFlight.isEmpty())) {
+                    bytesReadSoFar += writeBlock(dos, inFlight.poll());
+                    reportProgress(onProgress, bytesReadSoFar, totalSize);
+                }
+            }
+
+            // Drain the remaining blocks.
+            while(!inFlight.isEmpty()) {
+                bytesReadSoFar += writeBlock(dos, inFlight.poll());
+                reportProgress(onProgress, bytesReadSoFar, totalSize);
+            }
+
+            // End of stream marker.
+            dos.writeInt(0);
+            bytesOut += 4;
+            return bytesReadSoFar;
+        } finally {
+            if(pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // Writes one finished block: [Raw Length][Block Type][Encoded Length][Encoded Bits or Raw Bytes].
+    private int writeBlock(DataOutputStream dos, Future<EncodedBlock> pending) throws IOException {
+        EncodedBlock encoded;
+        try {
+            encoded = pending.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression interrupted");
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException io) throw io;
+            throw new IOException("Block encoding failed", e.getCause());
+        }
+
+        dos.writeInt(encoded.rawLength());
+        dos.writeByte(encoded.type());
+        dos.writeInt(encoded.length());
+        dos.write(encoded.data(), 0, encoded.length());
+        bytesOut += 9 + encoded.length();
+        return encoded.rawLength();
+    }
+
+    /**
+     * A finished block. For stored blocks {@code data} is the input buffer itself (no copy).
+     *
+     * @param type      {@link Constant#BLOCK_HUFFMAN} or {@link Constant#BLOCK_STORED}.
+     * @param data      The bytes to write.
+     * @param length    Number of valid bytes in {@code data}.
+     * @param rawLength Number of input bytes the block represents.
+     */
+    private record EncodedBlock(int type, byte[] data, int length, int rawLength) {}
+
+    /**
+     * Encodes a block, or stores it raw when encoding would not pay off.
      * <p>
      * Logic:
-     * - Accumulates bytes into a buffer until a separator (space, dot, etc.) is found.
-     * - Encodes the accumulated word.
-     * - Encodes the separator (checking if it belongs to the previous word's context).
+     * 1. **Entropy Check:** If the order-0 entropy of the block is close to 8 bits per byte,
+     *    no code can shrink it: the block is stored without running the matcher at all.
+     *    An empty dictionary (the preflight skipped the analysis) stores every block as well.
+     * 2. **Encoding:** Otherwise the block is encoded normally.
+     * 3. **Size Check:** If the encoded bits are not smaller than the input, or some bytes had no
+     *    code in the model (they would be lost), the raw bytes are stored instead.
      */
-    private void encodeContent(String inputFile, BitWriter bitWriter, long totalSize, Consumer<Double> onProgress) throws IOException {
+    private EncodedBlock encodeOrStore(byte[] block, int length) throws IOException {
+        EncodeBlockEvent event = new EncodeBlockEvent();
+        event.begin();
+        EncodedBlock result;
+        int words = 0;
+
+        if(dictionary.isEmpty() || EntropyUtils.orderZeroEntropy(block, 0, length) >= Constant.STORED_ENTROPY_THRESHOLD) {
+            result = new EncodedBlock(Constant.BLOCK_STORED, block, length, length);
+        } else {
+            MatchCounter counter = new MatchCounter();
+            byte[] encoded = encodeBlock(block, length, counter);
+            words = (int) counter.words;
+            if(metrics.isEnabled()) {
+                metrics.greedyMatches(counter.words, counter.probes, counter.fallbacks);
+                metrics.wordCache(counter.cacheLookups, counter.cacheHits);
+            }
 
-        try(FileInputStream fis = new FileInputStream(inputFile);
-            BufferedInputStream bis = new BufferedInputStream(fis)){
+            if(counter.fallbacks > 0 || encoded.length >= length) {
+                result = new EncodedBlock(Constant.BLOCK_STORED, block, length, length);
+            } else {
+                result = new EncodedBlock(Constant.BLOCK_HUFFMAN, encoded, encoded.length, length);
+            }
+        }
 
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        boolean stored = result.type() == Constant.BLOCK_STORED;
+        if(stored && metrics.isEnabled()) {
+            metrics.blockStored(length);
+        }
+        if(event.shouldCommit()) {
+            event.rawBytes = length;
+            event.encodedBytes = result.length();
+            event.words = words;
+            event.stored = stored;
+            event.commit();
+        }
+        return result;
+    }
 
-            int data;
-            long bytesReadSoFar = 0;
+    private void reportProgress(Consumer<Double> onProgress, long bytesReadSoFar, long totalSize) {
+        if(onProgress != null) {
+            double percent = (double) bytesReadSoFar / totalSize * 100;
+            onProgress.accept(percent > 100 ? 100 : percent);
+        }
+    }
 
-            // Read the file byte by byte until End of Stream (-1).
-            while((data = bis.read()) != -1) {
-                bytesReadSoFar++;
+    /**
+     * Encodes one block into a self-contained bit sequence, processing it into "Words".
+     * <p>
+     * Logic:
+     * - Splits the block with the job's tokenizer (separators such as space and dot end a word).
+     * - Encodes the word between the previous separator and this one.
+     * - Encodes the separator (checking if it belongs to the previous word's context).
+     * - A word still open at the end of the block is encoded without a separator,
+     *   exactly as {@code ByteReader} counted it during the Analysis Phase.
+     */
+    byte[] encodeBlock(byte[] block, int length) throws IOException {
+        return encodeBlock(block, length, null);
+    }
 
-                // Report progress every 10KB.
-                if(onProgress != null && bytesReadSoFar % 10240 == 0) {
-                    double percent = (double) bytesReadSoFar / totalSize * 100;
-                    onProgress.accept(percent);
-                }
+    // Same as above, counting words, probes and fallbacks into 'counter' when it is not null.
+    private byte[] encodeBlock(byte[] block, int length, MatchCounter counter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, length / 2));
+        try(BitWriter bitWriter = new BitWriter(out)) {
+            SymbolWriter symbols = coder.newWriter(bitWriter);
+            encodeContent(block, length, symbols, counter);
+            symbols.finish();
+        }
+        return out.toByteArray();
+    }
 
-                byte byteValue = (byte) data;
+    /**
+     * Returns the number of bits {@link #encodeBlock(byte[], int)} would produce for the block,
+     * without producing any output. The same word/pattern logic runs against a {@link BitCounter}
+     * (with rANS, the block is coded in full and only its size is kept). A block with bytes the
+     * model has no code for counts as stored raw.
+     */
+    public long estimateBlockBits(byte[] block, int length) throws IOException {
+        BitCounter bitCounter = new BitCounter();
+        SymbolWriter symbols = coder.newWriter(bitCounter);
+        MatchCounter counter = new MatchCounter();
+        encodeContent(block, length, symbols, counter);
+        symbols.finish();
+        return counter.fallbacks > 0 ? (long) length * Byte.SIZE : bitCounter.getBitCount();
+    }
 
-                // If the current byte is a separator, it marks the end of a word.
-                if (SeparatorUtils.isSeparator(byteValue)) {
-                    // 1. Encode the accumulated word (if any).
-                    if(bos.size() > 0){
-                        encodeWord(bos.toByteArray(), bitWriter);
-                    }
+    // Content of a block, shared by encodeBlock and estimateBlockBits: line by line with log templates,
+    // otherwise token by token (with phrases, if the dictionary has any).
+    private void encodeContent(byte[] block, int length, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        if(templates != null) {
+            encodeLines(block, length, symbols, counter);
+        } else if(!phrases.isEmpty()) {
+            encodeTokensWithPhrases(block, length, symbols, counter);
+        } else {
+            encodeTokens(block, 0, length, symbols, counter);
+        }
+    }
+
+    /**
+     * Word/separator loop over {@code block[from, to)}. Returns the number of words.
+     * The range is split by the job's {@link Tokenizer}, the same one {@code ByteReader} used.
+     * <p>
+     * A separator directly after a complete word (e.g. a forced split at {@code maxTokenLength})
+     * has no word before it as far as the Decoder is concerned, so the tokenizer reports it alone
+     * and it is written with its global code.
+     */
+    private int encodeTokens(byte[] block, int from, int to, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        int[] words = new int[1];
+
+        tokenizer.tokenize(block, from, to, options.maxTokenLength(), new Tokenizer.TokenVisitor() {
+            @Override
+            public void word(byte[] data, int from, int to) throws IOException {
+                encodeWord(data, from, to, symbols, counter);
+                words[0]++;
+            }
 
-                    // 2. Handle the separator logic.
-                    if(bos.size() > 0){
-                        // Determine the context (first letter) of the word we just finished.
-                        byte contextByte = bos.toByteArray()[0];
-                        ContextLeaf contextLeaf = this.dictionary.get(contextByte);
-
-                        String localSepCode = null;
-                        if(contextLeaf != null) {
-                            // Check if this specific separator exists as a pattern in the word's context.
-                            // (e.g., does "word" + " " occur often enough to have a specific code?)
-                            localSepCode = contextLeaf.getSubCode(new ByteArrayWrapper(new byte[]{byteValue}));
-                        }
-
-                        if(localSepCode != null){
-                            bitWriter.writeBits(localSepCode);
-                        }else{
-                            // Fallback: Encode using the global dictionary if not found in context.
-                            encodeGlobalSeparator(byteValue, bitWriter);
-                        }
-                    } else {
-                        // If there was no preceding word (e.g., file starts with a space), use global encoding.
-                        encodeGlobalSeparator(byteValue, bitWriter);
+            @Override
+            public void separator(byte[] data, int index, int wordStart) throws IOException {
+                encodeSeparator(data, index, wordStart, symbols, counter);
+            }
+        });
+        return words[0];
+    }
+
+    /**
+     * Encodes a block line by line with the log templates.
+     * <p>
+     * Logic:
+     * 1. **Template Line:** A complete line matching a template is written as the template's code,
+     *    followed by each wildcard field and the space or newline after it, as regular tokens.
+     *    The Decoder stops a field at that space or newline (the fields themselves contain neither).
+     * 2. **Other Lines:** The escape code, then the whole line including its newline as regular tokens.
+     *    The last line of a block may have no newline; it ends with the block.
+     */
+    private void encodeLines(byte[] block, int length, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        int[] starts = new int[Constant.MAX_TEMPLATE_FIELDS];
+        int[] ends = new int[Constant.MAX_TEMPLATE_FIELDS];
+        int lineStart = 0;
+
+        while(lineStart < length) {
+            int lineEnd = lineStart;
+            while(lineEnd < length && block[lineEnd] != '\n') lineEnd++;
+
+            int fields = lineEnd < length ? TemplateTable.splitFields(block, lineStart, lineEnd, starts, ends) : -1;
+            int id = fields > 0 ? templates.match(block, starts, ends, fields) : -1;
+            if(id < 0) {
+                symbols.write(templates.getIdTable(), templateCodes[templates.escapeId()]);
+                encodeTokens(block, lineStart, Math.min(lineEnd + 1, length), symbols, counter);
+            } else {
+                symbols.write(templates.getIdTable(), templateCodes[id]);
+                byte[][] template = templates.get(id);
+                for(int i = 0; i < fields; i++) {
+                    if(template[i] == null) {
+                        encodeTokens(block, starts[i], ends[i] + 1, symbols, counter);
                     }
-                    bos.reset(); // Clear the buffer for the next word.
-                }else{
-                    // If not a separator, add the byte to the current word buffer.
-                    bos.write(byteValue);
                 }
             }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * Same tokens as {@link #encodeTokens}, but a run of whole tokens that forms a phrase is written
+     * with the phrase's code. A token here is a word with its separator, or a lone separator: the
+     * Decoder has no context at either end of one, so a phrase can stand in for any run of them.
+     * The tokens of the block are collected first, then the longest phrase is tried at each token.
+     */
+    private int encodeTokensWithPhrases(byte[] block, int length, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        TokenList tokens = new TokenList();
+        tokenizer.tokenize(block, length, options.maxTokenLength(), new Tokenizer.TokenVisitor() {
+            @Override
+            public void word(byte[] data, int from, int to) {
+                tokens.add(from, to, to);
+            }
 
-            // Encode any remaining bytes in the buffer after the loop finishes.
-            if(bos.size() > 0){
-                encodeWord(bos.toByteArray(), bitWriter);
+            @Override
+            public void separator(byte[] data, int index, int wordStart) {
+                if(wordStart >= 0) {
+                    tokens.end[tokens.size - 1] = index + 1; // Attached to the word just added.
+                } else {
+                    tokens.add(index, index, index + 1);
+                }
+            }
+        });
+
+        int words = 0;
+        for(int i = 0; i < tokens.size; ) {
+            int matched = encodePhrase(block, tokens, i, symbols);
+            if(matched > 0) {
+                i += matched;
+                continue;
             }
 
+            int start = tokens.start[i], wordEnd = tokens.wordEnd[i], end = tokens.end[i];
+            if(wordEnd > start) {
+                encodeWord(block, start, wordEnd, symbols, counter);
+                words++;
+            }
+            if(end > wordEnd) {
+                encodeSeparator(block, wordEnd, wordEnd > start ? start : -1, symbols, counter);
+            }
+            i++;
         }
+        return words;
+    }
 
+    /**
+     * Writes the longest phrase made of the tokens from index {@code i} on (at least two of them).
+     *
+     * @return The number of tokens the phrase covers, or 0 if none matched (nothing is written).
+     */
+    private int encodePhrase(byte[] block, TokenList tokens, int i, SymbolWriter symbols) throws IOException {
+        int maxTokens = Math.min(Constant.MAX_PHRASE_TOKENS, tokens.size - i);
+        int start = tokens.start[i];
+        if(maxTokens < 2 || !phrasePrefixes.get(prefixOf(block, start))) return 0;
+
+        for(int count = maxTokens; count >= 2; count--) {
+            int end = tokens.end[i + count - 1];
+            if(end - start > Constant.MAX_PHRASE_LENGTH) continue;
+            ContextLeaf phrase = phrases.get(new ByteArrayWrapper(Arrays.copyOfRange(block, start, end)));
+            if(phrase != null) {
+                symbols.write(null, phrase.getCode());
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    // First two bytes at data[from] as an index into phrasePrefixes.
+    private static int prefixOf(byte[] data, int from) {
+        return (data[from] & 0xFF) << 8 | (data[from + 1] & 0xFF);
+    }
+
+    /**
+     * Encodes a separator, in the context of the word before it when that context has a code for it.
+     *
+     * @param wordStart Start of the preceding word, or -1 if there is none (e.g. the block starts with a space).
+     */
+    private void encodeSeparator(byte[] block, int index, int wordStart, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        byte byteValue = block[index];
+        boolean written = false;
+        if(wordStart >= 0) {
+            // Determine the context (first letter) of the word we just finished.
+            ContextLeaf contextLeaf = contextOf(block, wordStart, index);
+            if(contextLeaf != null) {
+                // Write this specific separator if it exists as a pattern in the word's context.
+                // (e.g., does "word" + " " occur often enough to have a specific code?)
+                written = writePattern(block, index, index + 1, symbols, contextLeaf);
+            }
+        }
+
+        if(!written){
+            // Fallback: Encode using the global dictionary if not found in context.
+            encodeGlobalSeparator(byteValue, symbols, counter);
+        }
+    }
+
+    // Pool task: encodes a block and adds the worker's CPU time to the run total.
+    private EncodedBlock encodeBlockMeasured(byte[] block, int length) throws IOException {
+        if(!metrics.isEnabled()) {
+            return encodeOrStore(block, length);
+        }
+        long cpuStart = StageTimer.currentThreadCpuNanos();
+        try {
+            return encodeOrStore(block, length);
+        } finally {
+            blockCpuNanos.add(StageTimer.currentThreadCpuNanos() - cpuStart);
+        }
     }
 
     /**
      * Encodes a single word using the Pattern-Aware Logic.
-     * Structure: [Context Code] + [Greedy Pattern Codes...]
+     * Structure: [Context Code] + [Pattern Codes...]
+     * <p>
+     * A short word is looked up in the thread's {@link WordCache} first: if it was encoded before,
+     * its bits are written in one go. Otherwise it is encoded and recorded, unless some of its bytes
+     * had no code (such a block is stored raw, and the word must not be written from the cache later).
+     *
+     * @param buffer The buffer holding the word.
+     * @param from   Index of the first byte of the word (inclusive).
+     * @param to     Index after the last byte of the word (exclusive).
+     * @param counter Greedy matching counters of the block, null when metrics are disabled.
      */
-    private void encodeWord(byte[] word, BitWriter bitWriter) throws IOException {
-        if(word.length == 0){return;}
+    private void encodeWord(byte[] buffer, int from, int to, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        if(to <= from){return;}
 
-        // 1. Identify Context (First letter).
-        byte contextByte = word[0];
+        WordCache cache = wordCaches != null ? wordCaches.get() : null;
+        if(cache == null || !cache.fits(from, to)){
+            encodeWordUncached(buffer, from, to, symbols, counter);
+            return;
+        }
 
-        ContextLeaf contextNode = this.dictionary.get(contextByte);
+        int hash = WordCache.hash(buffer, from, to);
+        int slot = cache.find(buffer, from, to, hash);
+        if(counter != null) counter.cacheLookups++;
+        if(slot >= 0){
+            symbols.writeBits(cache.bits(slot), cache.bitCount(slot));
+            if(counter != null) counter.cacheHits++;
+            return;
+        }
+
+        // Fallbacks are only counted with a counter: without one, the word is not known to be complete.
+        long fallbacks = counter != null ? counter.fallbacks : 0;
+        encodeWordUncached(buffer, from, to, cache.record(symbols), counter);
+        if(counter != null && counter.fallbacks == fallbacks){
+            cache.put(buffer, from, to, hash);
+        }
+    }
+
+    private void encodeWordUncached(byte[] buffer, int from, int to, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        // 1. Identify Context (First letter, or first character with code-point contexts).
+        ContextLeaf contextNode = contextOf(buffer, from, to);
 
         if(contextNode == null){
-            throw new IOException("Dictionary match failed for byte : " + contextByte);
+            if(counter != null){
+                counter.fallbacks++; // Not analyzed (an incompressible segment): the block will be stored raw.
+                return;
+            }
+            throw new IOException("Dictionary match failed for context : " + ContextLeaf.symbolOf(buffer, from,
+                    tokenizer.contextLength(buffer, from, to)));
         }
 
         // Write the Huffman code for the Context itself (Upper Layer).
-        bitWriter.writeBits(contextNode.getCode());
+        symbols.write(null, contextNode.getCode());
+
+        // 2. Encode the rest of the word using the configured parse (Lower Layer).
+        int rest = from + contextNode.getSymbolBytes().length;
+        if(rest < to){
+            if(contextNode.getMaxPatternLength() <= 1){
+                // Single-byte patterns only ("fast" level): nothing to parse, use the code table.
+                processSingleByteMatch(buffer, rest, to, symbols, contextNode, counter);
+            }else if(options.parseStrategy() == ParseStrategy.OPTIMAL){
+                processOptimalMatch(buffer, rest, to, symbols, contextNode, counter);
+            }else{
+                processGreedyMatch(buffer, rest, to, symbols, contextNode, counter);
+            }
+        }
+    }
 
-        // 2. Encode the rest of the word using Greedy Matching (Lower Layer).
-        if(word.length > 1){
-            byte[] remain =  Arrays.copyOfRange(word, 1, word.length);
-            processGreedyMatch(remain,  bitWriter, contextNode);
+    /**
+     * Context of the word {@code data[from, to)}: its order-2 context if the dictionary kept one
+     * (see {@code FrequencyService#pruneContexts}), otherwise the tokenizer's context symbol.
+     * Null if the dictionary has neither.
+     */
+    private ContextLeaf contextOf(byte[] data, int from, int to) {
+        int contextLength = tokenizer.contextLength(data, from, to);
+        if(options.contextOrder() == 2 && contextLength == 1 && to - from > 1) {
+            ContextLeaf pair = this.dictionary.get(ContextLeaf.pairSymbol(data[from], data[from + 1]));
+            if(pair != null) return pair;
         }
+        return this.dictionary.get(ContextLeaf.symbolOf(data, from, contextLength));
     }
 
     /**
      * Encodes a separator globally when it cannot be found within a specific context.
      */
-    private void encodeGlobalSeparator(byte separator, BitWriter bitWriter) throws IOException {
-        ContextLeaf globalSepNode = this.dictionary.get(separator);
+    private void encodeGlobalSeparator(byte separator, SymbolWriter symbols, MatchCounter counter) throws IOException {
+        ContextLeaf globalSepNode = this.dictionary.get((int) separator);
         if(globalSepNode != null){
-            bitWriter.writeBits(globalSepNode.getCode());
-        } else {
-            System.out.println("Char couldn't found in Map : " + (char) separator);
+            symbols.write(null, globalSepNode.getCode());
+        } else if(counter != null) {
+            counter.fallbacks++; // The block will be stored raw.
         }
+        // Without a counter (benchmarks), the separator is left out.
     }
 
     /**
      * * THE CORE ALGORITHM: Greedy Match Strategy *
-     * Iterates through the byte array and tries to find the LONGEST matching pattern
+     * Iterates through the byte range and tries to find the LONGEST matching pattern
      * available in the current Context's sub-tree.
      * <p>
      * Example: Input "ther", Context 't'. Remaining: "her".
@@ -195,22 +718,29 @@ public class Encoder {
      * - Tries "he"  -> Match found! Write code for "he".
      * - Advances start index, processes remaining "r".
      */
-    private void processGreedyMatch(byte[] byteValue, BitWriter bitWriter, ContextLeaf contextNode) throws IOException {
-        int start = 0;
-        while (start < byteValue.length) {
+    void processGreedyMatch(byte[] byteValue, int from, int to, BitWriter bitWriter, ContextLeaf contextNode) throws IOException {
+        SymbolWriter symbols = coder.newWriter(bitWriter);
+        processGreedyMatch(byteValue, from, to, symbols, contextNode, null);
+        symbols.finish();
+    }
+
+    // Same as above, counting probes and fallbacks into 'counter' when it is not null.
+    private void processGreedyMatch(byte[] byteValue, int from, int to, SymbolWriter symbols, ContextLeaf contextNode,
+                                    MatchCounter counter) throws IOException {
+        if(counter != null) counter.words++;
+        int start = from;
+        while (start < to) {
             boolean found = false;
 
             // Greedy Loop: Start checking from the longest possible substring (end) down to the shortest.
-            for(int end = byteValue.length; end > start; end--){
-                byte[] sub = Arrays.copyOfRange(byteValue, start, end);
-                ByteArrayWrapper key = new ByteArrayWrapper(sub);
-
-                // Check if this pattern has a code in the sub-tree.
-                String code = contextNode.getSubCode(key);
-
-                if(code != null){
-                    // Match found! Write bits and advance the start pointer.
-                    bitWriter.writeBits(code);
+            // Nothing longer than the context's longest pattern can match, which keeps the cost per byte bounded.
+            for(int end = Math.min(to, start + Math.max(1, contextNode.getMaxPatternLength())); end > start; end--){
+                // Check if this pattern has a code in the sub-tree; if so, its bits are written.
+                boolean matched = writePattern(byteValue, start, end, symbols, contextNode);
+                if(counter != null) counter.probes++;
+
+                if(matched){
+                    // Match found! Advance the start pointer.
                     start = end;
                     found = true;
                     break;
@@ -219,8 +749,145 @@ public class Encoder {
 
             // If no pattern matches (should not happen if single characters are in the dict), skip byte.
             if(!found){
+                if(counter != null) counter.fallbacks++;
                 start++;
             }
         }
     }
+
+    /**
+     * Table Encode: every byte is its own pattern, looked up directly by value.
+     * Used when a context holds no multi-byte patterns, where greedy matching would only
+     * produce single-byte matches after a series of failed probes.
+     */
+    private void processSingleByteMatch(byte[] byteValue, int from, int to, SymbolWriter symbols, ContextLeaf contextNode,
+                                        MatchCounter counter) throws IOException {
+        if(counter != null) counter.words++;
+        for(int i = from; i < to; i++){
+            String code = contextNode.getSingleByteCode(byteValue[i]);
+            if(counter != null) counter.probes++;
+
+            if(code != null){
+                symbols.write(contextNode, code);
+            }else if(counter != null){
+                counter.fallbacks++;
+            }
+        }
+    }
+
+    /**
+     * * Optimal Parse Strategy (Minimum Bit Cost) *
+     * Finds the split of the byte range into patterns whose codes have the smallest total length.
+     * <p>
+     * The word is a small graph: position i links to position j when bytes [i, j) form a pattern
+     * of the context, weighted by the length of its code. The cheapest path from 'from' to 'to'
+     * is found by a backward dynamic program:
+     * - cost[to] = 0
+     * - cost[i]  = min over patterns [i, j) of (codeLength(i, j) + cost[j])
+     * <p>
+     * Example: Context 't', remaining "here". If "her" has a 14-bit code and "e" a 3-bit code,
+     * greedy writes 17 bits; when "he" (4 bits) and "re" (5 bits) exist, this writes 9.
+     * Ties prefer the longer pattern, so with equal costs the output matches greedy.
+     * With the rANS coder the Huffman code lengths still serve as costs: they are within a bit of
+     * the actual cost of each pattern, and keep the parse independent of the backend.
+     */
+    void processOptimalMatch(byte[] byteValue, int from, int to, SymbolWriter symbols, ContextLeaf contextNode,
+                             MatchCounter counter) throws IOException {
+        if(counter != null) counter.words++;
+        int n = to - from;
+        int maxLength = Math.max(1, contextNode.getMaxPatternLength());
+
+        // cost[i]: cheapest encoding of [from + i, to). next[i]: end of the first pattern on that path,
+        // matched[i]: whether that is a pattern at all.
+        long[] cost = new long[n + 1];
+        int[] next = new int[n + 1];
+        boolean[] matched = new boolean[n + 1];
+
+        for(int i = n - 1; i >= 0; i--){
+            // A byte without any pattern is skipped, exactly like the greedy fallback.
+            cost[i] = UNMATCHED_COST + cost[i + 1];
+            next[i] = i + 1;
+            matched[i] = false;
+
+            for(int j = Math.min(n, i + maxLength); j > i; j--){
+                int codeLength = codeLength(byteValue, from + i, from + j, contextNode);
+                if(counter != null) counter.probes++;
+
+                if(codeLength >= 0 && codeLength + cost[j] < cost[i]){
+                    cost[i] = codeLength + cost[j];
+                    next[i] = j;
+                    matched[i] = true;
+                }
+            }
+        }
+
+        // Walk the cheapest path and emit its codes.
+        for(int i = 0; i < n; i = next[i]){
+            if(matched[i]){
+                writePattern(byteValue, from + i, from + next[i], symbols, contextNode);
+            }else if(counter != null){
+                counter.fallbacks++;
+            }
+        }
+    }
+
+    /**
+     * Writes the code of the pattern {@code data[from, to)} in the context, if it has one.
+     * With a {@link PatternArena}, the lookup reads the input bytes in place and allocates nothing,
+     * and the code is handed to the coder as the bits stored there.
+     *
+     * @return False if the pattern has no code in the context (nothing is written).
+     */
+    private boolean writePattern(byte[] data, int from, int to, SymbolWriter symbols, ContextLeaf contextNode) throws IOException {
+        if(arena != null){
+            long slot = arena.find(contextNode.getSymbol(), data, from, to);
+            if(slot < 0) return false;
+            symbols.write(contextNode, arena.codeBits(slot), arena.codeLength(slot));
+            return true;
+        }
+        String code = contextNode.getSubCode(new ByteArrayWrapper(Arrays.copyOfRange(data, from, to)));
+        if(code == null) return false;
+        symbols.write(contextNode, code);
+        return true;
+    }
+
+    // Length of the code of the pattern data[from, to) in the context, or -1 if it has none.
+    private int codeLength(byte[] data, int from, int to, ContextLeaf contextNode) {
+        if(arena != null){
+            long slot = arena.find(contextNode.getSymbol(), data, from, to);
+            return slot < 0 ? -1 : arena.codeLength(slot);
+        }
+        String code = contextNode.getSubCode(new ByteArrayWrapper(Arrays.copyOfRange(data, from, to)));
+        return code == null ? -1 : code.length();
+    }
+
+    // Matching counters of one block; confined to the thread encoding it.
+    private static final class MatchCounter {
+        long words;
+        long probes;
+        long fallbacks;
+        long cacheLookups;
+        long cacheHits;
+    }
+
+    // Tokens of one block for the phrase matcher: [start, wordEnd) is the word (empty for a lone
+    // separator), [wordEnd, end) its separator (empty if none).
+    private static final class TokenList {
+        int[] start = new int[256];
+        int[] wordEnd = new int[256];
+        int[] end = new int[256];
+        int size;
+
+        void add(int tokenStart, int tokenWordEnd, int tokenEnd) {
+            if(size == start.length) {
+                start = Arrays.copyOf(start, size * 2);
+                wordEnd = Arrays.copyOf(wordEnd, size * 2);
+                end = Arrays.copyOf(end, size * 2);
+            }
+            start[size] = tokenStart;
+            wordEnd[size] = tokenWordEnd;
+            end[size] = tokenEnd;
+            size++;
+        }
+    }
 }
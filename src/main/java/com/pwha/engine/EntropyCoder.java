@@ -0,0 +1,141 @@
+package com.pwha.engine;
+
+import com.pwha.io.BitWriter;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.util.SeparatorSet;
+
+import java.io.IOException;
+
+/**
+ * Turns the symbols chosen by the two-layer model into bits, and back.
+ * <p>
+ * The model decides *what* is coded: a leaf of the Super-Tree, or a pattern in the sub-tree of the
+ * current context (the template id table is such a sub-tree too). The coder decides *how*:
+ * 1. **Huffman:** Each symbol is its Huffman code, written bit by bit ({@link HuffmanCoder}).
+ *    Decoding looks codes up in tables, several short codes at once where the stream allows it.
+ * 2. **rANS:** The same trees give the frequencies, normalized per table; symbols cost their
+ *    fractional information content instead of a whole number of bits ({@link RansCoder}).
+ * <p>
+ * A table is named by its {@link ContextLeaf} (null for the Super-Tree) and a symbol by its Huffman
+ * code in that table: both sides rebuild identical trees, so the code identifies the leaf on either side.
+ * The backend is chosen per file and written to the header ({@link Backend#id()}).
+ */
+public interface EntropyCoder {
+
+    enum Backend {
+        HUFFMAN(0), RANS(1);
+
+        // Stable identifier written to the file header.
+        private final int id;
+
+        Backend(int id) {
+            this.id = id;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public static Backend fromId(int id) {
+            for(Backend backend : values()) {
+                if(backend.id == id) return backend;
+            }
+            throw new IllegalArgumentException("Unknown entropy coder id: " + id);
+        }
+
+        // Parses a backend name such as "huffman" or "rans" (case-insensitive).
+        public static Backend parse(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch(IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown entropy coder: " + name + " (expected huffman or rans)");
+            }
+        }
+
+        /**
+         * Coder for the trees of one file.
+         *
+         * @param superTree  Root of the Super-Tree (null for an empty dictionary).
+         * @param separators Separators of the file: a run of patterns read at once ends after one.
+         */
+        public EntropyCoder create(HNode superTree, SeparatorSet separators) {
+            return switch(this) {
+                case HUFFMAN -> new HuffmanCoder(superTree, separators);
+                case RANS -> new RansCoder(superTree);
+            };
+        }
+    }
+
+    /**
+     * Receives the symbols of one block, in order. Not thread-safe: one writer per block.
+     */
+    interface SymbolWriter {
+
+        /**
+         * @param table Context whose sub-tree holds the symbol, or null for the Super-Tree.
+         * @param code  Huffman code of the symbol in that table.
+         */
+        void write(ContextLeaf table, String code) throws IOException;
+
+        /**
+         * Same as {@link #write(ContextLeaf, String)}, with the code given as the low {@code length}
+         * bits of {@code bits} (e.g. read from a {@code PatternArena}).
+         */
+        default void write(ContextLeaf table, long bits, int length) throws IOException {
+            char[] code = new char[length];
+            for(int i = 0; i < length; i++) {
+                code[i] = ((bits >>> (length - 1 - i)) & 1) == 0 ? '0' : '1';
+            }
+            write(table, new String(code));
+        }
+
+        /**
+         * Writes symbols whose codes were concatenated ahead of time: the low {@code count} bits of
+         * {@code bits}. Only for coders that {@link EntropyCoder#concatenatesCodes()}.
+         */
+        default void writeBits(long bits, int count) throws IOException {
+            throw new UnsupportedOperationException("Coder does not write concatenated codes");
+        }
+
+        // Writes whatever the coder still buffers to the BitWriter (which stays open).
+        void finish() throws IOException;
+    }
+
+    /**
+     * Returns the symbols of one block, in order. Not thread-safe: one reader per block.
+     */
+    interface SymbolReader {
+
+        /**
+         * @param table Context whose sub-tree to read from (already built), or null for the Super-Tree.
+         * @return The leaf decoded, or null at the end of the block (or for an empty tree).
+         */
+        HNode read(ContextLeaf table) throws IOException;
+
+        /**
+         * Reads several patterns of the context's sub-tree at once, if the coder can, and writes
+         * their bytes to {@code out} from {@code at}. The run ends after the first separator
+         * pattern, where the Decoder resets the context; no pattern before it ends with a separator.
+         *
+         * @param maxBytes Longest run the Decoder can take here (at least 1).
+         * @return The number of bytes written, or 0 if there is no run: {@link #read} the next symbol then.
+         */
+        default int readRun(ContextLeaf context, byte[] out, int at, int maxBytes) throws IOException {
+            return 0;
+        }
+    }
+
+    Backend backend();
+
+    // Whether a block is nothing but its symbols' codes, one after another (see SymbolWriter#writeBits).
+    default boolean concatenatesCodes() {
+        return false;
+    }
+
+    // Writer for one block, writing to 'out'.
+    SymbolWriter newWriter(BitWriter out);
+
+    // Reader for one encoded block, as written through newWriter.
+    SymbolReader newReader(byte[] encoded) throws IOException;
+}
@@ -0,0 +1,215 @@
+package com.pwha.engine;
+
+import com.pwha.io.BitReader;
+import com.pwha.io.BitWriter;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.model.node.InternalNode;
+import com.pwha.model.node.SimpleLeaf;
+import com.pwha.util.SeparatorSet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The original backend: every symbol is written as its Huffman code, and read back by walking
+ * the tree bit by bit ('0' left, '1' right) until a leaf is reached.
+ * <p>
+ * Decode Tables: The walk is replaced by a lookup on the next {@link #TABLE_BITS} bits, which gives
+ * the leaf their code starts with and its length; only longer codes walk on from the node reached.
+ * In a context's sub-tree, the same bits often hold several short codes in a row ("ing", "s", " "):
+ * the entry then also keeps that run, its bytes concatenated, so the reader emits all of them at once.
+ * A run ends after a separator, since the next symbol comes from the Super-Tree.
+ */
+final class HuffmanCoder implements EntropyCoder {
+
+    // Bits looked up at once: 2^11 entries keep a table in the L1/L2 cache, and cover the frequent codes.
+    static final int TABLE_BITS = 11;
+
+    private final HNode superTree;
+
+    private final SeparatorSet separators;
+
+    // Decode tables by tree root (nodes compare by identity), built the first time a block needs them.
+    private final ConcurrentHashMap<HNode, DecodeTable> tables = new ConcurrentHashMap<>();
+
+    HuffmanCoder(HNode superTree, SeparatorSet separators) {
+        this.superTree = superTree;
+        this.separators = separators;
+    }
+
+    @Override
+    public Backend backend() {
+        return Backend.HUFFMAN;
+    }
+
+    @Override
+    public boolean concatenatesCodes() {
+        return true;
+    }
+
+    @Override
+    public SymbolWriter newWriter(BitWriter out) {
+        return new SymbolWriter() {
+            @Override
+            public void write(ContextLeaf table, String code) throws IOException {
+                out.writeBits(code);
+            }
+
+            @Override
+            public void write(ContextLeaf table, long bits, int length) throws IOException {
+                out.writeBits(bits, length);
+            }
+
+            @Override
+            public void writeBits(long bits, int count) throws IOException {
+                out.writeBits(bits, count);
+            }
+
+            @Override
+            public void finish() {
+                // Nothing buffered: the bits are already in the BitWriter.
+            }
+        };
+    }
+
+    @Override
+    public SymbolReader newReader(byte[] encoded) {
+        return new Reader(new BitReader(encoded, 0, encoded.length));
+    }
+
+    /**
+     * Reads a block's bit stream. Keeps the Super-Tree's table apart from the current context's: words
+     * alternate between the two, so a single cached entry would miss on every symbol.
+     */
+    private class Reader implements SymbolReader {
+        private final BitReader bitReader;
+        private DecodeTable superTable;
+        private HNode lastRoot;
+        private DecodeTable lastTable;
+
+        Reader(BitReader bitReader) {
+            this.bitReader = bitReader;
+        }
+
+        @Override
+        public HNode read(ContextLeaf table) throws IOException {
+            return readSymbol(table);
+        }
+
+        @Override
+        public int readRun(ContextLeaf context, byte[] out, int at, int maxBytes) throws IOException {
+            HNode root = context.getSubTreeRoot();
+            if(root == null || root.isLeaf()) return 0;
+            DecodeTable t = tableOf(root);
+
+            int index = bitReader.peekBits(TABLE_BITS);
+            int bits = t.runBits[index];
+            int from = t.runStart[index];
+            int length = t.runStart[index + 1] - from;
+            // No run (a long code), too long for the Decoder, or past the end of the block.
+            if(bits == 0 || length > maxBytes || !bitReader.skipBits(bits)) return 0;
+
+            System.arraycopy(t.runBytes, from, out, at, length);
+            return length;
+        }
+
+        // Looks the next code up in the table's tree. Null at the end of the stream (or for an empty tree).
+        private HNode readSymbol(ContextLeaf table) throws IOException {
+            HNode node = table == null ? superTree : table.getSubTreeRoot();
+            if(node == null) return null; // Empty dictionary
+            if(node.isLeaf()) return node; // Single leaf: its code is empty
+
+            DecodeTable t = table == null ? superTable() : tableOf(node);
+            int index = bitReader.peekBits(TABLE_BITS);
+            node = t.first[index];
+            if(node == null || !bitReader.skipBits(t.firstBits[index])) return null; // End of file/stream
+
+            // Codes longer than the table: walk on bit by bit until a leaf is found.
+            while(!node.isLeaf()) {
+                int bit = bitReader.readBit();
+                if(bit == -1) return null; // End of file/stream
+
+                InternalNode internal = (InternalNode) node;
+                // '0' -> Go Left, '1' -> Go Right
+                node = (bit == 0) ? internal.getLeft() : internal.getRight();
+                if(node == null) return null; // Should not happen in a valid tree
+            }
+            return node;
+        }
+
+        private DecodeTable superTable() {
+            if(superTable == null) {
+                superTable = tables.computeIfAbsent(superTree, root -> new DecodeTable(root, separators));
+            }
+            return superTable;
+        }
+
+        private DecodeTable tableOf(HNode root) {
+            if(root != lastRoot) {
+                lastTable = tables.computeIfAbsent(root, r -> new DecodeTable(r, separators));
+                lastRoot = root;
+            }
+            return lastTable;
+        }
+    }
+
+    /**
+     * Lookup table of one tree (with at least two leaves), indexed by the next TABLE_BITS bits of the stream.
+     */
+    private static final class DecodeTable {
+        // The leaf whose code the bits start with and the length of that code; for a longer code,
+        // the internal node reached after all TABLE_BITS bits. Null if the bits leave the tree.
+        final HNode[] first = new HNode[1 << TABLE_BITS];
+        final int[] firstBits = new int[1 << TABLE_BITS];
+
+        // Runs of whole patterns (sub-trees only): the bits they take (0: no run), and their bytes
+        // runBytes[runStart[i], runStart[i + 1]).
+        final int[] runBits = new int[1 << TABLE_BITS];
+        final int[] runStart = new int[(1 << TABLE_BITS) + 1];
+        final byte[] runBytes;
+
+        DecodeTable(HNode root, SeparatorSet separators) {
+            byte[] bytes = new byte[1 << TABLE_BITS];
+            int size = 0;
+
+            for(int index = 0; index < 1 << TABLE_BITS; index++) {
+                runStart[index] = size;
+                int used = 0;
+                while(used < TABLE_BITS) {
+                    // Walk one code from the root, on the bits after the codes already taken.
+                    HNode node = root;
+                    int bit = used;
+                    while(node != null && !node.isLeaf() && bit < TABLE_BITS) {
+                        InternalNode internal = (InternalNode) node;
+                        node = ((index >>> (TABLE_BITS - 1 - bit)) & 1) == 0 ? internal.getLeft() : internal.getRight();
+                        bit++;
+                    }
+                    if(used == 0) {
+                        first[index] = node;
+                        firstBits[index] = bit;
+                    }
+                    if(!(node instanceof SimpleLeaf leaf)) break; // Code continues past the table, or a Super-Tree leaf
+
+                    byte[] pattern = leaf.getPattern().data();
+                    if(pattern.length == 0) break;
+                    boolean separator = pattern.length == 1 && separators.isSeparator(pattern[0]);
+                    // The Decoder resets the context after a run ending in a separator: only a separator pattern may.
+                    if(!separator && separators.isSeparator(pattern[pattern.length - 1])) break;
+
+                    if(size + pattern.length > bytes.length) {
+                        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + pattern.length));
+                    }
+                    System.arraycopy(pattern, 0, bytes, size, pattern.length);
+                    size += pattern.length;
+                    used = bit;
+                    runBits[index] = used;
+                    if(separator) break;
+                }
+            }
+            runStart[1 << TABLE_BITS] = size;
+            this.runBytes = Arrays.copyOf(bytes, size);
+        }
+    }
+}
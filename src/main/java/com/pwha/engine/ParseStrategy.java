@@ -0,0 +1,22 @@
+package com.pwha.engine;
+
+/**
+ * How the Encoder splits a word into the patterns of its context.
+ * <p>
+ * Both strategies produce codes from the same sub-tree, so the Decoder does not need to know
+ * which one was used: only the size of the output and the encoding speed differ.
+ */
+public enum ParseStrategy {
+
+    /**
+     * Always takes the longest pattern that matches at the current position.
+     * Fast, but a long rare pattern can cost more bits than two short frequent ones.
+     */
+    GREEDY,
+
+    /**
+     * Picks the split with the minimum total code length (shortest path over the word,
+     * weighted by the actual code lengths of the sub-dictionary). Slower, smallest output.
+     */
+    OPTIMAL
+}
@@ -0,0 +1,340 @@
+package com.pwha.engine;
+
+import com.pwha.io.BitWriter;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.model.node.InternalNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Table-based rANS backend with two interleaved states (see Duda 2013; Giesen, "Interleaved entropy coders").
+ * <p>
+ * A Huffman code costs a whole number of bits per symbol, so a pattern seen in 90% of a context's
+ * words still costs 1 bit where 0.15 would do. rANS codes each symbol with its actual probability.
+ * <p>
+ * Logic:
+ * 1. **Tables:** Each tree (the Super-Tree, a context's sub-tree, the template id table) becomes a
+ *    table over its leaves, in tree order, with the leaf frequencies normalized to a power of two
+ *    (12 to 20 bits, depending on the number of leaves). Both sides derive it from the same tree.
+ * 2. **Encoding:** rANS is last-in first-out, so a block's symbols are queued and coded backwards
+ *    once it is complete. Symbol i goes through state i % 2, which lets the Decoder's two state
+ *    updates overlap. A state leaves [2^31, 2^63) by shifting 32 bits out as one word.
+ * 3. **Block Layout:** [State 0][State 1] (8 bytes each), then the words in decoding order.
+ * 4. **Decoding:** The low bits of the state index a slot table giving the symbol directly, with
+ *    no tree walk; at most one word is read back per symbol.
+ * A table with a single leaf carries no information: its symbols are neither written nor read.
+ */
+final class RansCoder implements EntropyCoder {
+
+    // States stay in [STATE_LOW, 2^63); renormalization moves 32-bit words.
+    private static final long STATE_LOW = 1L << 31;
+
+    // Bounds of the table precision: four slots per leaf where possible, so that rare leaves lifted
+    // to one slot take little from the others.
+    private static final int MIN_SCALE_BITS = 12;
+    private static final int MAX_SCALE_BITS = 20;
+
+    private static final int LANES = 2;
+
+    private final HNode superTree;
+
+    // Tables by tree root (nodes compare by identity), built the first time a block needs them.
+    // The Encoder only needs the codes of a table, the Decoder only its slots.
+    private final ConcurrentHashMap<HNode, Table> writeTables = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<HNode, Table> readTables = new ConcurrentHashMap<>();
+
+    RansCoder(HNode superTree) {
+        this.superTree = superTree;
+    }
+
+    @Override
+    public Backend backend() {
+        return Backend.RANS;
+    }
+
+    @Override
+    public SymbolWriter newWriter(BitWriter out) {
+        return new Writer(out);
+    }
+
+    @Override
+    public SymbolReader newReader(byte[] encoded) throws IOException {
+        if(encoded.length < LANES * 8) {
+            throw new IOException("Corrupted block: " + encoded.length + " bytes, too short for the coder states");
+        }
+        return new Reader(encoded);
+    }
+
+    /**
+     * Finds the tables of a block's symbols. The Super-Tree's table is kept apart: words alternate
+     * between it and a context's table, so a single cached entry would miss on every symbol.
+     */
+    private final class TableCache {
+        private final ConcurrentHashMap<HNode, Table> tables;
+        private final boolean reading;
+        private Table superTable;
+        private HNode lastRoot;
+        private Table lastTable;
+
+        TableCache(ConcurrentHashMap<HNode, Table> tables, boolean reading) {
+            this.tables = tables;
+            this.reading = reading;
+        }
+
+        // Table of the context's sub-tree (null: the Super-Tree), or null for an empty tree.
+        Table get(ContextLeaf context) {
+            if(context == null) {
+                if(superTable == null && superTree != null) {
+                    superTable = tables.computeIfAbsent(superTree, root -> new Table(root, reading));
+                }
+                return superTable;
+            }
+            HNode root = context.getSubTreeRoot();
+            if(root != lastRoot) {
+                lastTable = root == null ? null : tables.computeIfAbsent(root, r -> new Table(r, reading));
+                lastRoot = root;
+            }
+            return lastTable;
+        }
+    }
+
+    /**
+     * Normalized frequencies of one tree. Symbol i is the i-th leaf from the left; it owns the
+     * slots [start[i], start[i] + freq[i]) of the 2^scaleBits slots.
+     */
+    private static final class Table {
+        final HNode[] leaves;
+        final int[] start;
+        final int[] freq;
+        final int scaleBits;
+
+        // Encoder: symbol index by Huffman code, and by leaf for codes given as bits. Decoder: symbol index by slot.
+        final HNode root;
+        final HashMap<String, Integer> symbols;
+        final IdentityHashMap<HNode, Integer> leafSymbols;
+        final int[] slots;
+
+        Table(HNode root, boolean reading) {
+            this.root = root;
+            List<HNode> leafList = new ArrayList<>();
+            List<String> codes = reading ? null : new ArrayList<>();
+            collect(root, "", leafList, codes);
+            this.leaves = leafList.toArray(new HNode[0]);
+            int n = leaves.length;
+
+            int bits = n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+            this.scaleBits = Math.min(MAX_SCALE_BITS, Math.max(MIN_SCALE_BITS, bits + 2));
+            if(n > 1 << scaleBits) {
+                throw new IllegalStateException("Too many symbols for one rANS table: " + n);
+            }
+            this.freq = normalize(leaves, 1 << scaleBits);
+            this.start = new int[n];
+            for(int i = 1; i < n; i++) {
+                start[i] = start[i - 1] + freq[i - 1];
+            }
+
+            if(reading) {
+                this.symbols = null;
+                this.leafSymbols = null;
+                this.slots = new int[1 << scaleBits];
+                for(int i = 0; i < n; i++) {
+                    Arrays.fill(slots, start[i], start[i] + freq[i], i);
+                }
+            } else {
+                this.slots = null;
+                this.symbols = new HashMap<>(n * 2);
+                this.leafSymbols = new IdentityHashMap<>(n);
+                for(int i = 0; i < n; i++) {
+                    symbols.put(codes.get(i), i);
+                    leafSymbols.put(leaves[i], i);
+                }
+            }
+        }
+
+        boolean isSingleSymbol() {
+            return leaves.length <= 1;
+        }
+
+        // Leaves from left to right, with their codes when 'codes' is not null.
+        private static void collect(HNode node, String code, List<HNode> leaves, List<String> codes) {
+            if(node == null) return;
+            if(node.isLeaf()) {
+                leaves.add(node);
+                if(codes != null) codes.add(code);
+            } else if(node instanceof InternalNode internal) {
+                collect(internal.getLeft(), codes != null ? code + "0" : code, leaves, codes);
+                collect(internal.getRight(), codes != null ? code + "1" : code, leaves, codes);
+            }
+        }
+
+        /**
+         * Scales the leaf frequencies to sum to exactly 'total', keeping every symbol at 1 or above.
+         * Symbols are served from the rarest up, each with its share of the slots still left: a rare
+         * symbol lifted to one slot takes that slot from all the others in proportion, not from one.
+         */
+        private static int[] normalize(HNode[] leaves, int total) {
+            int n = leaves.length;
+            Integer[] order = new Integer[n];
+            long sum = 0;
+            for(int i = 0; i < n; i++) {
+                order[i] = i;
+                sum += weightOf(leaves[i]);
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(weightOf(leaves[a]), weightOf(leaves[b])));
+
+            // Total is at least the symbol count, so every symbol still finds a slot.
+            int[] freq = new int[n];
+            long remaining = total;
+            for(int i : order) {
+                int weight = weightOf(leaves[i]);
+                freq[i] = (int) Math.max(1, weight * remaining / sum);
+                remaining -= freq[i];
+                sum -= weight;
+            }
+            return freq;
+        }
+
+        private static int weightOf(HNode leaf) {
+            return Math.max(1, leaf.getFrequency());
+        }
+    }
+
+    private final class Writer implements SymbolWriter {
+        private final BitWriter out;
+
+        // Symbols of the block in order: start, then frequency << 5 | scale bits.
+        private int[] queue = new int[1024];
+        private int size;
+
+        private final TableCache tables = new TableCache(writeTables, false);
+
+        Writer(BitWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(ContextLeaf table, String code) throws IOException {
+            Table t = tables.get(table);
+            if(t == null || t.isSingleSymbol()) return;
+
+            Integer symbol = t.symbols.get(code);
+            if(symbol == null) {
+                throw new IOException("No rANS symbol for code " + code);
+            }
+            queue(t, symbol);
+        }
+
+        // The code's leaf is found by walking the tree, which needs no string.
+        @Override
+        public void write(ContextLeaf table, long bits, int length) throws IOException {
+            Table t = tables.get(table);
+            if(t == null || t.isSingleSymbol()) return;
+
+            HNode node = t.root;
+            for(int i = length - 1; i >= 0 && node instanceof InternalNode internal; i--) {
+                node = ((bits >>> i) & 1) == 0 ? internal.getLeft() : internal.getRight();
+            }
+            Integer symbol = node != null && node.isLeaf() ? t.leafSymbols.get(node) : null;
+            if(symbol == null) {
+                throw new IOException("No rANS symbol for a code of " + length + " bits");
+            }
+            queue(t, symbol);
+        }
+
+        private void queue(Table t, int symbol) {
+            if(size + 2 > queue.length) {
+                queue = Arrays.copyOf(queue, queue.length * 2);
+            }
+            queue[size++] = t.start[symbol];
+            queue[size++] = t.freq[symbol] << 5 | t.scaleBits;
+        }
+
+        @Override
+        public void finish() throws IOException {
+            int symbols = size / 2;
+            long[] states = new long[LANES];
+            Arrays.fill(states, STATE_LOW);
+            int[] words = new int[Math.max(16, symbols)];
+            int wordCount = 0;
+
+            // Backwards, so that the Decoder reads the symbols in order.
+            for(int i = symbols - 1; i >= 0; i--) {
+                int start = queue[2 * i];
+                int freq = queue[2 * i + 1] >>> 5;
+                int scaleBits = queue[2 * i + 1] & 31;
+                int lane = i % LANES;
+                long x = states[lane];
+
+                long limit = ((STATE_LOW >>> scaleBits) << 32) * freq;
+                if(x >= limit) {
+                    words[wordCount++] = (int) x;
+                    x >>>= 32;
+                }
+                states[lane] = ((x / freq) << scaleBits) + (x % freq) + start;
+            }
+
+            byte[] bytes = new byte[LANES * 8 + wordCount * 4];
+            int position = 0;
+            for(long state : states) {
+                for(int shift = 56; shift >= 0; shift -= 8) {
+                    bytes[position++] = (byte) (state >>> shift);
+                }
+            }
+            for(int w = wordCount - 1; w >= 0; w--) {
+                for(int shift = 24; shift >= 0; shift -= 8) {
+                    bytes[position++] = (byte) (words[w] >>> shift);
+                }
+            }
+            out.writeBytes(bytes, 0, bytes.length);
+            size = 0;
+        }
+    }
+
+    private final class Reader implements SymbolReader {
+        private final byte[] data;
+        private int position;
+        private final long[] states = new long[LANES];
+        private int next;
+
+        private final TableCache tables = new TableCache(readTables, true);
+
+        Reader(byte[] data) {
+            this.data = data;
+            for(int lane = 0; lane < LANES; lane++) {
+                long state = 0;
+                for(int i = 0; i < 8; i++) {
+                    state = state << 8 | (data[position++] & 0xFF);
+                }
+                states[lane] = state;
+            }
+        }
+
+        @Override
+        public HNode read(ContextLeaf table) {
+            Table t = tables.get(table);
+            if(t == null) return null; // Empty dictionary
+            if(t.isSingleSymbol()) return t.leaves[0];
+
+            int lane = next++ % LANES;
+            long x = states[lane];
+            int slot = (int) x & ((1 << t.scaleBits) - 1);
+            int symbol = t.slots[slot];
+            x = t.freq[symbol] * (x >>> t.scaleBits) + slot - t.start[symbol];
+            if(x < STATE_LOW) {
+                if(position + 4 > data.length) return null; // End of block
+                x = x << 32 | ((data[position] & 0xFFL) << 24 | (data[position + 1] & 0xFFL) << 16
+                        | (data[position + 2] & 0xFFL) << 8 | (data[position + 3] & 0xFFL));
+                position += 4;
+            }
+            states[lane] = x;
+            return t.leaves[symbol];
+        }
+    }
+}
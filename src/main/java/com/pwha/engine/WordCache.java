@@ -0,0 +1,180 @@
+package com.pwha.engine;
+
+import com.pwha.engine.EntropyCoder.SymbolWriter;
+import com.pwha.model.node.ContextLeaf;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Bounded cache from whole words to the bits the Encoder writes for them: the context code followed
+ * by the pattern codes, at most 64 bits. A word seen before costs one lookup and one bulk write
+ * instead of a context lookup and a pattern parse.
+ * <p>
+ * Logic:
+ * 1. **Layout:** {@link #WAYS}-way set-associative over primitive arrays. A word hashes to a set;
+ *    its bytes are compared against the (at most four) keys of that set, stored in one byte slab.
+ * 2. **Eviction:** CLOCK (second chance) within the set. A hit marks the slot as referenced; an
+ *    insert into a full set clears the marks it passes and takes the first unmarked slot, so words
+ *    that keep recurring stay while one-off words cycle through.
+ * 3. **Recording:** On a miss, the Encoder writes the word through {@link #record}, which passes
+ *    every code on and concatenates them; {@link #put} then stores the result.
+ * Only valid for coders whose output is the concatenated codes ({@link EntropyCoder#concatenatesCodes()}).
+ * Confined to one thread.
+ */
+final class WordCache {
+
+    static final int WAYS = 4;
+
+    // Longest word (in bytes) kept in the cache.
+    private final int maxLength;
+    private final int setMask;
+
+    // Per slot: hash of the word (0 marks an empty slot), its bytes at slot * maxLength in 'keys',
+    // its length, its bits (right-aligned) and their count, and the CLOCK reference mark.
+    private final int[] hashes;
+    private final byte[] keys;
+    private final byte[] lengths;
+    private final long[] bits;
+    private final byte[] bitCounts;
+    private final boolean[] referenced;
+
+    private final Recorder recorder = new Recorder();
+
+    /**
+     * @param entries   Capacity in words (rounded up to a power of two sets of {@link #WAYS}).
+     * @param maxLength Longest word to cache, in bytes (at most 127).
+     */
+    WordCache(int entries, int maxLength) {
+        if(maxLength <= 0 || maxLength > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Word cache length must be between 1 and " + Byte.MAX_VALUE);
+        }
+        int sets = 1;
+        while(sets * WAYS < entries) sets <<= 1;
+        int slots = sets * WAYS;
+        this.maxLength = maxLength;
+        this.setMask = sets - 1;
+        this.hashes = new int[slots];
+        this.keys = new byte[slots * maxLength];
+        this.lengths = new byte[slots];
+        this.bits = new long[slots];
+        this.bitCounts = new byte[slots];
+        this.referenced = new boolean[slots];
+    }
+
+    // Whether the word data[from, to) is short enough to be cached.
+    boolean fits(int from, int to) {
+        return to - from <= maxLength;
+    }
+
+    // FNV-1a over the word, never 0 (which marks an empty slot).
+    static int hash(byte[] data, int from, int to) {
+        int h = 0x811C9DC5;
+        for(int i = from; i < to; i++) {
+            h = (h ^ (data[i] & 0xFF)) * 0x01000193;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Slot holding the word data[from, to), or -1 if it is not cached.
+     */
+    int find(byte[] data, int from, int to, int hash) {
+        int length = to - from;
+        int base = setOf(hash);
+        for(int slot = base; slot < base + WAYS; slot++) {
+            if(hashes[slot] == hash && lengths[slot] == length
+                    && Arrays.equals(keys, slot * maxLength, slot * maxLength + length, data, from, to)) {
+                referenced[slot] = true;
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    long bits(int slot) {
+        return bits[slot];
+    }
+
+    int bitCount(int slot) {
+        return bitCounts[slot];
+    }
+
+    // Writer that passes the word's codes on to 'target' and concatenates them for put().
+    SymbolWriter record(SymbolWriter target) {
+        recorder.target = target;
+        recorder.bits = 0;
+        recorder.count = 0;
+        return recorder;
+    }
+
+    /**
+     * Stores the bits recorded for the word data[from, to), unless they exceed 64 bits.
+     * An empty slot is taken first; in a full set, the CLOCK hand is its first slot and marked
+     * slots get their second chance in order.
+     */
+    void put(byte[] data, int from, int to, int hash) {
+        if(recorder.count > Long.SIZE) return;
+
+        int base = setOf(hash);
+        int victim = -1;
+        for(int slot = base; slot < base + WAYS; slot++) {
+            if(hashes[slot] == 0) {
+                victim = slot;
+                break;
+            }
+        }
+        for(int pass = 0; pass < 2 && victim < 0; pass++) {
+            for(int slot = base; slot < base + WAYS; slot++) {
+                if(!referenced[slot]) {
+                    victim = slot;
+                    break;
+                }
+                referenced[slot] = false;
+            }
+        }
+
+        hashes[victim] = hash;
+        lengths[victim] = (byte) (to - from);
+        System.arraycopy(data, from, keys, victim * maxLength, to - from);
+        bits[victim] = recorder.bits;
+        bitCounts[victim] = (byte) recorder.count;
+        referenced[victim] = false;
+    }
+
+    private int setOf(int hash) {
+        // The high bits are the best mixed ones of FNV-1a.
+        return ((hash ^ (hash >>> 16)) & setMask) * WAYS;
+    }
+
+    private static final class Recorder implements SymbolWriter {
+        private SymbolWriter target;
+        private long bits;
+        private int count;
+
+        @Override
+        public void write(ContextLeaf table, String code) throws IOException {
+            target.write(table, code);
+            if(count + code.length() <= Long.SIZE) {
+                for(int i = 0; i < code.length(); i++) {
+                    bits = bits << 1 | (code.charAt(i) == '1' ? 1 : 0);
+                }
+            }
+            count += code.length();
+        }
+
+        @Override
+        public void write(ContextLeaf table, long bits, int length) throws IOException {
+            target.write(table, bits, length);
+            if(count + length <= Long.SIZE && length > 0) {
+                this.bits = (this.bits << length) | (bits & (-1L >>> (Long.SIZE - length)));
+            }
+            count += length;
+        }
+
+        @Override
+        public void finish() {
+            throw new UnsupportedOperationException("The recorder only sees single words");
+        }
+    }
+}
@@ -1,21 +1,19 @@
 package com.pwha.gui;
 
-import com.pwha.core.HuffmanStructure;
-import com.pwha.engine.Decoder;
-import com.pwha.engine.Encoder;
-import com.pwha.io.ByteReader;
-import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.CompressionResult;
 import com.pwha.model.node.HNode;
-import com.pwha.service.FrequencyService;
+import com.pwha.service.AutoTuner;
+import com.pwha.service.CompressionService;
 import com.pwha.util.Constant;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import java.awt.*;
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.Duration;
 
 /**
  * Main Entry Point and GUI for the Pattern-Aware Huffman Compressor.
@@ -39,8 +37,11 @@ public class App extends JFrame {
     private HNode currentRoot; // Stores the root of the generated Huffman Tree for visualization
 
     // Settings Components
+    private JComboBox<CompressionOptions.Level> levelComboBox;
     private JSpinner patternLengthSpinner;
     private JSpinner patternAmountSpinner;
+    private JCheckBox autoTuneCheckBox;
+    private JSpinner timeBudgetSpinner;
 
     /**
      * Main method to launch the application.
@@ -84,19 +85,40 @@ public class App extends JFrame {
         add(topPanel, BorderLayout.NORTH);
 
         // --- Settings Panel: Algorithm Configuration ---
-        JPanel settingsPanel = new JPanel(new GridLayout(1, 4, 10, 10));
+        JPanel settingsPanel = new JPanel(new GridLayout(2, 6, 10, 10));
         settingsPanel.setBorder(new TitledBorder("Algorithm Settings"));
 
-        // Spinner for MAX_PATTERN_LENGTH
+        // Compression level: presets the spinners below, which can still be adjusted.
+        settingsPanel.add(new JLabel("Level:", SwingConstants.RIGHT));
+        levelComboBox = new JComboBox<>(CompressionOptions.Level.values());
+        settingsPanel.add(levelComboBox);
+
+        // Spinner for the maximum pattern length
         settingsPanel.add(new JLabel("Max Pattern Length:", SwingConstants.RIGHT));
-        patternLengthSpinner = new JSpinner(new SpinnerNumberModel(20, 2, 100, 1));
+        patternLengthSpinner = new JSpinner(new SpinnerNumberModel(20, 1, 100, 1));
         settingsPanel.add(patternLengthSpinner);
 
-        // Spinner for MAX_PATTERN_AMOUNT
+        // Spinner for the maximum pattern amount per context
         settingsPanel.add(new JLabel("Max Pattern Amount:", SwingConstants.RIGHT));
         patternAmountSpinner = new JSpinner(new SpinnerNumberModel(1000, 1, 100000, 10));
         settingsPanel.add(patternAmountSpinner);
 
+        // Auto-tune: trial runs on samples pick the settings that fit the time budget.
+        autoTuneCheckBox = new JCheckBox("Auto-tune");
+        settingsPanel.add(autoTuneCheckBox);
+        settingsPanel.add(new JLabel("Time Budget (s):", SwingConstants.RIGHT));
+        timeBudgetSpinner = new JSpinner(new SpinnerNumberModel(60, 1, 86400, 10));
+        settingsPanel.add(timeBudgetSpinner);
+        autoTuneCheckBox.addActionListener(e -> {
+            boolean manual = !autoTuneCheckBox.isSelected();
+            levelComboBox.setEnabled(manual);
+            patternLengthSpinner.setEnabled(manual);
+            patternAmountSpinner.setEnabled(manual);
+        });
+
+        levelComboBox.addActionListener(e -> applyLevelPreset());
+        levelComboBox.setSelectedItem(CompressionOptions.Level.DEFAULT);
+
         // --- Center Panel: Logs and Progress ---
         JPanel centerContainer = new JPanel(new BorderLayout(10, 10));
         centerContainer.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -179,16 +201,48 @@ public class App extends JFrame {
         }
     }
 
+    /**
+     * Runs the AutoTuner on samples of the file, logs every candidate and shows the winner
+     * in the settings panel.
+     */
+    private CompressionOptions autoTune(File file, Duration timeBudget) throws IOException {
+        log("Auto-tuning (time budget " + timeBudget.toSeconds() + " sec)...");
+        AutoTuner.Result tuning = new AutoTuner().tune(file.toPath(), timeBudget);
+        for(AutoTuner.Candidate candidate : tuning.candidates()) {
+            log(String.format(" %s %s: ~%s, %.2f MB/s", candidate == tuning.best() ? "*" : "-",
+                    candidate.options(), formatSize(candidate.estimatedBytes()), candidate.throughputMBps()));
+        }
+
+        CompressionOptions best = tuning.best().options();
+        log("Selected: " + best);
+        SwingUtilities.invokeLater(() -> {
+            levelComboBox.setSelectedItem(best.level());
+            patternLengthSpinner.setValue(best.maxPatternLength());
+            patternAmountSpinner.setValue(best.maxPatternAmount());
+        });
+        return best;
+    }
+
+    // Copies the pattern limits of the selected level into the spinners.
+    private void applyLevelPreset() {
+        CompressionOptions preset = CompressionOptions.of((CompressionOptions.Level) levelComboBox.getSelectedItem());
+        patternLengthSpinner.setValue(preset.maxPatternLength());
+        patternAmountSpinner.setValue(preset.maxPatternAmount());
+    }
+
     /**
      * Starts the Compression process in a background thread.
      * Flow: Analysis -> Tree Building -> Compression.
      */
     private void startCompressionTask() {
-        // Apply settings from GUI
+        // Apply settings from GUI (per run, nothing global is modified)
         int pLength = (Integer) patternLengthSpinner.getValue();
         int pAmount = (Integer) patternAmountSpinner.getValue();
-        Constant.MAX_PATTERN_LENGTH = pLength;
-        Constant.MAX_PATTERN_AMOUNT = pAmount;
+        CompressionOptions manualOptions = CompressionOptions.of((CompressionOptions.Level) levelComboBox.getSelectedItem())
+                .withMaxPatternLength(pLength)
+                .withMaxPatternAmount(pAmount);
+        boolean autoTune = autoTuneCheckBox.isSelected();
+        Duration timeBudget = Duration.ofSeconds((Integer) timeBudgetSpinner.getValue());
 
         new Thread(() -> {
             try {
@@ -196,65 +250,28 @@ public class App extends JFrame {
                 updateProgress(0);
                 String inputFile = selectedFile.getAbsolutePath();
                 String outputFile = selectedFile.getParent() + File.separator + "encoded_file.pwha";
-                long totalSize = selectedFile.length();
 
                 log("------------------------------------------------");
                 log("Starting Compression...");
-                long startTime = System.currentTimeMillis();
-
-                // Phase 1: Analysis (Pattern Mining)
-                log("Stage 1: File Analyzing...");
-                FrequencyService frequencyService = new FrequencyService();
-                try (FileInputStream fis = new FileInputStream(inputFile);
-                     BufferedInputStream bis = new BufferedInputStream(fis)) {
-
-                    ByteReader reader = new ByteReader(frequencyService, bis);
-                    // Update progress up to 50% during analysis
-                    reader.collectWords(totalSize, progress -> updateProgress(progress * 0.5));
-                }
-
-                if (frequencyService.getFrequencyMap().isEmpty()) {
-                    throw new RuntimeException("Frequency Map is empty!");
-                }
-
-                // Log statistics
-                int totalContexts = frequencyService.getFrequencyMap().size();
-                long totalPatterns = 0;
-                for(ContextLeaf leaf : frequencyService.getFrequencyMap().values()) {
-                    totalPatterns += leaf.getPatternCount();
-                }
-                log("Analysis complete.");
-                log(" - Total contexts : " + totalContexts);
-                log(" - Total patterns : " + totalPatterns);
-
-                // Phase 2: Huffman Tree Construction
-                log("Stage 2: Building Huffman Tree...");
-                HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(frequencyService.getFrequencyMap()));
-                HuffmanStructure.buildDictionary(root, "", frequencyService.getFrequencyMap());
 
-                // Enable Tree Visualization
-                this.currentRoot = root;
-                SwingUtilities.invokeLater(() -> viewTreeButton.setEnabled(true));
+                CompressionOptions options = autoTune ? autoTune(selectedFile, timeBudget) : manualOptions;
 
-                // Phase 3: Encoding (Writing to file)
-                log("Stage 3: Compressing...");
-                Encoder encoder = new Encoder(root, frequencyService.getFrequencyMap());
-                // Update progress from 50% to 100% during encoding
-                encoder.compress(inputFile, outputFile, totalSize, progress -> updateProgress(50 + (progress * 0.5)));
+                // Analysis -> Tree Building -> Encoding, shared with the headless CLI.
+                CompressionService service = new CompressionService(Constant.DEFAULT_BLOCK_SIZE,
+                        Runtime.getRuntime().availableProcessors(), this::log);
+                CompressionResult result = service.compress(inputFile, outputFile, options, this::updateProgress);
 
-                updateProgress(100);
-                long endTime = System.currentTimeMillis();
-                File originalFile = new File(inputFile);
-                File compressedFile = new File(outputFile);
-                double ratio = 100.0 * (1.0 - ((double) compressedFile.length() / originalFile.length()));
+                // Enable Tree Visualization
+                this.currentRoot = result.root();
+                SwingUtilities.invokeLater(() -> viewTreeButton.setEnabled(currentRoot != null));
 
                 // Summary Log
                 log("------------------------------------------------");
                 log("COMPRESSION SUCCESSFUL!");
-                log(String.format("Time Taken: %.2f sec", (endTime - startTime) / 1000.0));
-                log("Original: " + formatSize(originalFile.length()));
-                log("Compressed: " + formatSize(compressedFile.length()));
-                log(String.format("Efficiency: %.2f%% saved", ratio));
+                log(String.format("Time Taken: %.2f sec", result.elapsedNanos() / 1e9));
+                log("Original: " + formatSize(result.originalSize()));
+                log("Compressed: " + formatSize(result.compressedSize()));
+                log(String.format("Efficiency: %.2f%% saved", result.spaceSavedPercent()));
 
             } catch (Exception ex) {
                 log("ERROR: " + ex.getMessage());
@@ -279,15 +296,14 @@ public class App extends JFrame {
                 String outputFile = inputFile.endsWith(".pwha")
                         ? inputFile.substring(0, inputFile.length() - 5) + "_decoded.txt"
                         : inputFile + "_decoded.txt";
-                long totalSize = selectedFile.length();
 
                 log("------------------------------------------------");
                 log("Starting Decompression...");
 
-                Decoder decoder = new Decoder();
-                decoder.decompress(inputFile, outputFile, totalSize, this::updateProgress);
+                CompressionService service = new CompressionService(Constant.DEFAULT_BLOCK_SIZE,
+                        Runtime.getRuntime().availableProcessors(), this::log);
+                service.decompress(inputFile, outputFile, this::updateProgress);
 
-                updateProgress(100);
                 log("SUCCESS! File restored to: " + new File(outputFile).getName());
 
             } catch (Exception ex) {
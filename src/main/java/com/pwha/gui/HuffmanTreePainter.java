@@ -9,6 +9,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -326,7 +327,10 @@ public class HuffmanTreePainter extends JPanel {
      */
     private String getNodeText(HNode node) {
         if (node instanceof ContextLeaf) {
-            byte b = ((ContextLeaf) node).getData();
+            ContextLeaf context = (ContextLeaf) node;
+            if (context.isPairContext() || context.isPhrase()) return new String(context.getSymbolBytes(), StandardCharsets.ISO_8859_1); // Order-2 context or phrase
+            if (context.getSymbolBytes().length > 1) return Character.toString(context.getSymbol()); // Code-point context
+            byte b = context.getData();
             if (b == 32) return "SP"; // Space
             if (b == 10) return "\\n"; // Newline
             if (b == 13) return "\\r"; // Carriage Return
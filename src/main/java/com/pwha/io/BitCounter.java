@@ -0,0 +1,42 @@
+package com.pwha.io;
+
+import java.io.OutputStream;
+
+/**
+ * A {@link BitWriter} that only counts the bits it is given.
+ * <p>
+ * Lets the Encoder run its normal word/pattern logic to measure the size a block would have,
+ * without packing or buffering any output (used by the auto-tuner).
+ */
+public class BitCounter extends BitWriter {
+
+    private long bits;
+
+    public BitCounter() {
+        super(OutputStream.nullOutputStream());
+    }
+
+    @Override
+    public void writeBit(int bit) {
+        bits++;
+    }
+
+    @Override
+    public void writeBits(String bitString) {
+        bits += bitString.length();
+    }
+
+    @Override
+    public void writeBits(long bits, int count) {
+        this.bits += count;
+    }
+
+    @Override
+    public void writeBytes(byte[] data, int from, int length) {
+        bits += 8L * length;
+    }
+
+    public long getBitCount() {
+        return bits;
+    }
+}
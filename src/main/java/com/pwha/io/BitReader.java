@@ -8,41 +8,59 @@ import java.io.InputStream;
  * <p>
  * Standard Java streams read bytes (8 bits), but Huffman codes are variable-length sequences of bits
  * (e.g., "101" or "0"). This class acts as a bridge, buffering bytes and serving them one bit at a time.
+ * <p>
+ * Table decoding: {@link #peekBits(int)} shows the next bits without consuming them, so a decoder
+ * can look a whole code up at once and then {@link #skipBits(int)} exactly the bits it used.
  */
 public class BitReader implements AutoCloseable{
 
-    // The underlying input stream (e.g., from a file).
+    // The underlying input stream (e.g., from a file), or null when reading from an array.
     private final InputStream is;
 
-    // Buffer to hold the current byte being processed.
-    private int currentByte;
+    // Array source: the bytes data[position, limit) still to be read. Skips the stream call per byte.
+    private final byte[] data;
+    private int position;
+    private final int limit;
+
+    // Bits read ahead: the low 'bitCount' bits of 'buffer', the next bit being the highest of them.
+    private long buffer;
 
-    // Counter tracking how many bits are left in the current byte (0 to 8).
+    // Counter tracking how many bits are buffered (0 to 64).
     private int bitCount;
 
     public BitReader(InputStream is) {
         this.is = is;
-        this.currentByte = 0;
+        this.data = null;
+        this.limit = 0;
+        this.buffer = 0;
         this.bitCount = 0;
     }
 
+    // Reads the bits of data[from, to).
+    public BitReader(byte[] data, int from, int to) {
+        if(from < 0 || to > data.length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid range [" + from + ", " + to + ") of " + data.length + " bytes");
+        }
+        this.is = null;
+        this.data = data;
+        this.position = from;
+        this.limit = to;
+    }
+
     /**
      * Reads the next single bit from the stream.
      * * @return 0 or 1, or -1 if the End of Stream (EOF) is reached.
      * @throws IOException If an I/O error occurs.
      */
     public int readBit() throws IOException {
-        // If we have used all bits in the current byte (buffer is empty), read the next byte.
+        // If we have used all buffered bits, read the next byte(s).
         if(bitCount == 0) {
-            currentByte = is.read();
+            refill(1);
 
             // Check for End of File
-            if(currentByte == -1) {
+            if(bitCount == 0) {
                 return -1;
             }
-
-            // Reset counter to 8 since a new byte has 8 bits.
-            bitCount = 8;
         }
 
         // Decrement the counter to point to the next bit position.
@@ -50,16 +68,63 @@ public class BitReader implements AutoCloseable{
 
         /*
          * Bitwise Operation Logic:
-         * 1. Shift the current byte to the right by 'bitCount'.
+         * 1. Shift the buffer to the right by 'bitCount'.
          * This moves the target bit to the least significant position (index 0).
          * 2. Perform bitwise AND with 1 (binary ...0001).
          * This isolates the target bit, ignoring all other bits.
          */
-        return (currentByte >> bitCount) & 1;
+        return (int) (buffer >>> bitCount) & 1;
+    }
+
+    /**
+     * Returns the next {@code count} bits (1 to 32) as an int, first bit highest, without consuming them.
+     * Past the end of the stream the missing bits read as 0; see {@link #skipBits(int)}.
+     */
+    public int peekBits(int count) throws IOException {
+        if(bitCount < count) {
+            refill(count);
+        }
+        long mask = (1L << count) - 1;
+        if(bitCount >= count) {
+            return (int) ((buffer >>> (bitCount - count)) & mask);
+        }
+        return (int) ((buffer << (count - bitCount)) & mask); // Zero padding after the last bit.
+    }
+
+    /**
+     * Consumes {@code count} bits that were peeked.
+     *
+     * @return False if the stream ends before them (nothing is consumed then).
+     */
+    public boolean skipBits(int count) throws IOException {
+        if(bitCount < count) {
+            refill(count);
+            if(bitCount < count) return false;
+        }
+        bitCount -= count;
+        return true;
+    }
+
+    // Buffers at least 'count' bits if the input has them. Arrays are read ahead as far as the
+    // buffer allows; streams only as far as needed, so they are never read past the last bit used.
+    private void refill(int count) throws IOException {
+        if(data != null) {
+            while(bitCount <= 56 && position < limit) {
+                buffer = buffer << 8 | (data[position++] & 0xFF);
+                bitCount += 8;
+            }
+            return;
+        }
+        while(bitCount < count) {
+            int b = is.read();
+            if(b == -1) return;
+            buffer = buffer << 8 | b;
+            bitCount += 8;
+        }
     }
 
     @Override
     public void close() throws IOException {
-        is.close();
+        if(is != null) is.close();
     }
 }
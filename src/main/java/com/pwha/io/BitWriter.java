@@ -60,6 +60,38 @@ public class BitWriter implements AutoCloseable {
         }
     }
 
+    /**
+     * Writes the low {@code count} bits (0 to 64) of {@code bits}, most significant first, e.g. several
+     * codes concatenated ahead of time. Fills the current byte a whole chunk at a time.
+     */
+    public void writeBits(long bits, int count) throws IOException {
+        while(count > 0) {
+            int take = Math.min(8 - bitCount, count);
+            count -= take;
+            currentByte = (currentByte << take) | (int) ((bits >>> count) & ((1 << take) - 1));
+            bitCount += take;
+            if(bitCount == 8) {
+                flushCurrentByte();
+            }
+        }
+    }
+
+    /**
+     * Writes whole bytes, most significant bit first (e.g. the output of a byte-oriented coder).
+     * On a byte boundary they go straight to the stream.
+     */
+    public void writeBytes(byte[] data, int from, int length) throws IOException {
+        if(bitCount == 0) {
+            os.write(data, from, length);
+            return;
+        }
+        for(int i = from; i < from + length; i++) {
+            for(int shift = 7; shift >= 0; shift--) {
+                writeBit(data[i] >> shift);
+            }
+        }
+    }
+
     // Writes the fully formed byte to the output stream and resets the buffer.
     private void flushCurrentByte() throws IOException {
         os.write(currentByte);
@@ -1,19 +1,29 @@
 package com.pwha.io;
 
+import com.pwha.metrics.AnalysisEvent;
+import com.pwha.model.node.ContextLeaf;
 import com.pwha.service.FrequencyService;
-import com.pwha.util.SeparatorUtils;
+import com.pwha.tokenizer.Tokenizer;
+import com.pwha.util.Constant;
+import com.pwha.util.EntropyUtils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
  * Reads raw bytes from the input stream and segments them into processable "words".
  * <p>
- * This class serves as the entry point for the Analysis Phase. It reads the file byte-by-byte,
- * identifies word boundaries using {@link SeparatorUtils}, and feeds the extracted tokens
- * to the {@link FrequencyService} for pattern mining.
+ * This class serves as the entry point for the Analysis Phase. It reads the file block by block,
+ * splits each block with the job's {@link Tokenizer}, and feeds the extracted tokens to the
+ * {@link FrequencyService} for pattern mining.
+ * <p>
+ * The Encoder tokenizes the same blocks with the same {@link Tokenizer#tokenize} loop, so the
+ * analysis counts exactly the words that will be encoded. Incompressible parts of a block (64 KB
+ * segments with an order-0 entropy of at least {@link Constant#STORED_ENTROPY_THRESHOLD}) are not
+ * counted: their random patterns would only fill the dictionary, e.g. when a compressed blob follows
+ * some text. The Encoder stores such blocks raw.
  */
 public class ByteReader implements AutoCloseable {
 
@@ -23,9 +33,30 @@ public class ByteReader implements AutoCloseable {
     // The source stream to read from (e.g., FileInputStream).
     private final InputStream inputStream;
 
+    // Block size used by the Encoder. Words never span a block boundary, so the analysis
+    // must cut words at the same positions to count exactly what will be encoded.
+    private final int blockSize;
+
+    // Longest word: a word reaching this length is processed immediately (see CompressionOptions).
+    private final int maxTokenLength;
+
+    // Word boundaries of this job.
+    private final Tokenizer tokenizer;
+
+    // Whether runs of tokens are counted as phrase candidates.
+    private final boolean phrases;
+
     public ByteReader(FrequencyService frequencyService, InputStream inputStream) {
+        this(frequencyService, inputStream, Constant.DEFAULT_BLOCK_SIZE);
+    }
+
+    public ByteReader(FrequencyService frequencyService, InputStream inputStream, int blockSize) {
         this.frequencyService = frequencyService;
         this.inputStream = inputStream;
+        this.blockSize = blockSize;
+        this.maxTokenLength = frequencyService.getOptions().maxTokenLength();
+        this.tokenizer = frequencyService.getOptions().configuredTokenizer();
+        this.phrases = frequencyService.getOptions().phrases();
     }
 
     /**
@@ -38,59 +69,124 @@ public class ByteReader implements AutoCloseable {
      */
     // Head of the program.
     public void collectWords(long totalSize, Consumer<Double> onProgress) throws IOException{
-        // Buffer to accumulate bytes forming a word.
-        ByteArrayOutputStream wordBuffer = new ByteArrayOutputStream();
-        int byteRead;
+        byte[] block = new byte[blockSize];
+        int blockLength;
         long bytesReadSoFar = 0;
+        long[] words = new long[1];
+        // Context of the last word, which a separator right after it is counted in.
+        ContextLeaf[] lastContext = new ContextLeaf[1];
+        // Phrase mining: where the last tokens of the block started (a word with its separator, or a lone separator).
+        int[] tokenStarts = phrases ? new int[Constant.MAX_PHRASE_TOKENS] : null;
+        int[] tokenCount = new int[1];
+
+        // JFR event covering the whole pass; costs nothing unless a recording enables it.
+        AnalysisEvent event = new AnalysisEvent();
+        event.begin();
+
+        // Per segment of the current block: whether it looks incompressible and is left out.
+        boolean[] noisy = new boolean[(blockSize >>> Constant.ANALYSIS_SEGMENT_BITS) + 1];
+
+        Tokenizer.TokenVisitor visitor = new Tokenizer.TokenVisitor() {
+            @Override
+            public void word(byte[] data, int from, int to) {
+                if(noisy[from >>> Constant.ANALYSIS_SEGMENT_BITS]) return;
+                // Process the word itself (extract patterns).
+                if(tokenStarts != null) tokenBoundary(data, from, tokenStarts, tokenCount);
+                lastContext[0] = frequencyService.processWord(Arrays.copyOfRange(data, from, to));
+                words[0]++;
+            }
 
-        try{
-            // Read byte by byte until End of Stream (-1) is reached.
-            while((byteRead = inputStream.read()) != -1){
-                bytesReadSoFar ++;
-
-                // Calculate and report progress every 10KB to avoid UI flooding.
-                if(onProgress != null && bytesReadSoFar % 10240 ==0 ){
-                    double percent = (double) bytesReadSoFar / totalSize * 100;
-                    onProgress.accept(percent);
+            @Override
+            public void separator(byte[] data, int index, int wordStart) {
+                if(noisy[index >>> Constant.ANALYSIS_SEGMENT_BITS]) return;
+                // Associate this separator with the Context of the word (first letter).
+                // This helps model "which punctuation usually follows this word/context".
+                if(wordStart >= 0){
+                    frequencyService.addSeparatorToContext(lastContext[0], data[index]);
+                } else if(tokenStarts != null){
+                    tokenBoundary(data, index, tokenStarts, tokenCount);
                 }
+                // Process the separator itself as a distinct token/pattern.
+                frequencyService.processWord(new byte[]{data[index]});
+            }
+        };
+
+        // Read block by block (the Encoder's blocks) until End of Stream.
+        while((blockLength = inputStream.readNBytes(block, 0, blockSize)) > 0){
+            bytesReadSoFar += blockLength;
+            if(markNoisySegments(block, blockLength, noisy)){
+                reportProgress(onProgress, bytesReadSoFar, totalSize);
+                continue; // Stored by the Encoder: nothing to learn.
+            }
+            tokenizer.tokenize(block, blockLength, maxTokenLength, visitor);
+            if(frequencyService.isMiningTemplates()){
+                collectLines(block, blockLength, noisy);
+            }
+            if(tokenStarts != null){
+                // Phrases never span blocks, like words.
+                tokenBoundary(block, blockLength, tokenStarts, tokenCount);
+                tokenCount[0] = 0;
+            }
 
-                // This variable holding byte value that we read.
-                byte currentByte =  (byte) byteRead;
-
-                // Check if the current byte is a separator (e.g., space, newline, punctuation).
-                if(SeparatorUtils.isSeparator(currentByte)){
-
-                    // If we have accumulated a word in the buffer, process it now.
-                    if(wordBuffer.size() > 0){
-                        byte[] word = wordBuffer.toByteArray();
+            reportProgress(onProgress, bytesReadSoFar, totalSize);
+        }
 
-                        // 1. Process the word itself (extract patterns).
-                        frequencyService.processWord(word);
+        if(event.shouldCommit()){
+            event.bytesRead = bytesReadSoFar;
+            event.words = words[0];
+            event.contexts = frequencyService.getFrequencyMap().size();
+            for(ContextLeaf leaf : frequencyService.getFrequencyMap().values()){
+                event.patterns += leaf.getPatternCount();
+            }
+            event.commit();
+        }
+    }
 
-                        // 2. Associate this separator with the Context of the word (first letter).
-                        // This helps model "which punctuation usually follows this word/context".
-                        frequencyService.addSeparatorToContext(word[0], currentByte);
+    // Fills 'noisy' for the segments of the block; true if every segment is noisy.
+    private static boolean markNoisySegments(byte[] block, int length, boolean[] noisy){
+        boolean all = true;
+        int segment = 1 << Constant.ANALYSIS_SEGMENT_BITS;
+        for(int i = 0; i * segment < length; i++){
+            int from = i * segment;
+            noisy[i] = EntropyUtils.orderZeroEntropy(block, from, Math.min(segment, length - from)) >= Constant.STORED_ENTROPY_THRESHOLD;
+            all &= noisy[i];
+        }
+        return all;
+    }
 
-                        // Clear the buffer for the next word.
-                        wordBuffer.reset();
-                    }
+    // Report progress once per block to avoid UI flooding.
+    private static void reportProgress(Consumer<Double> onProgress, long bytesReadSoFar, long totalSize){
+        if(onProgress != null){
+            double percent = (double) bytesReadSoFar / totalSize * 100;
+            onProgress.accept(percent);
+        }
+    }
 
-                    // Process the separator itself as a distinct token/pattern.
-                    byte[] separatorsByte= {currentByte};
-                    frequencyService.processWord(separatorsByte);
+    /**
+     * A token starts (or the block ends) at {@code position}: counts the runs of 2 to
+     * {@link Constant#MAX_PHRASE_TOKENS} tokens ending there as phrase candidates.
+     */
+    private void tokenBoundary(byte[] data, int position, int[] tokenStarts, int[] tokenCount){
+        int count = tokenCount[0];
+        int window = tokenStarts.length;
+        for(int tokens = 2; tokens <= Math.min(window, count); tokens++){
+            int start = tokenStarts[(count - tokens) % window];
+            if(position - start > Constant.MAX_PHRASE_LENGTH) break;
+            frequencyService.addPhrase(data, start, position);
+        }
+        tokenStarts[count % window] = position;
+        tokenCount[0] = count + 1;
+    }
 
-                }else {
-                    // It's a regular character; add it to the buffer.
-                    wordBuffer.write(currentByte);
-                }
-            }
-        }finally{
-            // Process any remaining bytes in the buffer after the loop ends (EOF).
-            if(wordBuffer.size() > 0){
-                frequencyService.processWord(wordBuffer.toByteArray());
-                wordBuffer.reset();
+    // Feeds the complete lines of a block to the template miner. Lines never span blocks: the Encoder
+    // codes a block's unterminated last line (and the next block's first) without a template.
+    private void collectLines(byte[] block, int length, boolean[] noisy){
+        int lineStart = 0;
+        for(int i = 0; i < length; i++){
+            if(block[i] == '\n'){
+                if(!noisy[lineStart >>> Constant.ANALYSIS_SEGMENT_BITS]) frequencyService.addLogLine(block, lineStart, i);
+                lineStart = i + 1;
             }
-            wordBuffer.close();
         }
     }
 
@@ -0,0 +1,32 @@
+package com.pwha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around {@code ByteReader.collectWords}: one event per analysis pass.
+ */
+@Name("com.pwha.Analysis")
+@Label("PWHA Analysis")
+@Category({"PWHA", "Compression"})
+@Description("Pattern mining over the whole input")
+@StackTrace(false)
+public class AnalysisEvent extends jdk.jfr.Event {
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Words")
+    public long words;
+
+    @Label("Contexts")
+    public int contexts;
+
+    @Label("Patterns")
+    public long patterns;
+}
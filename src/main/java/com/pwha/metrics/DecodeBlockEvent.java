@@ -0,0 +1,31 @@
+package com.pwha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around {@code Decoder.decodeContent}: one event per block, on the thread that decoded it.
+ */
+@Name("com.pwha.DecodeBlock")
+@Label("PWHA Decode Block")
+@Category({"PWHA", "Codec"})
+@Description("Decoding of one block")
+@StackTrace(false)
+public class DecodeBlockEvent extends jdk.jfr.Event {
+
+    @Label("Encoded Bytes")
+    @DataAmount
+    public int encodedBytes;
+
+    @Label("Raw Bytes")
+    @DataAmount
+    public int rawBytes;
+
+    @Label("Context Switches")
+    @Description("Number of times the decoder entered a context's sub-tree")
+    public int contextSwitches;
+}
@@ -0,0 +1,34 @@
+package com.pwha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around {@code Encoder.encodeOrStore}: one event per block, on the thread that encoded it.
+ */
+@Name("com.pwha.EncodeBlock")
+@Label("PWHA Encode Block")
+@Category({"PWHA", "Codec"})
+@Description("Encoding of one block")
+@StackTrace(false)
+public class EncodeBlockEvent extends jdk.jfr.Event {
+
+    @Label("Raw Bytes")
+    @DataAmount
+    public int rawBytes;
+
+    @Label("Encoded Bytes")
+    @DataAmount
+    public int encodedBytes;
+
+    @Label("Words")
+    public int words;
+
+    @Label("Stored")
+    @Description("The block was written raw because encoding would not shrink it")
+    public boolean stored;
+}
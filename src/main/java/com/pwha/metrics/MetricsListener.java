@@ -0,0 +1,79 @@
+package com.pwha.metrics;
+
+/**
+ * Pluggable sink for pipeline metrics.
+ * <p>
+ * The pipeline only measures what it reports: every producer checks {@link #isEnabled()} first,
+ * so the default {@link #NOOP} listener costs a single branch per stage or block.
+ * Implementations may be called from several worker threads at once and must be thread-safe.
+ */
+public interface MetricsListener {
+
+    // Disabled listener used when no metrics are requested.
+    MetricsListener NOOP = new MetricsListener() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    // Whether producers should measure at all.
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Called once a pipeline stage has finished.
+     *
+     * @param stage     The finished stage.
+     * @param wallNanos Elapsed wall-clock time.
+     * @param cpuNanos  CPU time of all threads that worked on the stage.
+     * @param bytesIn   Bytes consumed by the stage (0 if not applicable).
+     * @param bytesOut  Bytes produced by the stage (0 if not applicable).
+     */
+    default void stageCompleted(Stage stage, long wallNanos, long cpuNanos, long bytesIn, long bytesOut) {}
+
+    /**
+     * Called for every context once its codes have been generated.
+     *
+     * @param context           The context symbol: the (signed) first byte, or the code point of a multi-byte context.
+     * @param inserted          Patterns inserted into the context's frequency map during analysis.
+     * @param evicted           Patterns evicted by the Space-Saving policy.
+     * @param patterns          Patterns that survived into the sub-tree.
+     * @param averageCodeLength Frequency-weighted average pattern code length in bits.
+     */
+    default void contextBuilt(int context, long inserted, long evicted, int patterns, double averageCodeLength) {}
+
+    /**
+     * Called once per encoded block with the greedy matching counters.
+     *
+     * @param words     Words passed to the greedy matcher.
+     * @param probes    Sub-dictionary lookups performed.
+     * @param fallbacks Bytes without a code in the model (the block is then stored raw).
+     */
+    default void greedyMatches(long words, long probes, long fallbacks) {}
+
+    /**
+     * Called once per encoded block with the word cache counters (see {@code WordCache}).
+     *
+     * @param lookups Words short enough for the cache that were looked up.
+     * @param hits    Words written straight from the cache.
+     */
+    default void wordCache(long lookups, long hits) {}
+
+    /**
+     * Called for every block written raw instead of Huffman-coded.
+     *
+     * @param rawBytes Size of the stored block.
+     */
+    default void blockStored(int rawBytes) {}
+
+    /**
+     * Called once per compression run with the preflight verdict.
+     *
+     * @param decision         "pattern", "single_byte" or "stored".
+     * @param entropy          Order-0 entropy of the samples in bits per byte.
+     * @param separatorDensity Fraction of sampled bytes that are separators.
+     */
+    default void preflightCompleted(String decision, double entropy, double separatorDensity) {}
+}
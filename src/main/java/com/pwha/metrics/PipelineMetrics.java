@@ -0,0 +1,315 @@
+package com.pwha.metrics;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe {@link MetricsListener} that aggregates everything it receives.
+ * <p>
+ * The totals cover every run reported to this instance (a single file, a whole batch...).
+ * They can be read directly, printed with {@link #report()}, or exposed over JMX with
+ * {@link #register(String)} so that tools such as JConsole or VisualVM can watch a live process.
+ */
+public class PipelineMetrics implements MetricsListener, PipelineMetricsMXBean {
+
+    private static final int STAGES = Stage.values().length;
+
+    // Per-stage totals, indexed by Stage.ordinal().
+    private final LongAdder[] stageCount = adders(STAGES);
+    private final LongAdder[] stageWall = adders(STAGES);
+    private final LongAdder[] stageCpu = adders(STAGES);
+    private final LongAdder[] stageBytesIn = adders(STAGES);
+    private final LongAdder[] stageBytesOut = adders(STAGES);
+
+    // Greedy matching counters, summed over all blocks.
+    private final LongAdder greedyWords = new LongAdder();
+    private final LongAdder greedyProbes = new LongAdder();
+    private final LongAdder greedyFallbacks = new LongAdder();
+
+    // Word cache counters of the Encoder, summed over all blocks.
+    private final LongAdder wordCacheLookups = new LongAdder();
+    private final LongAdder wordCacheHits = new LongAdder();
+
+    // Blocks written raw by the stored fallback.
+    private final LongAdder storedBlocks = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+
+    // Preflight verdicts by decision name, and the estimate of the last run. Guarded by 'this'.
+    private final Map<String, Long> preflightDecisions = new LinkedHashMap<>();
+    private String lastPreflight = "";
+
+    // Per-context totals by context symbol; sparse, since code-point contexts range over all of Unicode. Guarded by 'this'.
+    private final Map<Integer, ContextTotals> contexts = new TreeMap<>();
+
+    private static final class ContextTotals {
+        long inserted;
+        long evicted;
+        long patterns;
+        double codeLengthSum;
+        int runs;
+    }
+
+    private ObjectName objectName;
+
+    // ---------------------------------------------------------------- MetricsListener
+
+    @Override
+    public void stageCompleted(Stage stage, long wallNanos, long cpuNanos, long bytesIn, long bytesOut) {
+        int i = stage.ordinal();
+        stageCount[i].increment();
+        stageWall[i].add(wallNanos);
+        stageCpu[i].add(cpuNanos);
+        stageBytesIn[i].add(bytesIn);
+        stageBytesOut[i].add(bytesOut);
+    }
+
+    @Override
+    public synchronized void contextBuilt(int context, long inserted, long evicted, int patterns, double averageCodeLength) {
+        ContextTotals totals = contexts.computeIfAbsent(context, c -> new ContextTotals());
+        totals.inserted += inserted;
+        totals.evicted += evicted;
+        totals.patterns += patterns;
+        totals.codeLengthSum += averageCodeLength;
+        totals.runs++;
+    }
+
+    @Override
+    public void greedyMatches(long words, long probes, long fallbacks) {
+        greedyWords.add(words);
+        greedyProbes.add(probes);
+        greedyFallbacks.add(fallbacks);
+    }
+
+    @Override
+    public void wordCache(long lookups, long hits) {
+        wordCacheLookups.add(lookups);
+        wordCacheHits.add(hits);
+    }
+
+    @Override
+    public void blockStored(int rawBytes) {
+        storedBlocks.increment();
+        storedBytes.add(rawBytes);
+    }
+
+    @Override
+    public synchronized void preflightCompleted(String decision, double entropy, double separatorDensity) {
+        preflightDecisions.merge(decision, 1L, Long::sum);
+        lastPreflight = String.format("%s (entropy %.2f bits/byte, separators %.1f%%)", decision, entropy, separatorDensity * 100);
+    }
+
+    // ---------------------------------------------------------------- JMX
+
+    /**
+     * Registers this instance with the platform MBean server as
+     * {@code com.pwha:type=PipelineMetrics,name=<name>}.
+     */
+    public synchronized void register(String name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName candidate = new ObjectName("com.pwha:type=PipelineMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, candidate);
+            this.objectName = candidate;
+        } catch(InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("Metrics already registered under the name " + name, e);
+        } catch(JMException e) {
+            throw new IllegalStateException("Metrics could not be registered", e);
+        }
+    }
+
+    // Removes the MBean registered by register(String), if any.
+    public synchronized void unregister() {
+        if(objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch(JMException ignored) {
+            // Already gone.
+        }
+        objectName = null;
+    }
+
+    @Override
+    public Map<String, Long> getStageCount() {
+        return stageMap(stageCount);
+    }
+
+    @Override
+    public Map<String, Long> getStageWallNanos() {
+        return stageMap(stageWall);
+    }
+
+    @Override
+    public Map<String, Long> getStageCpuNanos() {
+        return stageMap(stageCpu);
+    }
+
+    @Override
+    public Map<String, Long> getStageBytesIn() {
+        return stageMap(stageBytesIn);
+    }
+
+    @Override
+    public Map<String, Long> getStageBytesOut() {
+        return stageMap(stageBytesOut);
+    }
+
+    @Override
+    public synchronized long getPatternsInserted() {
+        long total = 0;
+        for(ContextTotals totals : contexts.values()) total += totals.inserted;
+        return total;
+    }
+
+    @Override
+    public synchronized long getPatternsEvicted() {
+        long total = 0;
+        for(ContextTotals totals : contexts.values()) total += totals.evicted;
+        return total;
+    }
+
+    @Override
+    public long getGreedyWords() {
+        return greedyWords.sum();
+    }
+
+    @Override
+    public long getGreedyProbes() {
+        return greedyProbes.sum();
+    }
+
+    @Override
+    public long getGreedyFallbacks() {
+        return greedyFallbacks.sum();
+    }
+
+    @Override
+    public long getWordCacheLookups() {
+        return wordCacheLookups.sum();
+    }
+
+    @Override
+    public long getWordCacheHits() {
+        return wordCacheHits.sum();
+    }
+
+    @Override
+    public double getWordCacheHitRate() {
+        long lookups = getWordCacheLookups();
+        return lookups == 0 ? 0 : (double) getWordCacheHits() / lookups;
+    }
+
+    @Override
+    public long getStoredBlocks() {
+        return storedBlocks.sum();
+    }
+
+    @Override
+    public long getStoredBytes() {
+        return storedBytes.sum();
+    }
+
+    @Override
+    public synchronized Map<String, Long> getPreflightDecisions() {
+        return new LinkedHashMap<>(preflightDecisions);
+    }
+
+    @Override
+    public synchronized String getLastPreflight() {
+        return lastPreflight;
+    }
+
+    @Override
+    public synchronized String[] getContextReport() {
+        List<String> lines = new ArrayList<>();
+        for(Map.Entry<Integer, ContextTotals> entry : contexts.entrySet()) {
+            ContextTotals t = entry.getValue();
+            lines.add(String.format("%-6s inserted=%d evicted=%d patterns=%d avgCodeLength=%.2f",
+                    describe(entry.getKey()), t.inserted, t.evicted, t.patterns, t.codeLengthSum / t.runs));
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized void reset() {
+        for(int i = 0; i < STAGES; i++) {
+            stageCount[i].reset();
+            stageWall[i].reset();
+            stageCpu[i].reset();
+            stageBytesIn[i].reset();
+            stageBytesOut[i].reset();
+        }
+        greedyWords.reset();
+        greedyProbes.reset();
+        greedyFallbacks.reset();
+        wordCacheLookups.reset();
+        wordCacheHits.reset();
+        storedBlocks.reset();
+        storedBytes.reset();
+        preflightDecisions.clear();
+        lastPreflight = "";
+        contexts.clear();
+    }
+
+    // ---------------------------------------------------------------- Report
+
+    /**
+     * Human readable summary: one line per stage that ran, then the matching and eviction totals.
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-16s %6s %12s %12s %14s %14s%n", "Stage", "Runs", "Wall ms", "CPU ms", "Bytes in", "Bytes out"));
+        for(Stage stage : Stage.values()) {
+            int i = stage.ordinal();
+            if(stageCount[i].sum() == 0) continue;
+            sb.append(String.format("%-16s %6d %12.1f %12.1f %14d %14d%n", stage, stageCount[i].sum(),
+                    stageWall[i].sum() / 1e6, stageCpu[i].sum() / 1e6, stageBytesIn[i].sum(), stageBytesOut[i].sum()));
+        }
+
+        long probes = getGreedyProbes();
+        long words = getGreedyWords();
+        sb.append(String.format("Pattern matching : %d words, %d probes (%.2f per word), %d fallbacks%n",
+                words, probes, words == 0 ? 0 : (double) probes / words, getGreedyFallbacks()));
+        if(getWordCacheLookups() > 0) {
+            sb.append(String.format("Word cache       : %d lookups, %.1f%% hits%n", getWordCacheLookups(), getWordCacheHitRate() * 100));
+        }
+        sb.append(String.format("Pattern eviction : %d inserted, %d evicted%n", getPatternsInserted(), getPatternsEvicted()));
+        sb.append(String.format("Stored blocks    : %d (%d bytes)%n", getStoredBlocks(), getStoredBytes()));
+        if(!getLastPreflight().isEmpty()) {
+            sb.append(String.format("Preflight        : %s, decisions %s%n", getLastPreflight(), getPreflightDecisions()));
+        }
+        return sb.toString();
+    }
+
+    // ---------------------------------------------------------------- Helpers
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for(int i = 0; i < size; i++) adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static Map<String, Long> stageMap(LongAdder[] values) {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for(Stage stage : Stage.values()) {
+            map.put(stage.name(), values[stage.ordinal()].sum());
+        }
+        return map;
+    }
+
+    // Printable name of a context symbol ('a', 0x0A, 0xC3 for a byte, U+00E7 'ç' for a code point, 't'+'h' for a pair).
+    private static String describe(int context) {
+        if(context > 32 && context < 127) return "'" + (char) context + "'";
+        if(context > Character.MAX_CODE_POINT) return describe((byte) (context >>> 8)) + "+" + describe((byte) context);
+        if(context > Byte.MAX_VALUE) return String.format("U+%04X '%s'", context, Character.toString(context));
+        return String.format("0x%02X", context & 0xFF);
+    }
+}
@@ -0,0 +1,51 @@
+package com.pwha.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link PipelineMetrics}. Stage maps are keyed by {@link Stage} name.
+ */
+public interface PipelineMetricsMXBean {
+
+    Map<String, Long> getStageCount();
+
+    Map<String, Long> getStageWallNanos();
+
+    Map<String, Long> getStageCpuNanos();
+
+    Map<String, Long> getStageBytesIn();
+
+    Map<String, Long> getStageBytesOut();
+
+    long getPatternsInserted();
+
+    long getPatternsEvicted();
+
+    long getGreedyWords();
+
+    long getGreedyProbes();
+
+    long getGreedyFallbacks();
+
+    long getWordCacheLookups();
+
+    long getWordCacheHits();
+
+    // Fraction of word cache lookups that hit (0 without lookups).
+    double getWordCacheHitRate();
+
+    long getStoredBlocks();
+
+    long getStoredBytes();
+
+    // Number of compression runs per preflight decision.
+    Map<String, Long> getPreflightDecisions();
+
+    // Decision and estimate of the most recent preflight.
+    String getLastPreflight();
+
+    // One line per context: inserted, evicted, surviving patterns and average code length.
+    String[] getContextReport();
+
+    void reset();
+}
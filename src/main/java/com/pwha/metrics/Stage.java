@@ -0,0 +1,19 @@
+package com.pwha.metrics;
+
+/**
+ * The measured stages of the compression pipeline.
+ */
+public enum Stage {
+    // Sampling of the input to decide whether pattern mining pays off (EntropyPreflight).
+    PREFLIGHT,
+    // Pattern mining over the input (ByteReader + FrequencyService).
+    ANALYSIS,
+    // Super-Tree and Sub-Tree construction (HuffmanStructure.buildSuperTree).
+    TREE_BUILD,
+    // Code generation for every context and pattern (HuffmanStructure.buildDictionary).
+    DICTIONARY_BUILD,
+    // Block encoding (Encoder).
+    ENCODE,
+    // Header reading, tree reconstruction and block decoding (Decoder).
+    DECODE
+}
@@ -0,0 +1,38 @@
+package com.pwha.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures wall-clock and CPU time of the current thread for one stage.
+ * Only created when a {@link MetricsListener} is enabled.
+ */
+public final class StageTimer {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final long wallStart;
+    private final long cpuStart;
+
+    private StageTimer() {
+        this.wallStart = System.nanoTime();
+        this.cpuStart = currentThreadCpuNanos();
+    }
+
+    public static StageTimer start() {
+        return new StageTimer();
+    }
+
+    public long wallNanos() {
+        return System.nanoTime() - wallStart;
+    }
+
+    public long cpuNanos() {
+        return currentThreadCpuNanos() - cpuStart;
+    }
+
+    // CPU time of the calling thread, or 0 if the JVM does not support it.
+    public static long currentThreadCpuNanos() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+}
@@ -0,0 +1,25 @@
+package com.pwha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around {@code HuffmanStructure.buildSubTree}: one event per context.
+ */
+@Name("com.pwha.SubTreeBuild")
+@Label("PWHA Sub-Tree Build")
+@Category({"PWHA", "Tree"})
+@Description("Construction of the pattern tree of one context (lower layer)")
+@StackTrace(false)
+public class SubTreeBuildEvent extends jdk.jfr.Event {
+
+    @Label("Context")
+    @Description("Context symbol: the signed context byte, or the code point of a multi-byte context")
+    public int context;
+
+    @Label("Patterns")
+    public int patterns;
+}
@@ -0,0 +1,26 @@
+package com.pwha.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event around {@code HuffmanStructure.buildSuperTree}. When sub-trees are built during the
+ * merge, their {@link SubTreeBuildEvent}s are nested inside this one.
+ */
+@Name("com.pwha.SuperTreeBuild")
+@Label("PWHA Super-Tree Build")
+@Category({"PWHA", "Tree"})
+@Description("Construction of the context tree (upper layer)")
+@StackTrace(false)
+public class SuperTreeBuildEvent extends jdk.jfr.Event {
+
+    @Label("Contexts")
+    public int contexts;
+
+    @Label("Sub-Trees Built")
+    @Description("False when the sub-trees are built lazily by the decoder")
+    public boolean buildSubTrees;
+}
@@ -12,7 +12,7 @@ import java.util.Arrays;
  * Solution: This record overrides {@code equals} and {@code hashCode} to compare the
  * ACTUAL CONTENT of the arrays using {@code Arrays.equals}.
  */
-public record ByteArrayWrapper(byte[] data) implements Serializable {
+public record ByteArrayWrapper(byte[] data) implements Serializable, Comparable<ByteArrayWrapper> {
 
     /**
      * Returns the length of the wrapped byte array.
@@ -43,6 +43,15 @@ public record ByteArrayWrapper(byte[] data) implements Serializable {
         return Arrays.hashCode(data);
     }
 
+    /**
+     * Orders patterns by their unsigned byte content (lexicographic).
+     * Gives the tree builders a stable iteration order that does not depend on HashMap internals.
+     */
+    @Override
+    public int compareTo(ByteArrayWrapper other) {
+        return Arrays.compareUnsigned(data, other.data);
+    }
+
     /**
      * Returns a string representation of the array content.
      * Primarily used for debugging purposes.
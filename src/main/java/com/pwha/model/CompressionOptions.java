@@ -0,0 +1,174 @@
+package com.pwha.model;
+
+import com.pwha.engine.EntropyCoder;
+import com.pwha.engine.ParseStrategy;
+import com.pwha.tokenizer.Tokenizer;
+import com.pwha.tokenizer.Tokenizers;
+import com.pwha.util.Constant;
+import com.pwha.util.SeparatorSet;
+
+/**
+ * Per-call compression settings.
+ * <p>
+ * Replaces the process-global pattern limits: every compression run carries its own options
+ * through {@code FrequencyService}, {@code ContextLeaf} and the {@code Encoder}, so concurrent
+ * jobs with different settings no longer interfere.
+ * <p>
+ * Named levels bundle the model and parsing choices:
+ * 1. **FAST:** Single-byte patterns only (no pattern mining), encoded with a direct code table.
+ * 2. **DEFAULT:** Patterns up to 6 bytes, 2500 per context, greedy longest-match parse.
+ * 3. **MAX:** Patterns up to 10 bytes, 8000 per context, optimal (minimum bit cost) parse.
+ *
+ * @param level            The level these options were derived from (recorded in the file header).
+ * @param maxPatternLength Longest pattern mined during analysis.
+ * @param maxPatternAmount Patterns kept per context before the eviction policy kicks in.
+ * @param parseStrategy    How the Encoder splits words into patterns.
+ * @param maxTokenLength   Longest word; longer runs without a separator are split (recorded in the file header).
+ * @param separators       Bytes that end a word (recorded in the file header), or null to let the
+ *                         preflight choose them from the byte histogram of the input.
+ * @param tokenizer        How word boundaries and forced splits are found (its id is recorded in the file header).
+ * @param contextOrder     1: a word's context is its first symbol. 2: its first two bytes where that pair is
+ *                         frequent enough, falling back to the first byte (see {@code FrequencyService#pruneContexts}).
+ * @param phrases          Whether frequent runs of tokens (separators included) are mined and coded as one
+ *                         symbol (see {@code FrequencyService#selectPhrases}).
+ * @param templates        Whether log line templates are mined, so that only the variable fields of a matching
+ *                         line go through the pattern model (see {@code TemplateMiner}). Not combined with phrases.
+ * @param coder            Entropy coder under the model: Huffman codes, or rANS over the same frequencies
+ *                         (recorded in the file header).
+ * @param offHeap          Whether the Encoder's pattern codes are compiled into a {@link PatternArena} outside the
+ *                         heap for the run (and released from the contexts). Does not change the output.
+ */
+public record CompressionOptions(Level level, int maxPatternLength, int maxPatternAmount, ParseStrategy parseStrategy,
+                                 int maxTokenLength, SeparatorSet separators, Tokenizer tokenizer, int contextOrder,
+                                 boolean phrases, boolean templates, EntropyCoder.Backend coder, boolean offHeap) {
+
+    public enum Level {
+        FAST(0), DEFAULT(1), MAX(2);
+
+        // Stable identifier written to the file header.
+        private final int id;
+
+        Level(int id) {
+            this.id = id;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public static Level fromId(int id) {
+            for(Level level : values()) {
+                if(level.id == id) return level;
+            }
+            throw new IllegalArgumentException("Unknown compression level id: " + id);
+        }
+
+        // Parses a level name such as "fast", "default" or "max" (case-insensitive).
+        public static Level parse(String name) {
+            try {
+                return valueOf(name.toUpperCase());
+            } catch(IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown compression level: " + name + " (expected fast, default or max)");
+            }
+        }
+    }
+
+    public CompressionOptions {
+        if(level == null || parseStrategy == null || tokenizer == null || coder == null) {
+            throw new IllegalArgumentException("Level, parse strategy, tokenizer and entropy coder are required");
+        }
+        if(maxPatternLength <= 0 || maxPatternAmount <= 0 || maxTokenLength <= 0) {
+            throw new IllegalArgumentException("Pattern length, amount and token length must be positive");
+        }
+        if(contextOrder != 1 && contextOrder != 2) {
+            throw new IllegalArgumentException("Context order must be 1 or 2");
+        }
+        if(phrases && templates) {
+            throw new IllegalArgumentException("Phrases and log templates cannot be combined");
+        }
+    }
+
+    public static CompressionOptions of(Level level) {
+        return switch(level) {
+            case FAST -> new CompressionOptions(Level.FAST, 1, 256, ParseStrategy.GREEDY, Constant.MAX_TOKEN_LENGTH,
+                    SeparatorSet.DEFAULT, Tokenizers.TEXT, 1, false, false, EntropyCoder.Backend.HUFFMAN, false);
+            case DEFAULT -> new CompressionOptions(Level.DEFAULT, Constant.MAX_PATTERN_LENGTH,
+                    Constant.MAX_PATTERN_AMOUNT, ParseStrategy.GREEDY, Constant.MAX_TOKEN_LENGTH,
+                    SeparatorSet.DEFAULT, Tokenizers.TEXT, 1, false, false, EntropyCoder.Backend.HUFFMAN, false);
+            case MAX -> new CompressionOptions(Level.MAX, 10, 8000, ParseStrategy.OPTIMAL, Constant.MAX_TOKEN_LENGTH,
+                    SeparatorSet.DEFAULT, Tokenizers.TEXT, 1, false, false, EntropyCoder.Backend.HUFFMAN, false);
+        };
+    }
+
+    public static CompressionOptions defaults() {
+        return of(Level.DEFAULT);
+    }
+
+    public CompressionOptions withMaxPatternLength(int maxPatternLength) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withMaxPatternAmount(int maxPatternAmount) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withParseStrategy(ParseStrategy parseStrategy) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withMaxTokenLength(int maxTokenLength) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    // Pass null to have the separators chosen automatically (see autoSeparators()).
+    public CompressionOptions withSeparators(SeparatorSet separators) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    // Also resets the separators to the tokenizer's own; call withSeparators afterwards to override them.
+    public CompressionOptions withTokenizer(Tokenizer tokenizer) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength,
+                tokenizer.separators(), tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withContextOrder(int contextOrder) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withPhrases(boolean phrases) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withTemplates(boolean templates) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withCoder(EntropyCoder.Backend coder) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    public CompressionOptions withOffHeap(boolean offHeap) {
+        return new CompressionOptions(level, maxPatternLength, maxPatternAmount, parseStrategy, maxTokenLength, separators, tokenizer, contextOrder, phrases, templates, coder, offHeap);
+    }
+
+    // Whether the separators are still to be chosen from the input.
+    public boolean autoSeparators() {
+        return separators == null;
+    }
+
+    // The separators to tokenize with: the chosen set, or the tokenizer's own while none was chosen.
+    public SeparatorSet separatorSet() {
+        return separators != null ? separators : tokenizer.separators();
+    }
+
+    // The tokenizer of this job, configured with its separators.
+    public Tokenizer configuredTokenizer() {
+        return tokenizer.withSeparators(separatorSet());
+    }
+
+    @Override
+    public String toString() {
+        return level.name().toLowerCase() + " (length=" + maxPatternLength + ", amount=" + maxPatternAmount
+                + ", parse=" + parseStrategy.name().toLowerCase() + ", token=" + maxTokenLength + ", tokenizer=" + tokenizer.name() + ", order=" + contextOrder + (phrases ? ", phrases" : "") + (templates ? ", templates" : "") + (coder != EntropyCoder.Backend.HUFFMAN ? ", " + coder.name().toLowerCase() : "") + (offHeap ? ", off-heap" : "") + ", separators=" + (separators == null ? "auto" : separators) + ")";
+    }
+}
@@ -0,0 +1,36 @@
+package com.pwha.model;
+
+import com.pwha.model.node.HNode;
+
+/**
+ * Summary of a single compression run.
+ * <p>
+ * Returned by {@code CompressionService} so that every front-end (GUI, command line, batch jobs)
+ * can report the same statistics without re-reading the files.
+ *
+ * @param originalSize   Size of the input in bytes.
+ * @param compressedSize Size of the output (header + blocks) in bytes.
+ * @param contextCount   Number of contexts in the Super-Tree.
+ * @param patternCount   Total number of patterns over all contexts.
+ * @param elapsedNanos   Wall time of the whole pipeline.
+ * @param root           Root of the Super-Tree, kept for the tree visualization.
+ */
+public record CompressionResult(long originalSize, long compressedSize, int contextCount, long patternCount,
+                                long elapsedNanos, HNode root) {
+
+    /**
+     * Percentage of space saved compared to the original input.
+     */
+    public double spaceSavedPercent() {
+        if(originalSize == 0) return 0;
+        return 100.0 * (1.0 - ((double) compressedSize / originalSize));
+    }
+
+    /**
+     * Input throughput in MB/s (1 MB = 2^20 bytes).
+     */
+    public double throughputMBps() {
+        if(elapsedNanos == 0) return 0;
+        return (originalSize / 1048576.0) / (elapsedNanos / 1e9);
+    }
+}
@@ -0,0 +1,185 @@
+package com.pwha.model;
+
+import com.pwha.model.node.ContextLeaf;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+/**
+ * Off-heap code table of a whole dictionary: (context, pattern) -> Huffman code, in one
+ * {@link MemorySegment} owned by an {@link Arena}.
+ * <p>
+ * On the heap, every pattern code costs a {@code ByteArrayWrapper}, its {@code byte[]}, a code
+ * {@code String} and a map node, and every probe of the greedy matcher allocates a new key. Here
+ * the codes are compiled into a flat open-addressing table outside the heap: the Encoder probes
+ * it straight from the input bytes, and the context sub-dictionaries can be released.
+ * <p>
+ * Layout (little-endian): Capacity slots of
+ * [Hash][Context Symbol][Code Bits (8 bytes)][Pattern Length (2)][Code Length (1)][Pattern],
+ * the pattern padded to Key Width bytes. A hash of 0 marks an empty slot; at most half the slots
+ * are used, so linear probing always ends on one.
+ * <p>
+ * Lifecycle: the memory is freed by {@link #close()}; any lookup after that fails with an
+ * IllegalStateException instead of reading freed memory. Thread-safe for lookups until closed.
+ */
+public final class PatternArena implements AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // Slot fields, by offset.
+    private static final int HASH = 0;
+    private static final int CONTEXT = 4;
+    private static final int BITS = 8;
+    private static final int LENGTH = 16;
+    private static final int CODE_LENGTH = 18;
+    private static final int KEY = 19;
+
+    private final Arena arena;
+    private final MemorySegment segment;
+    private final int capacity;
+    private final int keyWidth;
+    private final int slotSize;
+    private final int entries;
+
+    private PatternArena(Arena arena, MemorySegment segment, int capacity, int keyWidth, int entries) {
+        this.arena = arena;
+        this.segment = segment;
+        this.capacity = capacity;
+        this.keyWidth = keyWidth;
+        this.entries = entries;
+        this.slotSize = slotSize(keyWidth);
+    }
+
+    /**
+     * Compiles the pattern codes of every context of the dictionary (after its codes were generated).
+     * Phrase leaves carry no patterns and are skipped.
+     *
+     * @throws IllegalArgumentException If a code is longer than 64 bits.
+     */
+    public static PatternArena compile(Map<Integer, ContextLeaf> dictionary) {
+        int count = 0;
+        int keyWidth = 1;
+        for(ContextLeaf leaf : dictionary.values()) {
+            count += leaf.getSubDictionary().size();
+            keyWidth = Math.max(keyWidth, leaf.getMaxPatternLength());
+        }
+        if(keyWidth > 0xFFFF) {
+            throw new IllegalArgumentException("Patterns longer than 65535 bytes cannot be stored off-heap");
+        }
+        int capacity = Integer.highestOneBit(Math.max(8, count * 2 - 1)) << 1;
+        int slotSize = slotSize(keyWidth);
+
+        Arena arena = Arena.ofShared();
+        try {
+            // Zero-filled: every slot starts out empty.
+            MemorySegment segment = arena.allocate((long) capacity * slotSize, Long.BYTES);
+
+            for(ContextLeaf leaf : dictionary.values()) {
+                int context = leaf.getSymbol();
+                for(Map.Entry<ByteArrayWrapper, String> entry : leaf.getSubDictionary().entrySet()) {
+                    insert(segment, capacity, slotSize, context, entry.getKey().data(), entry.getValue());
+                }
+            }
+            return new PatternArena(arena, segment, capacity, keyWidth, count);
+        } catch(RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Slot of the pattern {@code data[from, to)} in the context with the given symbol
+     * ({@link ContextLeaf#getSymbol()}), or -1 if it has no code there.
+     */
+    public long find(int context, byte[] data, int from, int to) {
+        int length = to - from;
+        if(length > keyWidth) return -1;
+        int hash = hash(context, data, from, to);
+        int mask = capacity - 1;
+        for(int i = hash & mask; ; i = (i + 1) & mask) {
+            long slot = (long) i * slotSize;
+            int stored = segment.get(INT, slot + HASH);
+            if(stored == 0) return -1;
+            if(stored == hash && segment.get(INT, slot + CONTEXT) == context
+                    && Short.toUnsignedInt(segment.get(SHORT, slot + LENGTH)) == length && keyEquals(slot, data, from, length)) {
+                return slot;
+            }
+        }
+    }
+
+    // The code of a slot returned by find(), right-aligned.
+    public long codeBits(long slot) {
+        return segment.get(LONG, slot + BITS);
+    }
+
+    public int codeLength(long slot) {
+        return segment.get(ValueLayout.JAVA_BYTE, slot + CODE_LENGTH);
+    }
+
+    // Number of patterns in the table.
+    public int size() {
+        return entries;
+    }
+
+    // Off-heap bytes held by the table.
+    public long byteSize() {
+        return segment.byteSize();
+    }
+
+    // Frees the table. Lookups afterwards throw IllegalStateException.
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private boolean keyEquals(long slot, byte[] data, int from, int length) {
+        for(int i = 0; i < length; i++) {
+            if(segment.get(ValueLayout.JAVA_BYTE, slot + KEY + i) != data[from + i]) return false;
+        }
+        return true;
+    }
+
+    private static void insert(MemorySegment segment, int capacity, int slotSize, int context, byte[] pattern, String code) {
+        if(code.length() > Long.SIZE) {
+            throw new IllegalArgumentException("Code of " + code.length() + " bits cannot be stored off-heap");
+        }
+        long bits = 0;
+        for(int i = 0; i < code.length(); i++) {
+            bits = bits << 1 | (code.charAt(i) == '1' ? 1 : 0);
+        }
+
+        int hash = hash(context, pattern, 0, pattern.length);
+        int mask = capacity - 1;
+        int i = hash & mask;
+        while(segment.get(INT, (long) i * slotSize + HASH) != 0) {
+            i = (i + 1) & mask;
+        }
+        long slot = (long) i * slotSize;
+        segment.set(INT, slot + HASH, hash);
+        segment.set(INT, slot + CONTEXT, context);
+        segment.set(LONG, slot + BITS, bits);
+        segment.set(SHORT, slot + LENGTH, (short) pattern.length);
+        segment.set(ValueLayout.JAVA_BYTE, slot + CODE_LENGTH, (byte) code.length());
+        MemorySegment.copy(pattern, 0, segment, ValueLayout.JAVA_BYTE, slot + KEY, pattern.length);
+    }
+
+    // FNV-1a over the context symbol and the pattern, never 0 (which marks an empty slot).
+    private static int hash(int context, byte[] data, int from, int to) {
+        int h = (0x811C9DC5 ^ context) * 0x01000193;
+        for(int i = from; i < to; i++) {
+            h = (h ^ (data[i] & 0xFF)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        return h == 0 ? 1 : h;
+    }
+
+    // Slot bytes for patterns of up to 'keyWidth' bytes, rounded up to 8 so that the codes stay aligned.
+    private static int slotSize(int keyWidth) {
+        return (KEY + keyWidth + 7) & ~7;
+    }
+}
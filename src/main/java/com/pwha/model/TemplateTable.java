@@ -0,0 +1,179 @@
+package com.pwha.model;
+
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.SimpleLeaf;
+import com.pwha.util.Constant;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Log line templates, written to the file header after the dictionary.
+ * <p>
+ * A template holds one byte array per space-separated field of a line, or null where the field
+ * varies (a wildcard). A line that matches a template is written as the template's code followed
+ * by its wildcard fields, each coded with the regular pattern model up to and including the space
+ * or newline after it. The constant fields and their spaces come from the template.
+ * <p>
+ * Template ids are Huffman-coded with a table of their own: the sub-tree of {@link #getIdTable()},
+ * whose patterns are 2-byte ids. The last id ({@link #escapeId()}) marks a line without a template,
+ * coded token by token up to its newline.
+ */
+public final class TemplateTable implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Fields of every template, null for a wildcard. The index is the template id.
+    private final ArrayList<byte[][]> templates;
+
+    // Frequencies of the template ids; its sub-tree is the id code table.
+    private final ContextLeaf idTable;
+
+    // Encoder side: candidate ids by line shape (field count and first field, see indexKey).
+    private transient HashMap<Integer, int[]> index;
+
+    /**
+     * @param templates   Fields of each template (null for a wildcard).
+     * @param lineCounts  Lines each template is expected to code.
+     * @param escapeLines Lines expected to be coded without a template.
+     */
+    public TemplateTable(List<byte[][]> templates, int[] lineCounts, int escapeLines) {
+        if(templates.size() != lineCounts.length || templates.size() >= 0xFFFF) {
+            throw new IllegalArgumentException("One line count per template, at most 65534 templates");
+        }
+        this.templates = new ArrayList<>(templates);
+        this.idTable = new ContextLeaf((byte) '\n', 0);
+        for(int id = 0; id < lineCounts.length; id++) {
+            idTable.setPatternFrequency(idBytes(id), Math.max(1, lineCounts[id]));
+        }
+        idTable.setPatternFrequency(idBytes(escapeId()), Math.max(1, escapeLines));
+        buildIndex();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    // Id of "no template": the line follows as plain tokens.
+    public int escapeId() {
+        return templates.size();
+    }
+
+    // Fields of a template (null entries are wildcards). Do not modify.
+    public byte[][] get(int id) {
+        return templates.get(id);
+    }
+
+    // Holds the id frequencies; build its sub-tree to get the id codes.
+    public ContextLeaf getIdTable() {
+        return idTable;
+    }
+
+    // Code of a template id (or the escape id). Only valid once the id table's codes are generated.
+    public String getCode(int id) {
+        return idTable.getSubCode(new ByteArrayWrapper(idBytes(id)));
+    }
+
+    // Template id of a leaf of the id table.
+    public static int idOf(SimpleLeaf leaf) {
+        byte[] id = leaf.getPattern().data();
+        return (id[0] & 0xFF) << 8 | (id[1] & 0xFF);
+    }
+
+    private static byte[] idBytes(int id) {
+        return new byte[]{(byte) (id >>> 8), (byte) id};
+    }
+
+    /**
+     * Splits the line {@code data[from, to)} (without its newline) into space-separated fields.
+     * The field i is {@code data[starts[i], ends[i])}; {@code data[ends[i]]} is the space or newline after it.
+     *
+     * @return The number of fields, or -1 if the line cannot take a template: empty fields (leading,
+     *         trailing or repeated spaces), more fields than {@code starts} holds, or too long a line.
+     */
+    public static int splitFields(byte[] data, int from, int to, int[] starts, int[] ends) {
+        if(to <= from || to - from > Constant.MAX_TEMPLATE_LINE_LENGTH) return -1;
+        int fields = 0;
+        int fieldStart = from;
+        for(int i = from; i <= to; i++) {
+            if(i < to && data[i] != ' ') continue;
+            if(i == fieldStart || fields == starts.length) return -1;
+            starts[fields] = fieldStart;
+            ends[fields] = i;
+            fields++;
+            fieldStart = i + 1;
+        }
+        return fields;
+    }
+
+    /**
+     * Id of the template matching the line split by {@link #splitFields}: same number of fields, and
+     * every constant field equal. If several match, the one with the most constant fields wins.
+     *
+     * @return The template id, or -1 if none matches.
+     */
+    public int match(byte[] data, int[] starts, int[] ends, int fields) {
+        int best = -1;
+        int bestConstants = -1;
+        for(int pass = 0; pass < 2; pass++) {
+            int[] candidates = index.get(pass == 0 ? indexKey(fields, data, starts[0], ends[0]) : indexKey(fields, null, 0, 0));
+            if(candidates == null) continue;
+            for(int id : candidates) {
+                byte[][] template = templates.get(id);
+                if(template.length != fields) continue; // Hash collision.
+                int constants = constantsMatched(template, data, starts, ends);
+                if(constants > bestConstants) {
+                    best = id;
+                    bestConstants = constants;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Number of constant fields of the template, or -1 if one of them differs from the line.
+    private static int constantsMatched(byte[][] template, byte[] data, int[] starts, int[] ends) {
+        int constants = 0;
+        for(int i = 0; i < template.length; i++) {
+            byte[] field = template[i];
+            if(field == null) continue;
+            if(!Arrays.equals(field, 0, field.length, data, starts[i], ends[i])) return -1;
+            constants++;
+        }
+        return constants;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildIndex();
+    }
+
+    private void buildIndex() {
+        HashMap<Integer, List<Integer>> byKey = new HashMap<>();
+        for(int id = 0; id < templates.size(); id++) {
+            byte[][] template = templates.get(id);
+            byte[] first = template[0];
+            int key = first == null ? indexKey(template.length, null, 0, 0) : indexKey(template.length, first, 0, first.length);
+            byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(id);
+        }
+        index = new HashMap<>();
+        byKey.forEach((key, ids) -> index.put(key, ids.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    // Hash of (field count, first field), the first field being null for templates starting with a wildcard.
+    // Collisions only cost a comparison: every candidate is checked field by field.
+    private static int indexKey(int fields, byte[] first, int from, int to) {
+        int hash = 1;
+        if(first != null) {
+            for(int i = from; i < to; i++) hash = 31 * hash + first[i];
+        } else {
+            hash = 0;
+        }
+        return 31 * hash + fields;
+    }
+}
@@ -1,10 +1,14 @@
 package com.pwha.model.node;
 
 import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.CompressionOptions;
 import com.pwha.util.Constant;
 import com.pwha.util.CustomPriorityQueue;
+import com.pwha.util.Utf8Utils;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.PriorityQueue;
@@ -20,12 +24,41 @@ import java.util.PriorityQueue;
  * 1. Stores frequency data for patterns starting with this character.
  * 2. Manages memory using an approximate 'Space-Saving' algorithm (Eviction).
  * 3. Builds and holds the specific Huffman Sub-Tree for this context.
+ * <p>
+ * Symbols: a context is normally a single byte, keyed by its (signed) byte value. With code-point
+ * contexts (the "utf8" tokenizer) a multi-byte character is one context instead, keyed by its code
+ * point (always 0x80 or above, so the two kinds never collide). See {@link #symbolOf}.
+ * Order-2 contexts are keyed by the first two bytes of a word, above the Unicode range
+ * (see {@link #pairSymbol}).
+ * <p>
+ * Phrases: a phrase leaf stands for several whole tokens, separators included (e.g. "of the ").
+ * It has no sub-tree; after it the Decoder is back at a token boundary without a context.
  */
 public class ContextLeaf extends HNode implements Serializable {
 
-    // The actual character data for this context (e.g., 'a', 'b').
+    // Pinned to the value of the byte-only class, so headers written before code-point contexts still load.
+    private static final long serialVersionUID = -5507520073555444546L;
+
+    // The actual character data for this context (e.g., 'a', 'b'); the lead byte for a code-point context.
     private final byte data;
 
+    // Code point of a multi-byte context, 0 for a byte context (also what older headers deserialize to).
+    private final int codePoint;
+
+    // Symbol of an order-2 context (see pairSymbol), 0 for a single-symbol context.
+    private final int pair;
+
+    // Order-2 symbols: PAIR_BASE + (first byte << 8) + second byte, clear of bytes and code points.
+    private static final int PAIR_BASE = 0x1000000;
+
+    // Bytes of a phrase leaf, null for a context. Phrase symbols are PHRASE_BASE + index.
+    private final byte[] phrase;
+    private final int phraseIndex;
+    private static final int PHRASE_BASE = 0x2000000;
+
+    // Bytes the context stands for, as written by the Decoder.
+    private transient byte[] symbolBytes;
+
     // Map storing the frequency of patterns belonging to this context.
     // Key: The pattern (wrapped byte array), Value: Frequency count.
     private final HashMap<ByteArrayWrapper, Integer> freqMap;
@@ -33,8 +66,21 @@ public class ContextLeaf extends HNode implements Serializable {
     // The root of the generated Huffman Sub-Tree for this context.
     private transient HNode subTreeRoot;
 
+    // True once the sub-tree has been materialized (even if it turned out empty).
+    // Lets the Decoder build sub-trees lazily, only for contexts the payload actually reaches.
+    // Volatile: written after subTreeRoot, so a reader that sees 'true' also sees the finished tree.
+    private transient volatile boolean subTreeBuilt;
+
     // The dictionary mapping patterns to their binary codes within this context.
-    private transient final HashMap<ByteArrayWrapper, String> subDictionary;
+    // Emptied by releaseSubDictionary() once the codes live in a PatternArena.
+    private transient HashMap<ByteArrayWrapper, String> subDictionary;
+
+    // Length of the longest pattern in the sub-dictionary; bounds the Encoder's match search.
+    private transient int maxPatternLength;
+
+    // Direct lookup table for single-byte patterns, indexed by the unsigned byte value.
+    // Lets the Encoder skip hashing when a context only holds single bytes (the "fast" level).
+    private transient String[] singleByteCodes;
 
     // Priority Queue used to build the sub-tree.
     private transient CustomPriorityQueue<SimpleLeaf> priorityQueue;
@@ -43,26 +89,110 @@ public class ContextLeaf extends HNode implements Serializable {
     private transient String code;
     private int kValue;
 
+    // Analysis counters for metrics: patterns inserted into / evicted from the frequency map.
+    // Plain fields: a context is only mined by the thread that owns its FrequencyService.
+    private transient long insertedPatterns;
+    private transient long evictedPatterns;
+
     // Constructor Method.
     public ContextLeaf(byte data, int frequency) {
+        this((int) data, frequency);
+    }
+
+    // Context for a symbol as returned by symbolOf or pairSymbol: a byte value (-128..127), a code point or a pair.
+    public ContextLeaf(int symbol, int frequency) {
+        super(frequency);
+        if(symbol < Byte.MIN_VALUE || (symbol > Character.MAX_CODE_POINT && !isPairSymbol(symbol))) {
+            throw new IllegalArgumentException("Invalid context symbol: " + symbol);
+        }
+        boolean singleByte = symbol <= Byte.MAX_VALUE;
+        this.pair = isPairSymbol(symbol) ? symbol : 0;
+        this.codePoint = singleByte || pair != 0 ? 0 : symbol;
+        this.data = singleByte ? (byte) symbol : pair != 0 ? (byte) (symbol >>> 8) : Utf8Utils.encode(symbol)[0];
+        this.phrase = null;
+        this.phraseIndex = 0;
+        this.freqMap = new HashMap<>();
+        this.subDictionary = new HashMap<>();
+        this.priorityQueue = new CustomPriorityQueue<SimpleLeaf>();
+    }
+
+    // Phrase leaf number 'index' (see FrequencyService#selectPhrases), coded as a whole in the Super-Tree.
+    public ContextLeaf(byte[] phrase, int index, int frequency) {
         super(frequency);
-        this.data = data;
+        if(phrase.length < 2 || index < 0 || index >= PAIR_BASE) {
+            throw new IllegalArgumentException("Invalid phrase #" + index + " of " + phrase.length + " bytes");
+        }
+        this.data = phrase[0];
+        this.codePoint = 0;
+        this.pair = 0;
+        this.phrase = phrase.clone();
+        this.phraseIndex = index;
         this.freqMap = new HashMap<>();
         this.subDictionary = new HashMap<>();
         this.priorityQueue = new CustomPriorityQueue<SimpleLeaf>();
     }
 
+    /**
+     * Key of the context formed by {@code data[from, from + length)}: the byte value for a single
+     * byte, the code point for a well-formed multi-byte UTF-8 sequence.
+     */
+    public static int symbolOf(byte[] data, int from, int length) {
+        return length == 1 ? data[from] : Utf8Utils.decode(data, from, length);
+    }
+
+    // Key of the order-2 context formed by the first two bytes of a word.
+    public static int pairSymbol(byte first, byte second) {
+        return PAIR_BASE + ((first & 0xFF) << 8) + (second & 0xFF);
+    }
+
+    private static boolean isPairSymbol(int symbol) {
+        return symbol >= PAIR_BASE && symbol < PAIR_BASE + 0x10000;
+    }
+
     // Getters and Setters
     public byte getData(){
         return this.data;
     }
 
+    // Key of this context in the dictionary (see symbolOf and pairSymbol).
+    public int getSymbol(){
+        if(phrase != null) return PHRASE_BASE + phraseIndex;
+        return pair != 0 ? pair : codePoint != 0 ? codePoint : data;
+    }
+
+    // Whether this is an order-2 context (two bytes).
+    public boolean isPairContext(){
+        return pair != 0;
+    }
+
+    // Whether this leaf is a phrase rather than a context.
+    public boolean isPhrase(){
+        return phrase != null;
+    }
+
+    // The bytes this context stands for: one byte, the UTF-8 form of the code point, the pair or the phrase.
+    public byte[] getSymbolBytes(){
+        byte[] bytes = symbolBytes;
+        if(bytes == null){
+            bytes = phrase != null ? phrase
+                    : pair != 0 ? new byte[]{data, (byte) pair}
+                    : codePoint != 0 ? Utf8Utils.encode(codePoint) : new byte[]{data};
+            symbolBytes = bytes;
+        }
+        return bytes;
+    }
+
     public HNode getSubTreeRoot(){
         return subTreeRoot;
     }
 
     public void setSubTreeRoot(HNode subTreeRoot) {
         this.subTreeRoot = subTreeRoot;
+        this.subTreeBuilt = true;
+    }
+
+    public boolean isSubTreeBuilt() {
+        return subTreeBuilt;
     }
 
     public CustomPriorityQueue<SimpleLeaf> getSubQueue(){
@@ -72,10 +202,16 @@ public class ContextLeaf extends HNode implements Serializable {
     /**
      * Initializes the Priority Queue for the sub-tree construction.
      * Converts entries from the frequency map into SimpleLeaf nodes.
+     * <p>
+     * Patterns are inserted in sorted order: a deserialized HashMap may iterate in a different
+     * order than the original one, and equal-frequency ties must resolve identically on both
+     * the Encoder and the Decoder side for the rebuilt tree to match.
      */
     public void setSubQueue(){
         this.priorityQueue = new CustomPriorityQueue<>();
-        for(ByteArrayWrapper key : freqMap.keySet()){
+        ByteArrayWrapper[] keys = freqMap.keySet().toArray(new ByteArrayWrapper[0]);
+        Arrays.sort(keys);
+        for(ByteArrayWrapper key : keys){
             this.priorityQueue.add(new SimpleLeaf(key, freqMap.get(key)));
         }
     }
@@ -88,17 +224,29 @@ public class ContextLeaf extends HNode implements Serializable {
         this.code = code;
     }
 
+    // Adds a pattern using the limits of the default level.
+    public void addToFreqMap(byte[] pattern) {
+        addToFreqMap(pattern, Constant.MAX_PATTERN_LENGTH, Constant.MAX_PATTERN_AMOUNT);
+    }
+
+    // Adds a pattern using the limits of the given options.
+    public void addToFreqMap(byte[] pattern, CompressionOptions options) {
+        addToFreqMap(pattern, options.maxPatternLength(), options.maxPatternAmount());
+    }
+
     /**
      * Adds a pattern to the sub-frequency map.
      * Handles limits on pattern length and total number of patterns (Memory Management).
      *
-     * @param pattern The byte array representing the pattern to add.
+     * @param pattern          The byte array representing the pattern to add.
+     * @param maxPatternLength Longest pattern accepted.
+     * @param maxPatternAmount Map size at which the eviction policy starts.
      */
     // In here we are adding patterns and chars to the sub frequency map.
-    public void addToFreqMap(byte[] pattern) {
+    private void addToFreqMap(byte[] pattern, int maxPatternLength, int maxPatternAmount) {
         // We are checking pattern length. This optimizes the swelling of the header section.
         // If a pattern is too long, we ignore it to keep the dictionary size manageable.
-        if(pattern.length > Constant.MAX_PATTERN_LENGTH){
+        if(pattern.length > maxPatternLength){
             return;
         }
 
@@ -117,16 +265,18 @@ public class ContextLeaf extends HNode implements Serializable {
         // Single characters are base units and should generally not be evicted.
         if(byteArrayWrapper.length() == 1){
             freqMap.put(byteArrayWrapper, 1);
+            insertedPatterns++;
             return;
         }
 
         /*
         In here we are checking freq map size. This section is important for the Space-Save algorithm.
-        If map size is less than MAX_PATTERN_AMOUNT, we simply add the new pattern.
+        If map size is less than maxPatternAmount, we simply add the new pattern.
         If the map is full, we trigger the eviction logic to make space.
          */
-        if(freqMap.size() < Constant.MAX_PATTERN_AMOUNT){
+        if(freqMap.size() < maxPatternAmount){
             freqMap.put(byteArrayWrapper, 1);
+            insertedPatterns++;
             return;
         }
 
@@ -179,14 +329,54 @@ public class ContextLeaf extends HNode implements Serializable {
         if(victim != null){
             freqMap.remove(victim);
             freqMap.put(byteArrayWrapper, minFreq + 1);
+            evictedPatterns++;
+            insertedPatterns++;
         } else{
             // Fallback: If no victim found (rare case), force add if it is a single char.
             if(byteArrayWrapper.data().length == 1){
                 freqMap.put(byteArrayWrapper, minFreq + 1);
+                insertedPatterns++;
             }
         }
     }
 
+    /**
+     * Folds a pruned order-2 context into this order-1 context, whose words it now encodes.
+     * <p>
+     * Logic:
+     * 1. **Frequency:** Every word of the pair now starts with this context.
+     * 2. **Second Byte:** Counted as a single-byte pattern, once per word of the pair.
+     * 3. **Patterns:** The pair's patterns (and separators) are added with their counts. Patterns
+     *    spanning the second byte were never mined; the greedy matcher codes that byte on its own.
+     *
+     * @param pairContext      The order-2 context starting with this context's byte.
+     * @param maxPatternAmount Map size at which the eviction policy starts.
+     */
+    public void absorb(ContextLeaf pairContext, int maxPatternAmount){
+        setFrequency(getFrequency() + pairContext.getFrequency());
+        addCount(new ByteArrayWrapper(new byte[]{pairContext.getSymbolBytes()[1]}), pairContext.getFrequency(), maxPatternAmount);
+        for(Map.Entry<ByteArrayWrapper, Integer> entry : pairContext.freqMap.entrySet()){
+            addCount(entry.getKey(), entry.getValue(), maxPatternAmount);
+        }
+    }
+
+    // Adds 'count' occurrences of a pattern, evicting like addToFreqMap when the map is full.
+    private void addCount(ByteArrayWrapper key, int count, int maxPatternAmount){
+        if(!freqMap.containsKey(key) && key.length() > 1 && freqMap.size() >= maxPatternAmount){
+            evictSafeAndAdd(key); // Inserted with the victim's frequency + 1, if there was a victim.
+            if(!freqMap.containsKey(key)) return;
+            count--;
+        } else if(!freqMap.containsKey(key)){
+            insertedPatterns++;
+        }
+        freqMap.merge(key, count, Integer::sum);
+    }
+
+    // Sets the frequency of a pattern directly, for tables counted elsewhere (e.g. the template ids of a TemplateTable).
+    public void setPatternFrequency(byte[] pattern, int frequency){
+        freqMap.put(new ByteArrayWrapper(pattern), frequency);
+    }
+
     /**
      * Clears the priority queue to free up memory after the tree is built.
      */
@@ -198,6 +388,8 @@ public class ContextLeaf extends HNode implements Serializable {
     // Triggers the recursive generation of binary codes for the entire sub-tree.
     public void generateCode() {
         subDictionary.clear();
+        maxPatternLength = 0;
+        singleByteCodes = new String[256];
 
         if(subTreeRoot != null){
             traverseAndBuildDictionary(subTreeRoot, "");
@@ -212,6 +404,10 @@ public class ContextLeaf extends HNode implements Serializable {
         // If we reach a leaf (Pattern), store its code in the dictionary.
         if(node instanceof SimpleLeaf simpleNode){
             this.subDictionary.put(simpleNode.getPattern(), currentCode);
+            maxPatternLength = Math.max(maxPatternLength, simpleNode.getPattern().length());
+            if(simpleNode.getPattern().length() == 1){
+                singleByteCodes[simpleNode.getPattern().data()[0] & 0xFF] = currentCode;
+            }
         }
 
         // If internal node, continue traversal.
@@ -227,6 +423,29 @@ public class ContextLeaf extends HNode implements Serializable {
         return subDictionary.get(key);
     }
 
+    // All pattern codes of this context (e.g. to compile them into a PatternArena). Do not modify.
+    public Map<ByteArrayWrapper, String> getSubDictionary(){
+        return Collections.unmodifiableMap(subDictionary);
+    }
+
+    /**
+     * Drops the pattern codes from the heap once they were compiled elsewhere (see {@code PatternArena}).
+     * getSubCode() finds nothing afterwards; the single-byte codes and the longest pattern length stay.
+     */
+    public void releaseSubDictionary(){
+        subDictionary = new HashMap<>();
+    }
+
+    // Code of a single-byte pattern, or null if the byte has none. Only valid after generateCode().
+    public String getSingleByteCode(byte value){
+        return singleByteCodes[value & 0xFF];
+    }
+
+    // Length of the longest pattern that has a code in this context (0 before generateCode()).
+    public int getMaxPatternLength() {
+        return maxPatternLength;
+    }
+
     // Frequency Management
     public void increaseFreqByOne() {
         setFrequency(getFrequency() + 1);
@@ -236,6 +455,30 @@ public class ContextLeaf extends HNode implements Serializable {
         return freqMap.size();
     }
 
+    public long getInsertedPatterns() {
+        return insertedPatterns;
+    }
+
+    public long getEvictedPatterns() {
+        return evictedPatterns;
+    }
+
+    /**
+     * Frequency-weighted average length (in bits) of the pattern codes in this context.
+     * Only meaningful after {@link #generateCode()}; returns 0 for an empty sub-tree.
+     */
+    public double getAverageCodeLength() {
+        long totalBits = 0;
+        long totalFrequency = 0;
+        for(Map.Entry<ByteArrayWrapper, Integer> entry : freqMap.entrySet()){
+            String subCode = subDictionary.get(entry.getKey());
+            if(subCode == null) continue;
+            totalBits += (long) subCode.length() * entry.getValue();
+            totalFrequency += entry.getValue();
+        }
+        return totalFrequency == 0 ? 0 : (double) totalBits / totalFrequency;
+    }
+
     @Override
     public boolean isContextLeaf(){
         return true;
@@ -0,0 +1,268 @@
+package com.pwha.service;
+
+import com.pwha.core.HuffmanStructure;
+import com.pwha.engine.Encoder;
+import com.pwha.io.ByteReader;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.TemplateTable;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Automatic Parameter Tuning by trial compression on samples.
+ * <p>
+ * Choosing the pattern limits per dataset is guesswork, so the tuner measures instead:
+ * 1. **Sampling:** A few blocks are read from evenly spaced positions of the input.
+ * 2. **Trial Runs:** Every candidate setting analyzes the samples, builds its trees and
+ *    estimates the encoded size from the code lengths ({@link Encoder#estimateBlockBits}).
+ *    Nothing is written; candidates run in parallel.
+ * 3. **Selection:** The estimates are scaled to the full input. Among the candidates whose
+ *    predicted compression time fits the time budget, the smallest output wins
+ *    (ties go to the faster one). If none fits, the fastest candidate is chosen.
+ * <p>
+ * The tuning itself may use at most a tenth of the budget; trials still running after that are
+ * cancelled and ignored. A cancelled trial stops at its next sample, so it does not keep a pool
+ * thread busy after {@code tune()} returned.
+ */
+public class AutoTuner {
+
+    /**
+     * Estimate for one candidate setting.
+     *
+     * @param options         The candidate.
+     * @param estimatedBytes  Predicted size of the compressed file (header included).
+     * @param throughputMBps  Measured analysis + encoding speed on the samples.
+     * @param predictedNanos  Predicted compression time of the whole input.
+     */
+    public record Candidate(CompressionOptions options, long estimatedBytes, double throughputMBps, long predictedNanos) {}
+
+    /**
+     * Outcome of a tuning run.
+     *
+     * @param best         The chosen candidate.
+     * @param candidates   Every candidate that finished, in grid order.
+     * @param sampleBytes  Total size of the samples.
+     * @param elapsedNanos Time spent tuning.
+     */
+    public record Result(Candidate best, List<Candidate> candidates, long sampleBytes, long elapsedNanos) {}
+
+    // Fraction of the time budget the tuner itself may spend.
+    private static final int TUNING_BUDGET_DIVISOR = 10;
+
+    // Lower bound for the tuning time, so tiny budgets still measure something.
+    private static final long MIN_TUNING_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final int threads;
+    private final int sampleCount;
+    private final int sampleSize;
+    private final List<CompressionOptions> grid;
+
+    public AutoTuner() {
+        this(Runtime.getRuntime().availableProcessors(), 8, 64 * 1024, defaultGrid());
+    }
+
+    /**
+     * @param threads     Candidates evaluated in parallel.
+     * @param sampleCount Number of blocks sampled from the input.
+     * @param sampleSize  Size of each sampled block.
+     * @param grid        Settings to try.
+     */
+    public AutoTuner(int threads, int sampleCount, int sampleSize, List<CompressionOptions> grid) {
+        if(threads <= 0 || sampleCount <= 0 || sampleSize <= 0 || grid.isEmpty()) {
+            throw new IllegalArgumentException("Threads, samples and grid must be non-empty/positive");
+        }
+        this.threads = threads;
+        this.sampleCount = sampleCount;
+        this.sampleSize = sampleSize;
+        this.grid = List.copyOf(grid);
+    }
+
+    /**
+     * The default search space: the three levels plus a few pattern length/amount combinations,
+     * and order-2 contexts at the default level.
+     */
+    public static List<CompressionOptions> defaultGrid() {
+        List<CompressionOptions> grid = new ArrayList<>();
+        grid.add(CompressionOptions.of(CompressionOptions.Level.FAST));
+        for(int length : new int[]{4, 6, 8}) {
+            for(int amount : new int[]{1000, 2500}) {
+                grid.add(CompressionOptions.defaults().withMaxPatternLength(length).withMaxPatternAmount(amount));
+            }
+        }
+        grid.add(CompressionOptions.of(CompressionOptions.Level.MAX).withMaxPatternLength(8).withMaxPatternAmount(4000));
+        grid.add(CompressionOptions.of(CompressionOptions.Level.MAX));
+        grid.add(CompressionOptions.defaults().withContextOrder(2));
+        return grid;
+    }
+
+    /**
+     * Tunes for a file on disk. Only the sampled blocks are read.
+     *
+     * @param input  The file that will be compressed.
+     * @param budget Wall-clock budget for compressing the whole file, or null for no limit.
+     */
+    public Result tune(Path input, Duration budget) throws IOException {
+        try(RandomAccessFile file = new RandomAccessFile(input.toFile(), "r")) {
+            long length = file.length();
+            List<byte[]> samples = new ArrayList<>();
+            for(long offset : sampleOffsets(length)) {
+                byte[] sample = new byte[(int) Math.min(sampleSize, length - offset)];
+                file.seek(offset);
+                file.readFully(sample);
+                samples.add(sample);
+            }
+            return tune(samples, length, budget);
+        }
+    }
+
+    /**
+     * Tunes for an in-memory input.
+     */
+    public Result tune(byte[] input, Duration budget) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        for(long offset : sampleOffsets(input.length)) {
+            int from = (int) offset;
+            samples.add(Arrays.copyOfRange(input, from, (int) Math.min(input.length, from + (long) sampleSize)));
+        }
+        return tune(samples, input.length, budget);
+    }
+
+    // Evenly spaced, non-overlapping sample positions. Small inputs are sampled whole.
+    private long[] sampleOffsets(long length) {
+        if(length == 0) return new long[0];
+        long blocks = (length + sampleSize - 1) / sampleSize;
+        if(blocks <= sampleCount) {
+            long[] offsets = new long[(int) blocks];
+            for(int i = 0; i < offsets.length; i++) offsets[i] = (long) i * sampleSize;
+            return offsets;
+        }
+
+        long[] offsets = new long[sampleCount];
+        long stride = sampleCount == 1 ? 0 : (length - sampleSize) / (sampleCount - 1);
+        for(int i = 0; i < sampleCount; i++) offsets[i] = Math.min(length - sampleSize, i * stride);
+        return offsets;
+    }
+
+    private Result tune(List<byte[]> samples, long totalSize, Duration budget) throws IOException {
+        long start = System.nanoTime();
+        long budgetNanos = budget == null ? Long.MAX_VALUE : Math.max(1, budget.toNanos());
+        long tuningNanos = budget == null ? Long.MAX_VALUE : Math.max(MIN_TUNING_NANOS, budgetNanos / TUNING_BUDGET_DIVISOR);
+        long sampleBytes = samples.stream().mapToLong(s -> s.length).sum();
+
+        List<Candidate> candidates = new ArrayList<>();
+        if(sampleBytes == 0) {
+            Candidate only = new Candidate(CompressionOptions.defaults(), 0, 0, 0);
+            return new Result(only, List.of(only), 0, System.nanoTime() - start);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, grid.size()));
+        try {
+            List<Future<Candidate>> trials = new ArrayList<>();
+            for(CompressionOptions options : grid) {
+                trials.add(pool.submit(() -> trial(options, samples, sampleBytes, totalSize)));
+            }
+
+            for(Future<Candidate> trial : trials) {
+                long remaining = tuningNanos == Long.MAX_VALUE ? Long.MAX_VALUE : tuningNanos - (System.nanoTime() - start);
+                try {
+                    candidates.add(remaining == Long.MAX_VALUE ? trial.get() : trial.get(Math.max(0, remaining), TimeUnit.NANOSECONDS));
+                } catch(TimeoutException e) {
+                    trial.cancel(true); // Over the tuning budget: this candidate is not considered.
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Auto-tuning interrupted", e);
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof IOException io) throw io;
+                    throw new IOException("Auto-tuning trial failed", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Candidate best = choose(candidates, budgetNanos);
+        return new Result(best, candidates, sampleBytes, System.nanoTime() - start);
+    }
+
+    // Smallest predicted output within the budget; otherwise the fastest candidate.
+    private static Candidate choose(List<Candidate> candidates, long budgetNanos) {
+        if(candidates.isEmpty()) {
+            // Nothing finished in time: fall back to the fast level, which is the safest bet.
+            CompressionOptions fast = CompressionOptions.of(CompressionOptions.Level.FAST);
+            return new Candidate(fast, -1, 0, -1);
+        }
+        return candidates.stream()
+                .filter(c -> c.predictedNanos() <= budgetNanos)
+                .min(Comparator.comparingLong(Candidate::estimatedBytes).thenComparingLong(Candidate::predictedNanos))
+                .orElseGet(() -> candidates.stream().min(Comparator.comparingLong(Candidate::predictedNanos)).orElseThrow());
+    }
+
+    /**
+     * One trial: the regular Analysis -> Tree Building pipeline over the samples, followed by a
+     * size estimate of every sample. Each sample is analyzed as its own block, exactly as the
+     * Encoder would cut it.
+     */
+    private Candidate trial(CompressionOptions options, List<byte[]> samples, long sampleBytes, long totalSize) throws IOException {
+        long start = System.nanoTime();
+
+        FrequencyService frequencyService = new FrequencyService(options);
+        for(byte[] sample : samples) {
+            checkCancelled();
+            new ByteReader(frequencyService, new ByteArrayInputStream(sample), sample.length).collectWords();
+        }
+        frequencyService.pruneContexts();
+        if(options.phrases()) frequencyService.selectPhrases();
+        TemplateTable templates = frequencyService.selectTemplates();
+
+        HashMap<Integer, ContextLeaf> dictionary = frequencyService.getFrequencyMap();
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+
+        Encoder encoder = new Encoder(root, dictionary, templates, sampleSize, 1, options, MetricsListener.NOOP);
+        long payloadBytes = 0;
+        for(byte[] sample : samples) {
+            checkCancelled();
+            // A block that would not shrink is stored raw by the Encoder.
+            long bytes = (encoder.estimateBlockBits(sample, sample.length) + 7) / 8;
+            payloadBytes += Math.min(bytes, sample.length);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Scale the payload to the full input. The dictionary is not scaled: its size is bounded by
+        // the pattern limits and is mostly saturated by the samples already.
+        double scale = (double) totalSize / sampleBytes;
+        long blocks = (totalSize + sampleSize - 1) / sampleSize;
+        long estimated = encoder.headerBytes() + (long) Math.ceil(payloadBytes * scale) + 9 * blocks + 4;
+
+        // Compression reads the input twice (analysis + encoding); the trial did both on the samples.
+        long predicted = (long) (elapsed * scale);
+        double throughput = (sampleBytes / 1048576.0) / (elapsed / 1e9);
+        return new Candidate(options, estimated, throughput, predicted);
+    }
+
+    // Trials are cancelled by interrupting them (Future#cancel) once the tuning budget is spent.
+    private static void checkCancelled() throws InterruptedIOException {
+        if(Thread.interrupted()) {
+            throw new InterruptedIOException("Auto-tuning trial cancelled");
+        }
+    }
+}
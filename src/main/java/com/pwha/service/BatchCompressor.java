@@ -0,0 +1,285 @@
+package com.pwha.service;
+
+import com.pwha.metrics.MetricsListener;
+import com.pwha.model.CompressionOptions;
+import com.pwha.util.Constant;
+import com.pwha.util.LatencyRecorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Batch Compression Service for many small files.
+ * <p>
+ * Each job is split into three stages that run on different executors:
+ * 1. **Read (I/O):** The input file is loaded into memory on a virtual thread.
+ * 2. **Encode (CPU):** Analysis, tree building and encoding run in memory on a bounded
+ *    platform thread pool, reusing the regular {@link CompressionService} pipeline.
+ * 3. **Write (I/O):** The result is written on a virtual thread.
+ * <p>
+ * Backpressure: at most {@code maxPendingJobs} jobs can be in flight. {@link #submit(Path, Path)}
+ * blocks the producer once this limit is reached, so memory stays bounded no matter how fast
+ * jobs are submitted.
+ */
+public class BatchCompressor implements AutoCloseable {
+
+    /**
+     * A single unit of work.
+     *
+     * @param input  The file to compress (or decompress).
+     * @param output Where the result is written.
+     */
+    public record CompressionJob(Path input, Path output) {}
+
+    /**
+     * Outcome of a finished job.
+     *
+     * @param input        The source file.
+     * @param output       The written file.
+     * @param inputBytes   Size of the source.
+     * @param outputBytes  Size of the result.
+     * @param latencyNanos Time from submission to completion, including queueing.
+     */
+    public record JobResult(Path input, Path output, long inputBytes, long outputBytes, long latencyNanos) {}
+
+    /**
+     * Point-in-time view of the service, for monitoring.
+     *
+     * @param queueDepth      Jobs accepted but not yet finished.
+     * @param pendingCpuTasks Jobs read from disk and waiting for a CPU worker.
+     * @param completed       Successfully finished jobs.
+     * @param failed          Jobs that completed exceptionally.
+     * @param p50Nanos        Median job latency.
+     * @param p95Nanos        95th percentile job latency.
+     * @param p99Nanos        99th percentile job latency.
+     */
+    public record Stats(int queueDepth, int pendingCpuTasks, long completed, long failed,
+                        long p50Nanos, long p95Nanos, long p99Nanos) {}
+
+    // Virtual threads for blocking file I/O; cheap enough to use one per stage.
+    private final ExecutorService ioExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Bounded platform pool for the CPU-bound encoding work.
+    private final ThreadPoolExecutor cpuExecutor;
+
+    // Limits the number of in-flight jobs (Backpressure).
+    private final Semaphore permits;
+    private final int maxPendingJobs;
+
+    // The in-memory pipeline. Single-threaded per job: the parallelism comes from the pool.
+    private final CompressionService service;
+
+    // Monitoring
+    private final LatencyRecorder latencies = new LatencyRecorder(4096);
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public BatchCompressor() {
+        this(Runtime.getRuntime().availableProcessors(), 256, Constant.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param cpuThreads     Number of platform threads doing the encoding.
+     * @param maxPendingJobs Maximum number of jobs in flight before {@code submit} blocks.
+     * @param blockSize      Block size of the produced files.
+     */
+    public BatchCompressor(int cpuThreads, int maxPendingJobs, int blockSize) {
+        this(cpuThreads, maxPendingJobs, blockSize, CompressionOptions.defaults(), MetricsListener.NOOP);
+    }
+
+    /**
+     * Same as above, compressing every job with {@code options} and reporting the pipeline
+     * metrics of every job to {@code metrics}. The listener is shared by all workers and must be thread-safe.
+     */
+    public BatchCompressor(int cpuThreads, int maxPendingJobs, int blockSize, CompressionOptions options,
+                           MetricsListener metrics) {
+        this(cpuThreads, maxPendingJobs, blockSize, options, true, metrics);
+    }
+
+    /**
+     * Same as above; with {@code preflight} false every job runs the full analysis with {@code options},
+     * whatever the entropy preflight would have decided (see {@link CompressionService}).
+     */
+    public BatchCompressor(int cpuThreads, int maxPendingJobs, int blockSize, CompressionOptions options,
+                           boolean preflight, MetricsListener metrics) {
+        if(cpuThreads <= 0 || maxPendingJobs <= 0) {
+            throw new IllegalArgumentException("Thread count and queue capacity must be positive");
+        }
+        this.cpuExecutor = new ThreadPoolExecutor(cpuThreads, cpuThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        this.permits = new Semaphore(maxPendingJobs);
+        this.maxPendingJobs = maxPendingJobs;
+        this.service = new CompressionService(blockSize, 1, options, preflight, null, metrics);
+    }
+
+    /**
+     * Submits a compression job. Blocks while {@code maxPendingJobs} jobs are in flight.
+     *
+     * @return A future completed with the job result, or exceptionally if the job failed.
+     */
+    public CompletableFuture<JobResult> submit(Path input, Path output) throws InterruptedException {
+        return enqueue(input, output, true);
+    }
+
+    /**
+     * Submits a decompression job. Blocks while {@code maxPendingJobs} jobs are in flight.
+     */
+    public CompletableFuture<JobResult> submitDecompression(Path input, Path output) throws InterruptedException {
+        return enqueue(input, output, false);
+    }
+
+    /**
+     * Submits every job of the stream as a compression job, in order, honoring backpressure.
+     *
+     * @return One future per job, in stream order.
+     */
+    public List<CompletableFuture<JobResult>> submitAll(Stream<CompressionJob> jobs) {
+        return jobs.map(job -> {
+            try {
+                return submit(job.input(), job.output());
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }).toList();
+    }
+
+    private CompletableFuture<JobResult> enqueue(Path input, Path output, boolean compress) throws InterruptedException {
+        permits.acquire();
+        long submitted = System.nanoTime();
+
+        CompletableFuture<JobResult> job;
+        try {
+            job = CompletableFuture
+                    // Stage 1: Read the whole input on a virtual thread.
+                    .supplyAsync(() -> readAll(input), ioExecutor)
+                    // Stage 2: Run the pipeline in memory on the bounded CPU pool.
+                    .thenApplyAsync(data -> new Processed(data.length, compress ? encode(data) : decode(data)), cpuExecutor)
+                    // Stage 3: Write the result on a virtual thread.
+                    .thenApplyAsync(processed -> {
+                        writeAll(output, processed.result());
+                        return new JobResult(input, output, processed.inputBytes(), processed.result().length,
+                                System.nanoTime() - submitted);
+                    }, ioExecutor);
+        } catch(RuntimeException e) {
+            // Rejected (service closed): give the permit back.
+            permits.release();
+            throw e;
+        }
+
+        return job.whenComplete((result, error) -> {
+            permits.release();
+            latencies.record(System.nanoTime() - submitted);
+            if(error == null) {
+                completed.incrementAndGet();
+            } else {
+                failed.incrementAndGet();
+            }
+        });
+    }
+
+    // Hand-off between the CPU stage and the write stage.
+    private record Processed(long inputBytes, byte[] result) {}
+
+    private byte[] encode(byte[] data) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            service.compress(data, out);
+            return out.toByteArray();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] decode(byte[] data) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length * 2));
+            service.decompress(data, out);
+            return out.toByteArray();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        } catch(ClassNotFoundException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static byte[] readAll(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeAll(Path path, byte[] data) {
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if(parent != null) {
+                Files.createDirectories(parent);
+            }
+            Files.write(path, data);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------- Monitoring
+
+    /**
+     * Number of jobs accepted but not yet completed (bounded by {@code maxPendingJobs}).
+     */
+    public int getQueueDepth() {
+        return maxPendingJobs - permits.availablePermits();
+    }
+
+    /**
+     * Returns the given latency percentile over the most recent jobs, in nanoseconds.
+     */
+    public long getLatencyPercentile(double percentile) {
+        return latencies.percentile(percentile);
+    }
+
+    public Stats getStats() {
+        return new Stats(getQueueDepth(), cpuExecutor.getQueue().size(), completed.get(), failed.get(),
+                latencies.percentile(50), latencies.percentile(95), latencies.percentile(99));
+    }
+
+    /**
+     * Stops accepting jobs and waits for the in-flight ones to finish.
+     * If the calling thread is interrupted while waiting, the remaining jobs are cancelled and the
+     * interrupt status is restored instead of thrown, so the service can be used in try-with-resources.
+     */
+    @Override
+    public void close() {
+        try {
+            // Wait until every permit is back, i.e. every in-flight job has completed.
+            permits.acquire(maxPendingJobs);
+            try {
+                cpuExecutor.shutdown();
+                ioExecutor.shutdown();
+                cpuExecutor.awaitTermination(1, TimeUnit.MINUTES);
+                ioExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } finally {
+                permits.release(maxPendingJobs);
+            }
+        } catch(InterruptedException e) {
+            cpuExecutor.shutdownNow();
+            ioExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package com.pwha.service;
+
+import com.pwha.core.HuffmanStructure;
+import com.pwha.engine.Decoder;
+import com.pwha.engine.Encoder;
+import com.pwha.io.ByteReader;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.metrics.Stage;
+import com.pwha.metrics.StageTimer;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.CompressionResult;
+import com.pwha.model.PatternArena;
+import com.pwha.model.TemplateTable;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.util.Constant;
+import com.pwha.util.SeparatorSet;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Headless Compression Pipeline.
+ * <p>
+ * Runs the same stages as the GUI without touching Swing/AWT, so it can be used from the
+ * command line, batch jobs or servers:
+ * 0. **Preflight:** Samples the input ({@link EntropyPreflight}). Incompressible inputs skip
+ *    straight to encoding as stored blocks; inputs without word structure use single-byte Huffman.
+ *    Jobs without explicit separators get theirs chosen here.
+ * 1. **Analysis:** Pattern mining over the input ({@link ByteReader} + {@link FrequencyService}).
+ * 2. **Tree Building:** Super-Tree, Sub-Trees and the code dictionary ({@link HuffmanStructure}).
+ * 3. **Encoding:** Block-wise encoding, optionally on several threads ({@link Encoder}).
+ * <p>
+ * Every stage reports its wall/CPU time and byte counts to the configured {@link MetricsListener}.
+ */
+public class CompressionService {
+
+    // Number of input bytes per independently encoded block.
+    private final int blockSize;
+
+    // Worker threads used for block encoding/decoding of a single file.
+    private final int threads;
+
+    // Optional sink for stage messages (GUI log area, console...). May be null.
+    private final Consumer<String> logger;
+
+    // Options used when a call does not pass its own.
+    private final CompressionOptions options;
+
+    // Receives per-stage timings and counters. MetricsListener.NOOP disables collection.
+    private final MetricsListener metrics;
+
+    // Whether the entropy preflight may override the options (see EntropyPreflight).
+    private final boolean preflight;
+
+    public CompressionService() {
+        this(Constant.DEFAULT_BLOCK_SIZE, 1, null);
+    }
+
+    public CompressionService(int blockSize, int threads, Consumer<String> logger) {
+        this(blockSize, threads, logger, MetricsListener.NOOP);
+    }
+
+    public CompressionService(int blockSize, int threads, Consumer<String> logger, MetricsListener metrics) {
+        this(blockSize, threads, CompressionOptions.defaults(), logger, metrics);
+    }
+
+    public CompressionService(int blockSize, int threads, CompressionOptions options,
+                              Consumer<String> logger, MetricsListener metrics) {
+        this(blockSize, threads, options, true, logger, metrics);
+    }
+
+    public CompressionService(int blockSize, int threads, CompressionOptions options, boolean preflight,
+                              Consumer<String> logger, MetricsListener metrics) {
+        this.blockSize = blockSize;
+        this.threads = threads;
+        this.options = options;
+        this.preflight = preflight;
+        this.logger = logger;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Compresses a file: Analysis -> Tree Building -> Encoding.
+     * Progress is reported as 0-50% during analysis and 50-100% during encoding.
+     *
+     * @param inputFile  Path to the source file.
+     * @param outputFile Path to the destination .pwha file.
+     * @param onProgress Progress callback in percent, may be null.
+     * @return Statistics of the run, including the Super-Tree root.
+     */
+    public CompressionResult compress(String inputFile, String outputFile, Consumer<Double> onProgress) throws IOException {
+        return compress(inputFile, outputFile, options, onProgress);
+    }
+
+    /**
+     * Compresses a file with options for this call only.
+     */
+    public CompressionResult compress(String inputFile, String outputFile, CompressionOptions options,
+                                      Consumer<Double> onProgress) throws IOException {
+        long totalSize = new File(inputFile).length();
+
+        try(FileOutputStream fos = new FileOutputStream(outputFile);
+            BufferedOutputStream bos = new BufferedOutputStream(fos)) {
+
+            return compress(() -> new BufferedInputStream(new FileInputStream(inputFile)), totalSize, bos,
+                    options, onProgress);
+        }
+    }
+
+    /**
+     * Compresses an in-memory input into the given stream (which is flushed, not closed).
+     * Used for small payloads, where opening the input twice from disk would dominate.
+     */
+    public CompressionResult compress(byte[] input, OutputStream output) throws IOException {
+        return compress(input, output, options);
+    }
+
+    public CompressionResult compress(byte[] input, OutputStream output, CompressionOptions options) throws IOException {
+        return compress(() -> new ByteArrayInputStream(input), input.length, output, options, null);
+    }
+
+    /**
+     * The pipeline itself. The source is opened twice: once for analysis, once for encoding
+     * (plus a sampled read for the preflight).
+     */
+    private CompressionResult compress(InputSource source, long totalSize, OutputStream output,
+                                       CompressionOptions options, Consumer<Double> onProgress) throws IOException {
+        long startTime = System.nanoTime();
+
+        // Phase 0: Preflight
+        if(preflight) {
+            EntropyPreflight.Result verdict = runPreflight(source, totalSize, options.separators());
+            options = options.withSeparators(verdict.separators()); // Unchanged unless chosen automatically.
+            if(verdict.decision() == EntropyPreflight.Decision.STORED) {
+                log("Preflight : input looks incompressible, analysis skipped.");
+                return store(source, totalSize, output, options, onProgress, startTime);
+            }
+            if(verdict.decision() == EntropyPreflight.Decision.SINGLE_BYTE && options.maxPatternLength() > 1) {
+                // Only the patterns go: the coder, contexts and modes stay as the caller asked.
+                options = options.withMaxPatternLength(1);
+            }
+        } else if(options.autoSeparators()) {
+            options = options.withSeparators(options.separatorSet()); // Nothing sampled: the tokenizer's own.
+        }
+
+        // Phase 1: Analysis (Pattern Mining)
+        log("Stage 1: File Analyzing...");
+        log(" - Level : " + options);
+        StageTimer timer = startStage();
+        FrequencyService frequencyService = new FrequencyService(options);
+        try (InputStream in = source.open()) {
+            ByteReader reader = new ByteReader(frequencyService, in, blockSize);
+            reader.collectWords(totalSize, progress -> report(onProgress, progress * 0.5));
+        }
+        int prunedContexts = frequencyService.pruneContexts();
+        int phrases = options.phrases() ? frequencyService.selectPhrases() : 0;
+        TemplateTable templates = frequencyService.selectTemplates();
+        endStage(Stage.ANALYSIS, timer, totalSize, 0);
+
+        // Log statistics
+        int totalContexts = frequencyService.getFrequencyMap().size();
+        long totalPatterns = 0;
+        for(ContextLeaf leaf : frequencyService.getFrequencyMap().values()) {
+            totalPatterns += leaf.getPatternCount();
+        }
+        log("Analysis complete.");
+        log(" - Total contexts : " + totalContexts);
+        log(" - Total patterns : " + totalPatterns);
+        if(options.contextOrder() == 2) {
+            log(" - Order-2 contexts : " + frequencyService.getPairContextCount() + " (" + prunedContexts + " rare pairs pruned)");
+        }
+        if(options.phrases()) {
+            log(" - Phrases : " + phrases);
+        }
+        if(options.templates()) {
+            log(" - Log templates : " + (templates != null ? templates.size()
+                    : frequencyService.isMiningTemplates() ? "none found" : "off (separators lack space or newline)"));
+        }
+
+        // Phase 2: Huffman Tree Construction
+        log("Stage 2: Building Huffman Tree...");
+        timer = startStage();
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(frequencyService.getFrequencyMap()));
+        endStage(Stage.TREE_BUILD, timer, 0, 0);
+
+        timer = startStage();
+        HuffmanStructure.buildDictionary(root, "", frequencyService.getFrequencyMap());
+        endStage(Stage.DICTIONARY_BUILD, timer, 0, 0);
+        reportContexts(frequencyService);
+
+        // Phase 3: Encoding
+        log("Stage 3: Compressing...");
+        CountingOutputStream counter = new CountingOutputStream(output);
+        try (PatternArena arena = options.offHeap() ? compileArena(frequencyService.getFrequencyMap()) : null;
+             InputStream in = source.open()) {
+            Encoder encoder = new Encoder(root, frequencyService.getFrequencyMap(), templates, arena, blockSize, threads,
+                    options, metrics);
+            encoder.compress(in, counter, totalSize, progress -> report(onProgress, 50 + (progress * 0.5)));
+        }
+        report(onProgress, 100);
+
+        return new CompressionResult(totalSize, counter.count, totalContexts, totalPatterns,
+                System.nanoTime() - startTime, root);
+    }
+
+    /**
+     * Moves the pattern codes of the dictionary into a {@link PatternArena} and drops them from the
+     * contexts, so the heap no longer grows with the dictionary while encoding. The caller closes it.
+     * Returns null (the codes stay on the heap) if some code does not fit the arena.
+     */
+    private PatternArena compileArena(Map<Integer, ContextLeaf> dictionary) {
+        PatternArena arena;
+        try {
+            arena = PatternArena.compile(dictionary);
+        } catch(IllegalArgumentException e) {
+            log(" - Off-heap code table : unavailable (" + e.getMessage() + "), codes stay on the heap");
+            return null;
+        }
+        for(ContextLeaf leaf : dictionary.values()) {
+            leaf.releaseSubDictionary();
+        }
+        log(" - Off-heap code table : " + arena.size() + " patterns, " + arena.byteSize() / 1024 + " KB");
+        return arena;
+    }
+
+    // Samples the input and reports the verdict to the log and the metrics. Null separators are chosen from the samples.
+    private EntropyPreflight.Result runPreflight(InputSource source, long totalSize, SeparatorSet separators) throws IOException {
+        StageTimer timer = startStage();
+        EntropyPreflight.Result verdict;
+        try (InputStream in = source.open()) {
+            verdict = new EntropyPreflight().run(in, totalSize, separators);
+        }
+        endStage(Stage.PREFLIGHT, timer, verdict.sampleBytes(), 0);
+
+        log("Preflight : " + verdict);
+        if(metrics.isEnabled()) {
+            metrics.preflightCompleted(verdict.decision().name().toLowerCase(), verdict.entropy(), verdict.separatorDensity());
+        }
+        return verdict;
+    }
+
+    // Single pass for incompressible inputs: no dictionary, every block is stored raw.
+    private CompressionResult store(InputSource source, long totalSize, OutputStream output,
+                                    CompressionOptions options, Consumer<Double> onProgress,
+                                    long startTime) throws IOException {
+        log("Stage 3: Storing...");
+        Encoder encoder = new Encoder(null, new HashMap<>(), blockSize, threads, options, metrics);
+        CountingOutputStream counter = new CountingOutputStream(output);
+        try (InputStream in = source.open()) {
+            encoder.compress(in, counter, totalSize, progress -> report(onProgress, progress));
+        }
+        report(onProgress, 100);
+
+        return new CompressionResult(totalSize, counter.count, 0, 0, System.nanoTime() - startTime, null);
+    }
+
+    /**
+     * Decompresses a .pwha file.
+     *
+     * @param inputFile  Path to the compressed file.
+     * @param outputFile Path where the restored content is written.
+     * @param onProgress Progress callback in percent, may be null.
+     */
+    public void decompress(String inputFile, String outputFile, Consumer<Double> onProgress) throws IOException, ClassNotFoundException {
+        Decoder decoder = new Decoder(true, threads, metrics);
+        decoder.decompress(inputFile, outputFile, new File(inputFile).length(), onProgress);
+        report(onProgress, 100);
+    }
+
+    /**
+     * Decompresses an in-memory .pwha payload into the given stream (which is flushed, not closed).
+     */
+    public void decompress(byte[] input, OutputStream output) throws IOException, ClassNotFoundException {
+        new Decoder(true, threads, metrics).decompress(new ByteArrayInputStream(input), output, input.length, null);
+    }
+
+    // Starts timing a stage, or returns null when metrics are disabled.
+    private StageTimer startStage() {
+        return metrics.isEnabled() ? StageTimer.start() : null;
+    }
+
+    private void endStage(Stage stage, StageTimer timer, long bytesIn, long bytesOut) {
+        if(timer != null) {
+            metrics.stageCompleted(stage, timer.wallNanos(), timer.cpuNanos(), bytesIn, bytesOut);
+        }
+    }
+
+    // Reports the eviction counters and code lengths of every context once the codes exist.
+    private void reportContexts(FrequencyService frequencyService) {
+        if(!metrics.isEnabled()) return;
+        for(ContextLeaf leaf : frequencyService.getFrequencyMap().values()) {
+            if(leaf.isPhrase()) continue; // No sub-tree to report.
+            metrics.contextBuilt(leaf.getSymbol(), leaf.getInsertedPatterns(), leaf.getEvictedPatterns(),
+                    leaf.getPatternCount(), leaf.getAverageCodeLength());
+        }
+    }
+
+    private void log(String message) {
+        if(logger != null) {
+            logger.accept(message);
+        }
+    }
+
+    private void report(Consumer<Double> onProgress, double percent) {
+        if(onProgress != null) {
+            onProgress.accept(percent);
+        }
+    }
+
+    // Re-openable input: the pipeline reads its source once per pass.
+    @FunctionalInterface
+    private interface InputSource {
+        InputStream open() throws IOException;
+    }
+
+    // Counts the bytes written, so the compressed size is known without touching the file system.
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.pwha.service;
+
+import com.pwha.util.Constant;
+import com.pwha.util.EntropyUtils;
+import com.pwha.util.SeparatorSet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Cheap Preflight run before the two-pass pipeline.
+ * <p>
+ * Analysis reads the whole input and mines every pattern of every word, which is wasted work
+ * when the data has no word structure. The preflight reads a few evenly spaced samples instead
+ * and looks at two statistics:
+ * 1. **Order-0 Entropy:** Bits per byte of an ideal single-byte code. Close to 8 means the data
+ *    is already compressed or random: nothing will shrink it, the input is stored.
+ * 2. **Separator Density:** Fraction of separator bytes. Without separators there are no words,
+ *    only a few huge tokens whose patterns rarely repeat, so single-byte Huffman is used.
+ * <p>
+ * Otherwise (text, logs, source code...) the pattern-aware pipeline runs as configured.
+ * <p>
+ * Every sample is judged on its own, and the whole input only skips the patterns (or the analysis)
+ * when all of them agree: a mixed input (text followed by a compressed blob) runs the full pipeline,
+ * and its incompressible blocks are still stored one by one by the Encoder.
+ * <p>
+ * When the job leaves its separators open, the preflight also picks them from the same histogram:
+ * the most frequent ASCII whitespace and punctuation bytes (at most {@link SeparatorSet#SWAR_LIMIT},
+ * so tokenization keeps its fast scan). CSV gets ',' and logs get '=' or '[', which keeps tokens short.
+ */
+public class EntropyPreflight {
+
+    // Ordered from the least to the most drastic: the input gets the least drastic verdict of its samples.
+    public enum Decision {
+        // Full pattern-aware pipeline with the requested options.
+        PATTERN,
+        // Single-byte Huffman only (the FAST level).
+        SINGLE_BYTE,
+        // No analysis at all: every block is written raw.
+        STORED
+    }
+
+    /**
+     * Outcome of a preflight.
+     *
+     * @param decision         What the pipeline should do.
+     * @param entropy          Order-0 entropy of the samples in bits per byte.
+     * @param separatorDensity Fraction of sampled bytes that are separators (0..1).
+     * @param sampleBytes      Number of bytes inspected.
+     * @param separators       The separators measured: the job's own, or the automatically chosen ones.
+     */
+    public record Result(Decision decision, double entropy, double separatorDensity, long sampleBytes,
+                         SeparatorSet separators) {
+
+        // Predicted payload ratio of an ideal single-byte code (a lower bound for SINGLE_BYTE).
+        public double orderZeroRatio() {
+            return entropy / 8.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (entropy %.2f bits/byte, separators %s %.1f%%, order-0 bound %.1f%%)",
+                    decision.name().toLowerCase(), entropy, separators, separatorDensity * 100, orderZeroRatio() * 100);
+        }
+    }
+
+    // Nearly random data below the stored threshold: a single-byte code still helps, patterns do not.
+    private static final double SINGLE_BYTE_ENTROPY_THRESHOLD = 7.0;
+
+    // Fewer separators than this means words of ~100 bytes and more.
+    private static final double MIN_SEPARATOR_DENSITY = 0.01;
+
+    // Automatic selection: a candidate byte must make up at least this share of the samples.
+    private static final double MIN_SEPARATOR_SHARE = 0.002;
+
+    private final int sampleCount;
+    private final int sampleSize;
+
+    public EntropyPreflight() {
+        this(8, 64 * 1024);
+    }
+
+    /**
+     * @param sampleCount Number of samples taken from the input.
+     * @param sampleSize  Size of each sample.
+     */
+    public EntropyPreflight(int sampleCount, int sampleSize) {
+        if(sampleCount <= 0 || sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample count and size must be positive");
+        }
+        this.sampleCount = sampleCount;
+        this.sampleSize = sampleSize;
+    }
+
+    // Samples the stream and decides, measuring the default separators.
+    public Result run(InputStream in, long totalSize) throws IOException {
+        return run(in, totalSize, SeparatorSet.DEFAULT);
+    }
+
+    /**
+     * Samples the stream and decides. Skipping between samples is a seek for file streams,
+     * so only {@code sampleCount * sampleSize} bytes are read. The stream is not closed.
+     *
+     * @param in         The input, positioned at its start.
+     * @param totalSize  Size of the input.
+     * @param separators The job's separators, or null to choose them from the samples.
+     */
+    public Result run(InputStream in, long totalSize, SeparatorSet separators) throws IOException {
+        int[] histogram = new int[256];
+        List<int[]> sampleHistograms = new ArrayList<>();
+        byte[] buffer = new byte[sampleSize];
+        long position = 0;
+        long sampled = 0;
+
+        long stride = totalSize <= (long) sampleCount * sampleSize ? sampleSize : totalSize / sampleCount;
+        for(long offset = 0; offset < totalSize && sampled < (long) sampleCount * sampleSize; offset += stride) {
+            in.skipNBytes(offset - position);
+            int length = in.readNBytes(buffer, 0, (int) Math.min(sampleSize, totalSize - offset));
+            int[] sampleHistogram = new int[256];
+            for(int i = 0; i < length; i++) {
+                sampleHistogram[buffer[i] & 0xFF]++;
+            }
+            for(int value = 0; value < 256; value++) {
+                histogram[value] += sampleHistogram[value];
+            }
+            if(length > 0) sampleHistograms.add(sampleHistogram);
+            position = offset + length;
+            sampled += length;
+            if(length < sampleSize) break; // End of stream.
+        }
+
+        if(separators == null) {
+            separators = chooseSeparators(histogram, sampled);
+        }
+        return decide(histogram, sampled, sampleHistograms, separators);
+    }
+
+    // The least drastic verdict of the samples; the reported statistics are those of all samples together.
+    private static Result decide(int[] histogram, long sampled, List<int[]> sampleHistograms, SeparatorSet separators) {
+        if(sampled == 0) {
+            return new Result(Decision.PATTERN, 0, 0, 0, separators);
+        }
+
+        Decision decision = Decision.STORED;
+        for(int[] sampleHistogram : sampleHistograms) {
+            Decision sampleDecision = classify(sampleHistogram, separators);
+            if(sampleDecision.compareTo(decision) < 0) decision = sampleDecision;
+        }
+        return new Result(decision, EntropyUtils.entropy(histogram, sampled), separatorDensity(histogram, sampled, separators),
+                sampled, separators);
+    }
+
+    // Applies the thresholds to the histogram of one sample.
+    private static Decision classify(int[] histogram, SeparatorSet separators) {
+        long count = 0;
+        for(int value : histogram) count += value;
+        double entropy = EntropyUtils.entropy(histogram, count);
+
+        if(entropy >= Constant.STORED_ENTROPY_THRESHOLD) {
+            return Decision.STORED;
+        } else if(separatorDensity(histogram, count, separators) < MIN_SEPARATOR_DENSITY || entropy >= SINGLE_BYTE_ENTROPY_THRESHOLD) {
+            return Decision.SINGLE_BYTE;
+        }
+        return Decision.PATTERN;
+    }
+
+    private static double separatorDensity(int[] histogram, long count, SeparatorSet separators) {
+        long separatorCount = 0;
+        for(byte separator : separators.toBytes()) {
+            separatorCount += histogram[separator & 0xFF];
+        }
+        return (double) separatorCount / count;
+    }
+
+    /**
+     * Picks the separators from a byte histogram.
+     * <p>
+     * Logic:
+     * 1. **Candidates:** ASCII whitespace and punctuation; letters, digits and non-ASCII bytes
+     *    never split words (they are what patterns are made of).
+     * 2. **Frequency:** Candidates below {@link #MIN_SEPARATOR_SHARE} of the samples are dropped:
+     *    a rare separator only adds a context without shortening the tokens.
+     * 3. **Limit:** The most frequent ones are kept, up to {@link SeparatorSet#SWAR_LIMIT}.
+     * Falls back to the default set when no candidate qualifies.
+     */
+    private static SeparatorSet chooseSeparators(int[] histogram, long sampled) {
+        List<Integer> candidates = new ArrayList<>();
+        for(int value = 0; value < 128; value++) {
+            if(isSeparatorCandidate(value) && histogram[value] >= MIN_SEPARATOR_SHARE * sampled && histogram[value] > 0) {
+                candidates.add(value);
+            }
+        }
+        if(candidates.isEmpty()) {
+            return SeparatorSet.DEFAULT;
+        }
+
+        candidates.sort(Comparator.comparingInt((Integer value) -> histogram[value]).reversed().thenComparingInt(value -> value));
+        List<Integer> chosen = candidates.subList(0, Math.min(SeparatorSet.SWAR_LIMIT, candidates.size()));
+        byte[] bytes = new byte[chosen.size()];
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (int) chosen.get(i);
+        }
+        return SeparatorSet.of(bytes);
+    }
+
+    // ASCII whitespace and punctuation.
+    private static boolean isSeparatorCandidate(int value) {
+        return value == ' ' || value == '\t' || value == '\n' || value == '\r'
+                || (value >= '!' && value <= '/') || (value >= ':' && value <= '@')
+                || (value >= '[' && value <= '`') || (value >= '{' && value <= '~');
+    }
+}
@@ -1,13 +1,21 @@
 package com.pwha.service;
 
 import com.pwha.Main;
+import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.TemplateTable;
 import com.pwha.model.node.ContextLeaf;
+import com.pwha.tokenizer.Tokenizer;
 import com.pwha.util.Constant;
+import com.pwha.util.SeparatorSet;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -20,27 +28,70 @@ import java.util.Map;
 public class FrequencyService {
 
     // The main data structure holding all Contexts (keys) and their corresponding ContextLeaf nodes.
-    // This acts as the "Super Frequency Map".
-    private final HashMap<Byte,ContextLeaf> frequencyMap;
+    // This acts as the "Super Frequency Map". Keys are context symbols (see ContextLeaf#symbolOf):
+    // sparse, so code-point contexts only cost an entry for the characters that actually occur.
+    private final HashMap<Integer,ContextLeaf> frequencyMap;
+
+    // Pattern limits of the current run.
+    private final CompressionOptions options;
+
+    // Decides how many bytes of a word form its context.
+    private final Tokenizer tokenizer;
+
+    // Order-2 contexts opened so far (bounded by Constant.MAX_PAIR_CONTEXTS).
+    private int pairContexts;
+
+    // Phrase candidates (runs of whole tokens) and how often they were seen, bounded by
+    // Constant.MAX_PHRASE_CANDIDATES. Only filled when the options enable phrases.
+    private final HashMap<ByteArrayWrapper, Integer> phraseCounts = new HashMap<>();
+
+    // Candidates seen at most this often are dropped the next time the phrase table is full.
+    private int phraseFloor = 1;
+
+    // Phrase leaves added to the frequency map by selectPhrases.
+    private int phrases;
+
+    // Log template mining; null unless the options enable templates and the separators include
+    // space and newline (wildcard fields are coded as tokens up to the space or newline after them).
+    private final TemplateMiner templateMiner;
 
     public FrequencyService() {
+        this(CompressionOptions.defaults());
+    }
+
+    public FrequencyService(CompressionOptions options) {
         this.frequencyMap = new HashMap<>();
+        this.options = options;
+        this.tokenizer = options.configuredTokenizer();
+        SeparatorSet separators = tokenizer.separators();
+        this.templateMiner = options.templates() && separators.isSeparator((byte) ' ') && separators.isSeparator((byte) '\n')
+                ? new TemplateMiner() : null;
     }
 
     /**
      * Processes a single word (byte array) to update frequency statistics.
      * Logic:
-     * 1. Identifies the Context (First Letter).
+     * 1. Identifies the Context (First Letter, or first character with code-point contexts).
+     *    In order-2 mode the first two bytes, while the pair table has room or already holds them.
      * 2. Updates or creates the Context Node in the global map.
      * 3. Extracts all valid sub-patterns from the rest of the word.
      *
      * @param word The byte array representing a single word.
+     * @return The context the word was counted in (null for an empty word).
      */
-    public void processWord(byte[] word) {
-        if(word == null || word.length == 0) return;
+    public ContextLeaf processWord(byte[] word) {
+        if(word == null || word.length == 0) return null;
 
         // First, we identify the 'Context', which is the first letter of the word.
-        byte contextSymbol = word[0];
+        int contextLength = tokenizer.contextLength(word, 0, word.length);
+        int contextSymbol = ContextLeaf.symbolOf(word, 0, contextLength);
+        if(options.contextOrder() == 2 && contextLength == 1 && word.length > 1){
+            int pairSymbol = ContextLeaf.pairSymbol(word[0], word[1]);
+            if(frequencyMap.containsKey(pairSymbol) || pairContexts < Constant.MAX_PAIR_CONTEXTS){
+                contextSymbol = pairSymbol;
+                contextLength = 2;
+            }
+        }
         ContextLeaf contextNode;
 
         if(frequencyMap.containsKey(contextSymbol)) {
@@ -56,34 +107,36 @@ public class FrequencyService {
 
             // Register the new Context in the global map.
             frequencyMap.put(contextSymbol, contextNode);
+            if(contextNode.isPairContext()) pairContexts++;
         }
 
         // Delegate to the pattern mining method to process the rest of the word.
-        extractAndAddPatterns(contextNode, word);
+        extractAndAddPatterns(contextNode, word, contextLength);
+        return contextNode;
     }
 
     /**
      * Core Pattern Mining Logic.
-     * Generates all valid substrings (patterns) from the word starting from the 2nd character.
+     * Generates all valid substrings (patterns) from the word, starting after the context.
      * <p>
      * Example: For word "them" (Context 't'):
      * - Generates: "h", "he", "hem", "e", "em", "m" ...
-     * - Limits pattern length using Constant.MAX_PATTERN_LENGTH.
+     * - Limits pattern length using the maxPatternLength of the run's options.
      */
-    private void extractAndAddPatterns(ContextLeaf contextNode, byte[] word){
-        // Start from index 1 because index 0 is the Context itself.
-        for(int start = 1; start <word.length; start++){
+    private void extractAndAddPatterns(ContextLeaf contextNode, byte[] word, int contextLength){
+        // Start after the Context itself (index 1, unless the context is a multi-byte character).
+        for(int start = contextLength; start <word.length; start++){
 
             // Calculate the maximum end index based on the allowable pattern length.
             // This prevents generating patterns that are too long to be efficient.
-            int maxEnd = Math.min(word.length - 1, start + Constant.MAX_PATTERN_LENGTH -1);
+            int maxEnd = Math.min(word.length - 1, start + options.maxPatternLength() -1);
 
             // Extract substrings ranging from 'start' to 'end'.
             for(int end = maxEnd; end >= start; end--){
                 byte[] pattern = Arrays.copyOfRange(word, start, end + 1);
 
                 // Add the extracted pattern to the specific Context's sub-frequency map.
-                contextNode.addToFreqMap(pattern);
+                contextNode.addToFreqMap(pattern, options);
             }
         }
     }
@@ -92,16 +145,132 @@ public class FrequencyService {
      * Associates a separator (like space, comma, dot) with the preceding Context.
      * This captures the relationship between words and the punctuation that follows them.
      */
-    public void addSeparatorToContext(byte contextSymbol, byte separator){
-        if(frequencyMap.containsKey(contextSymbol)){
-            ContextLeaf contextNode = frequencyMap.get(contextSymbol);
+    public void addSeparatorToContext(int contextSymbol, byte separator){
+        addSeparatorToContext(frequencyMap.get(contextSymbol), separator);
+    }
 
+    // Same, for the context returned by processWord (order-2 contexts are not derivable from the symbol alone).
+    public void addSeparatorToContext(ContextLeaf contextNode, byte separator){
+        if(contextNode != null){
             // Treat the separator as a single-byte pattern belonging to this context.
-            contextNode.addToFreqMap(new byte[]{separator});
+            contextNode.addToFreqMap(new byte[]{separator}, options);
+        }
+    }
+
+    /**
+     * Folds rare order-2 contexts back into their order-1 context. Call once, after the analysis.
+     * <p>
+     * Every context costs a super-tree code and a serialized sub-tree in the header; a pair seen
+     * only a few times saves less than that. A pair is kept when it was seen at least
+     * {@link Constant#MIN_PAIR_CONTEXT_FREQUENCY} times and at least twice per pattern it holds.
+     * Its words are then coded with the first byte as context, which the Encoder falls back to
+     * whenever the dictionary has no pair for a word.
+     *
+     * @return The number of pair contexts removed.
+     */
+    public int pruneContexts(){
+        int minFrequency = Constant.MIN_PAIR_CONTEXT_FREQUENCY;
+        int pruned = 0;
+        // Sorted, so the fallback contexts absorb the pairs (and evict) in the same order on every run.
+        Integer[] symbols = frequencyMap.keySet().toArray(new Integer[0]);
+        Arrays.sort(symbols);
+        for(Integer symbol : symbols){
+            ContextLeaf pair = frequencyMap.get(symbol);
+            if(!pair.isPairContext()) continue;
+            if(pair.getFrequency() >= Math.max(minFrequency, 2 * pair.getPatternCount())) continue;
+
+            frequencyMap.remove(symbol);
+            int single = pair.getData();
+            frequencyMap.computeIfAbsent(single, s -> new ContextLeaf(s, 0)).absorb(pair, options.maxPatternAmount());
+            pruned++;
         }
+        pairContexts -= pruned;
+        return pruned;
+    }
+
+    // Number of order-2 contexts currently in the map.
+    public int getPairContextCount() {
+        return pairContexts;
+    }
+
+    /**
+     * Counts a phrase candidate: the whole tokens in {@code data[from, to)}, separators included.
+     * When the table is full, the rarest candidates are dropped (a new one always gets in).
+     */
+    public void addPhrase(byte[] data, int from, int to){
+        ByteArrayWrapper phrase = new ByteArrayWrapper(Arrays.copyOfRange(data, from, to));
+        Integer count = phraseCounts.get(phrase);
+        if(count != null){
+            phraseCounts.put(phrase, count + 1);
+            return;
+        }
+
+        // Drop the candidates at or below the floor, raising it until half of the table is free.
+        while(phraseCounts.size() >= Constant.MAX_PHRASE_CANDIDATES){
+            int floor = phraseFloor;
+            phraseCounts.values().removeIf(c -> c <= floor);
+            if(phraseCounts.size() > Constant.MAX_PHRASE_CANDIDATES / 2) phraseFloor++;
+        }
+        phraseCounts.put(phrase, 1);
+    }
+
+    /**
+     * Turns the most useful phrase candidates into phrase leaves of the Super-Tree. Call once, after the analysis.
+     * <p>
+     * Logic:
+     * 1. **Filter:** Candidates seen fewer than {@link Constant#MIN_PHRASE_FREQUENCY} times, or covering
+     *    fewer than {@link Constant#MIN_PHRASE_COVERAGE} bytes in total, are skipped.
+     * 2. **Rank:** By occurrences times length, i.e. the bytes that would be coded with one symbol.
+     * 3. **Register:** The best {@link Constant#MAX_PHRASES} are numbered in byte order (stable across runs)
+     *    and added to the frequency map; the Encoder codes a run of tokens with the longest one that matches.
+     *
+     * @return The number of phrases added.
+     */
+    public int selectPhrases(){
+        List<Map.Entry<ByteArrayWrapper, Integer>> candidates = new ArrayList<>();
+        for(Map.Entry<ByteArrayWrapper, Integer> entry : phraseCounts.entrySet()){
+            if(entry.getValue() >= Constant.MIN_PHRASE_FREQUENCY
+                    && (long) entry.getValue() * entry.getKey().length() >= Constant.MIN_PHRASE_COVERAGE) candidates.add(entry);
+        }
+        candidates.sort(Comparator.comparingLong((Map.Entry<ByteArrayWrapper, Integer> e) -> (long) e.getValue() * e.getKey().length())
+                .reversed().thenComparing(Map.Entry::getKey));
+        if(candidates.size() > Constant.MAX_PHRASES){
+            candidates = candidates.subList(0, Constant.MAX_PHRASES);
+        }
+        candidates.sort(Map.Entry.comparingByKey());
+
+        for(Map.Entry<ByteArrayWrapper, Integer> entry : candidates){
+            ContextLeaf leaf = new ContextLeaf(entry.getKey().data(), phrases++, entry.getValue());
+            frequencyMap.put(leaf.getSymbol(), leaf);
+        }
+        phraseCounts.clear();
+        return candidates.size();
+    }
+
+    // Whether complete lines should be passed to addLogLine.
+    public boolean isMiningTemplates() {
+        return templateMiner != null;
+    }
+
+    // Feeds a complete line (without its newline) to the template miner.
+    public void addLogLine(byte[] data, int from, int to) {
+        templateMiner.addLine(data, from, to);
+    }
+
+    /**
+     * The log templates of the analyzed input (see {@link TemplateMiner}). Call once, after the analysis.
+     *
+     * @return The template table, or null if templates are off or no line template qualified.
+     */
+    public TemplateTable selectTemplates() {
+        return templateMiner == null ? null : templateMiner.selectTemplates();
+    }
+
+    public CompressionOptions getOptions() {
+        return options;
     }
 
-    public HashMap<Byte,ContextLeaf> getFrequencyMap() {
+    public HashMap<Integer,ContextLeaf> getFrequencyMap() {
         return frequencyMap;
     }
 }
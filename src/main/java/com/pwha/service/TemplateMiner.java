@@ -0,0 +1,147 @@
+package com.pwha.service;
+
+import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.TemplateTable;
+import com.pwha.util.Constant;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Mines log line templates during the Analysis Phase (Drain-style, bounded memory).
+ * <p>
+ * Logic, per line (see Drain, He et al. 2017):
+ * 1. **Split:** The line is split into space-separated fields ({@link TemplateTable#splitFields}).
+ * 2. **Route:** A fixed-depth parse tree narrows the candidates to the groups with the same number
+ *    of fields and the same first field. Fields containing a digit are treated as wildcards from the
+ *    start (timestamps, ids, counters), so they never split the tree.
+ * 3. **Match:** The most similar group wins: the share of fields equal to its constant fields. At
+ *    {@link Constant#TEMPLATE_SIMILARITY} or above, the line joins it and every constant field that
+ *    differs becomes a wildcard; otherwise the line starts a group of its own.
+ * 4. **Bound:** At most {@link Constant#MAX_TEMPLATE_GROUPS} groups are kept, and
+ *    {@link Constant#MAX_TEMPLATE_GROUPS_PER_KEY} per tree leaf; lines that find no room are only counted.
+ * <p>
+ * The largest groups become the {@link TemplateTable} of the file ({@link #selectTemplates()}).
+ */
+public class TemplateMiner {
+
+    // Tree leaf of the templates whose first field is a wildcard (real fields are never empty).
+    private static final ByteArrayWrapper WILDCARD = new ByteArrayWrapper(new byte[0]);
+
+    // A log group: its template (null fields are wildcards) and the number of lines it absorbed.
+    private static final class Group {
+        final byte[][] template;
+        int lines;
+
+        Group(byte[][] template) {
+            this.template = template;
+            this.lines = 1;
+        }
+    }
+
+    // Parse tree: field count -> first field (or WILDCARD) -> groups.
+    private final HashMap<Integer, HashMap<ByteArrayWrapper, List<Group>>> tree = new HashMap<>();
+    private int groups;
+
+    // Every complete line seen, including the ones that cannot take a template.
+    private long lines;
+
+    // Field bounds of the current line.
+    private final int[] starts = new int[Constant.MAX_TEMPLATE_FIELDS];
+    private final int[] ends = new int[Constant.MAX_TEMPLATE_FIELDS];
+
+    /**
+     * Adds the line {@code data[from, to)}, without its newline.
+     */
+    public void addLine(byte[] data, int from, int to) {
+        lines++;
+        int fields = TemplateTable.splitFields(data, from, to, starts, ends);
+        if(fields <= 0) return;
+
+        byte[][] template = new byte[fields][];
+        for(int i = 0; i < fields; i++) {
+            template[i] = hasDigit(data, starts[i], ends[i]) ? null : Arrays.copyOfRange(data, starts[i], ends[i]);
+        }
+        ByteArrayWrapper key = template[0] == null ? WILDCARD : new ByteArrayWrapper(template[0]);
+        List<Group> leaf = tree.computeIfAbsent(fields, f -> new HashMap<>()).computeIfAbsent(key, k -> new ArrayList<>());
+
+        // Most similar group; ties go to the one with fewer wildcards (the more specific template).
+        Group best = null;
+        int bestEqual = -1;
+        int bestWildcards = Integer.MAX_VALUE;
+        for(Group group : leaf) {
+            int equal = 0, wildcards = 0;
+            for(int i = 0; i < fields; i++) {
+                byte[] field = group.template[i];
+                if(field == null) wildcards++;
+                else if(Arrays.equals(field, 0, field.length, data, starts[i], ends[i])) equal++;
+            }
+            if(equal > bestEqual || (equal == bestEqual && wildcards < bestWildcards)) {
+                best = group;
+                bestEqual = equal;
+                bestWildcards = wildcards;
+            }
+        }
+
+        if(best != null && bestEqual >= Constant.TEMPLATE_SIMILARITY * fields) {
+            for(int i = 0; i < fields; i++) {
+                byte[] field = best.template[i];
+                if(field != null && !Arrays.equals(field, 0, field.length, data, starts[i], ends[i])) {
+                    best.template[i] = null;
+                }
+            }
+            best.lines++;
+        } else if(groups < Constant.MAX_TEMPLATE_GROUPS && leaf.size() < Constant.MAX_TEMPLATE_GROUPS_PER_KEY) {
+            leaf.add(new Group(template));
+            groups++;
+        }
+    }
+
+    private static boolean hasDigit(byte[] data, int from, int to) {
+        for(int i = from; i < to; i++) {
+            if(data[i] >= '0' && data[i] <= '9') return true;
+        }
+        return false;
+    }
+
+    /**
+     * Builds the template table from the {@link Constant#MAX_TEMPLATES} largest groups that absorbed at
+     * least {@link Constant#MIN_TEMPLATE_LINES} lines and have a constant field.
+     *
+     * @return The table, or null if no group qualifies.
+     */
+    public TemplateTable selectTemplates() {
+        List<Group> selected = new ArrayList<>();
+        for(HashMap<ByteArrayWrapper, List<Group>> byFirstField : tree.values()) {
+            for(List<Group> leaf : byFirstField.values()) {
+                for(Group group : leaf) {
+                    if(group.lines >= Constant.MIN_TEMPLATE_LINES && Arrays.stream(group.template).anyMatch(f -> f != null)) {
+                        selected.add(group);
+                    }
+                }
+            }
+        }
+        if(selected.isEmpty()) return null;
+        selected.sort(Comparator.comparingInt((Group g) -> g.lines).reversed());
+        if(selected.size() > Constant.MAX_TEMPLATES) {
+            selected = selected.subList(0, Constant.MAX_TEMPLATES);
+        }
+
+        List<byte[][]> templates = new ArrayList<>();
+        int[] lineCounts = new int[selected.size()];
+        long templated = 0;
+        for(int id = 0; id < selected.size(); id++) {
+            templates.add(selected.get(id).template);
+            lineCounts[id] = selected.get(id).lines;
+            templated += lineCounts[id];
+        }
+        return new TemplateTable(templates, lineCounts, (int) Math.min(Integer.MAX_VALUE, lines - templated));
+    }
+
+    public int getGroupCount() {
+        return groups;
+    }
+}
@@ -0,0 +1,50 @@
+package com.pwha.tokenizer;
+
+import com.pwha.util.SeparatorSet;
+
+/**
+ * Byte-oriented tokenizer: words end at a separator or after {@code maxTokenLength} bytes.
+ * <p>
+ * The "text", "log" and "csv" tokenizers are instances of this class; they differ only in their
+ * default separators (see {@link Tokenizers}).
+ */
+public final class SeparatorTokenizer implements Tokenizer {
+
+    private final int id;
+    private final String name;
+    private final SeparatorSet separators;
+
+    public SeparatorTokenizer(int id, String name, SeparatorSet separators) {
+        if(id < 0 || id > 255 || separators == null) {
+            throw new IllegalArgumentException("Tokenizer id must be 0-255 and separators are required");
+        }
+        this.id = id;
+        this.name = name;
+        this.separators = separators;
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public SeparatorSet separators() {
+        return separators;
+    }
+
+    @Override
+    public Tokenizer withSeparators(SeparatorSet separators) {
+        return separators.equals(this.separators) ? this : new SeparatorTokenizer(id, name, separators);
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + separators;
+    }
+}
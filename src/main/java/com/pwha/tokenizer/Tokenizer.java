@@ -0,0 +1,131 @@
+package com.pwha.tokenizer;
+
+import com.pwha.util.SeparatorSet;
+
+import java.io.IOException;
+
+/**
+ * Splits a block into the tokens the model is built from (SPI).
+ * <p>
+ * Analysis ({@code ByteReader}), encoding ({@code Encoder}) and decoding ({@code Decoder}) must cut
+ * the stream at exactly the same positions, so all three go through the same tokenizer. Its
+ * {@link #id()} is written to the file header and resolved with {@link Tokenizers#byId(int)}.
+ * <p>
+ * The token stream is always the same shape, only the boundaries differ:
+ * 1. **Words:** A run of non-separator bytes; its first symbol ({@link #contextLength}) is the
+ *    context of the rest.
+ * 2. **Separators:** Single bytes from {@link #separators()}. A separator right after a word is
+ *    coded in that word's context; otherwise it is a token of its own.
+ * 3. **Forced Splits:** A word without a separator ends where {@link #isWordComplete} first holds.
+ *    The Decoder only sees the decoded bytes, so that rule may look at nothing else.
+ * <p>
+ * Implementations are immutable. Additional tokenizers are found with {@link java.util.ServiceLoader}
+ * (public no-arg constructor, ids 128-255; 0-127 are reserved for the built-in ones).
+ */
+public interface Tokenizer {
+
+    /**
+     * Receives the tokens of a block in order.
+     */
+    interface TokenVisitor {
+
+        // A word occupying data[from, to).
+        void word(byte[] data, int from, int to) throws IOException;
+
+        /**
+         * A separator at data[index].
+         *
+         * @param wordStart Start of the word it ends (its context starts at data[wordStart]), or -1 when it follows no word.
+         */
+        void separator(byte[] data, int index, int wordStart) throws IOException;
+    }
+
+    // Stable identifier written to the file header.
+    int id();
+
+    // Name used on the command line (e.g. "text", "csv").
+    String name();
+
+    // Bytes that end a word.
+    SeparatorSet separators();
+
+    // Same tokenizer with other separators (the job's own set, or the one read from a header).
+    Tokenizer withSeparators(SeparatorSet separators);
+
+    /**
+     * Number of bytes at the start of the word {@code data[from, to)} that form its context.
+     * The default is the first byte; longer contexts must be well-formed UTF-8 sequences
+     * (see {@code ContextLeaf#symbolOf}), which is all the Decoder needs to write them back.
+     */
+    default int contextLength(byte[] data, int from, int to) {
+        return 1;
+    }
+
+    /**
+     * Shortest word that {@link #isWordComplete} may accept. Words below it are never checked,
+     * which keeps the rule off the hot path.
+     */
+    default int minSplitLength(int maxTokenLength) {
+        return maxTokenLength;
+    }
+
+    /**
+     * Whether the word in {@code data[from, to)} ends here even though no separator follows.
+     * Must only depend on those bytes; the default cuts at exactly {@code maxTokenLength} bytes.
+     */
+    default boolean isWordComplete(byte[] data, int from, int to, int maxTokenLength) {
+        return to - from >= maxTokenLength;
+    }
+
+    /**
+     * End (exclusive) of the word starting at {@code from}: the next separator, the first forced
+     * split, or {@code limit}. Returns {@code from} when {@code data[from]} is itself a separator.
+     */
+    default int wordEnd(byte[] data, int from, int limit, int maxTokenLength) {
+        int end = separators().nextSeparator(data, from, (int) Math.min(limit, (long) from + maxTokenLength));
+        for(long split = Math.max(from + 1L, from + (long) minSplitLength(maxTokenLength)); split < end; split++) {
+            if(isWordComplete(data, from, (int) split, maxTokenLength)) return (int) split;
+        }
+        return end;
+    }
+
+    /**
+     * Feeds the tokens of {@code data[0, length)} to the visitor. Words never span blocks, so each
+     * block is tokenized on its own and a word still open at its end is reported without a separator.
+     * <p>
+     * A separator is attached to the word before it only if that word is not complete: the Decoder
+     * has already dropped the context of a complete word when the separator arrives.
+     */
+    default void tokenize(byte[] data, int length, int maxTokenLength, TokenVisitor visitor) throws IOException {
+        tokenize(data, 0, length, maxTokenLength, visitor);
+    }
+
+    /**
+     * Same, for {@code data[from, to)} (e.g. one field of a log line). The range is tokenized as if
+     * it were a block of its own, so it must start at a token boundary to match the whole-block tokens.
+     */
+    default void tokenize(byte[] data, int from, int to, int maxTokenLength, TokenVisitor visitor) throws IOException {
+        SeparatorSet separators = separators();
+        int length = to;
+        int wordStart = from;
+
+        while(wordStart < length) {
+            int end = wordEnd(data, wordStart, length, maxTokenLength);
+
+            if(end == wordStart) {
+                // A separator with no word before it (start of block, separator runs, after a forced split).
+                visitor.separator(data, wordStart, -1);
+                wordStart++;
+                continue;
+            }
+
+            visitor.word(data, wordStart, end);
+            if(end < length && separators.isSeparator(data[end]) && !isWordComplete(data, wordStart, end, maxTokenLength)) {
+                visitor.separator(data, end, wordStart);
+                wordStart = end + 1;
+            } else {
+                wordStart = end;
+            }
+        }
+    }
+}
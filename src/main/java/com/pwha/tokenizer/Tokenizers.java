@@ -0,0 +1,70 @@
+package com.pwha.tokenizer;
+
+import com.pwha.util.SeparatorSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the available tokenizers.
+ * <p>
+ * Built in:
+ * 1. **text** (0): Whitespace and punctuation ({@link SeparatorSet#DEFAULT}), byte-oriented. The default.
+ * 2. **utf8** (1): Same separators, forced splits on code point boundaries ({@link Utf8Tokenizer}).
+ * 3. **log** (2): Separator preset for logs: whitespace, brackets, '=', ',' and quotes, so keys,
+ *    values and bracketed levels become tokens of their own.
+ * 4. **csv** (3): Separator preset for CSV/TSV: field and record delimiters and quotes, but no
+ *    space, so a field such as "New York" stays one token.
+ * <p>
+ * "log" and "csv" are plain {@link SeparatorTokenizer}s: they do not parse the format. A quoted
+ * CSV field containing a delimiter is still split there, and log lines are not treated as records
+ * (that is what {@code --templates} does). The Decoder finds token boundaries from the decoded
+ * bytes alone, so a tokenizer cannot keep state such as "inside quotes" across tokens.
+ * <p>
+ * Further tokenizers are discovered with {@link ServiceLoader} the first time the registry is used.
+ */
+public final class Tokenizers {
+
+    public static final Tokenizer TEXT = new SeparatorTokenizer(0, "text", SeparatorSet.DEFAULT);
+    public static final Tokenizer UTF8 = new Utf8Tokenizer(SeparatorSet.DEFAULT);
+    public static final Tokenizer LOG = new SeparatorTokenizer(2, "log", SeparatorSet.of(" \\n\\t[]=,\""));
+    public static final Tokenizer CSV = new SeparatorTokenizer(3, "csv", SeparatorSet.of(",;\\t\\n\\r\""));
+
+    private Tokenizers() {} // Prevent instantiation
+
+    // Built-in tokenizers first, then the service providers (a provider cannot replace a taken id or name).
+    private static final class Registry {
+        static final List<Tokenizer> ALL;
+
+        static {
+            List<Tokenizer> all = new ArrayList<>(List.of(TEXT, UTF8, LOG, CSV));
+            for(Tokenizer provided : ServiceLoader.load(Tokenizer.class)) {
+                boolean taken = all.stream().anyMatch(t -> t.id() == provided.id() || t.name().equalsIgnoreCase(provided.name()));
+                if(!taken) all.add(provided);
+            }
+            ALL = Collections.unmodifiableList(all);
+        }
+    }
+
+    public static List<Tokenizer> available() {
+        return Registry.ALL;
+    }
+
+    public static Tokenizer byId(int id) {
+        for(Tokenizer tokenizer : Registry.ALL) {
+            if(tokenizer.id() == id) return tokenizer;
+        }
+        throw new IllegalArgumentException("Unknown tokenizer id: " + id);
+    }
+
+    // Parses a tokenizer name such as "text" or "csv" (case-insensitive).
+    public static Tokenizer byName(String name) {
+        for(Tokenizer tokenizer : Registry.ALL) {
+            if(tokenizer.name().equalsIgnoreCase(name)) return tokenizer;
+        }
+        List<String> names = Registry.ALL.stream().map(Tokenizer::name).toList();
+        throw new IllegalArgumentException("Unknown tokenizer: " + name + " (expected one of " + String.join(", ", names) + ")");
+    }
+}
@@ -0,0 +1,101 @@
+package com.pwha.tokenizer;
+
+import com.pwha.util.SeparatorSet;
+import com.pwha.util.Utf8Utils;
+
+/**
+ * UTF-8 aware tokenizer: code-point contexts, and forced splits never cut a multi-byte character.
+ * <p>
+ * Code-point contexts: the byte tokenizers use the first byte of a word as its context, so every
+ * Turkish, Cyrillic or CJK word lands in one of a few lead-byte contexts (0xC3, 0xD0, 0xE3...) whose
+ * sub-trees overflow and evict constantly. Here a word starting with a well-formed multi-byte
+ * character uses that whole character as its context, keyed by code point. The super-tree is
+ * built over the code points that actually occur; malformed bytes stay byte contexts.
+ * <p>
+ * With the byte-oriented tokenizers a long word is cut at exactly {@code maxTokenLength} bytes,
+ * which may leave half of a character in each word; the next word then starts with a continuation
+ * byte as its context. Here a long word ends at the first complete code point from
+ * {@code maxTokenLength - 3} bytes on, so both halves stay valid UTF-8.
+ * <p>
+ * Logic of {@link #isWordComplete}:
+ * 1. Below {@code maxTokenLength - 3} bytes a word is never complete.
+ * 2. From there on it is complete as soon as its last byte ends a code point: an ASCII byte,
+ *    or the last continuation byte of a sequence whose lead byte announced that length.
+ * 3. At {@code maxTokenLength} bytes it is complete regardless (malformed input stays bounded).
+ * Separators are single ASCII bytes, as for the other tokenizers.
+ */
+public final class Utf8Tokenizer implements Tokenizer {
+
+    public static final int ID = 1;
+
+    // Longest UTF-8 sequence minus one: the slack below maxTokenLength for finishing a character.
+    private static final int MAX_CONTINUATION_BYTES = 3;
+
+    private final SeparatorSet separators;
+
+    public Utf8Tokenizer() {
+        this(SeparatorSet.DEFAULT);
+    }
+
+    public Utf8Tokenizer(SeparatorSet separators) {
+        if(separators == null) {
+            throw new IllegalArgumentException("Separators are required");
+        }
+        this.separators = separators;
+    }
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "utf8";
+    }
+
+    @Override
+    public SeparatorSet separators() {
+        return separators;
+    }
+
+    @Override
+    public Tokenizer withSeparators(SeparatorSet separators) {
+        return separators.equals(this.separators) ? this : new Utf8Tokenizer(separators);
+    }
+
+    @Override
+    public int contextLength(byte[] data, int from, int to) {
+        return Utf8Utils.validSequenceLength(data, from, to);
+    }
+
+    @Override
+    public int minSplitLength(int maxTokenLength) {
+        return Math.max(1, maxTokenLength - MAX_CONTINUATION_BYTES);
+    }
+
+    @Override
+    public boolean isWordComplete(byte[] data, int from, int to, int maxTokenLength) {
+        int length = to - from;
+        if(length >= maxTokenLength) return true;
+        if(length < minSplitLength(maxTokenLength)) return false;
+        return endsCodePoint(data, from, to);
+    }
+
+    // Whether data[to - 1] is the last byte of a character (malformed sequences count as ended).
+    private static boolean endsCodePoint(byte[] data, int from, int to) {
+        for(int back = 1; back <= MAX_CONTINUATION_BYTES + 1 && to - back >= from; back++) {
+            int b = data[to - back] & 0xFF;
+            if((b & 0xC0) != 0x80) {
+                // Lead or ASCII byte: the sequence is complete if it has exactly 'back' bytes.
+                return Utf8Utils.sequenceLength(b) <= back;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name() + " " + separators;
+    }
+}
@@ -14,17 +14,82 @@ import java.util.Set;
 public final class Constant {
 
     // Defines the characters that mark the boundaries between words.
-    // Used by the ByteReader and SeparatorUtils to split the input stream into processable tokens.
+    // Default separator set (SeparatorSet.DEFAULT); a job may use its own set from its CompressionOptions.
     public static final String SEPARATORS = " \n\t.,;!?";
 
     // Limits the maximum length of a sub-pattern to be considered for compression.
     // For example, if set to 6, the word "international" will generate patterns up to 6 chars long (e.g., "intern").
     // This prevents the dictionary from growing exponentially with very long, rare patterns.
-    public static int MAX_PATTERN_LENGTH = 6;
+    // Default of the "default" level; a run uses the value from its CompressionOptions.
+    public static final int MAX_PATTERN_LENGTH = 6;
 
     // Memory Control: The maximum number of unique patterns allowed per 'Context'.
     // If a Context (e.g., letter 't') accumulates more patterns than this limit,
     // the Eviction Policy (in ContextLeaf) is triggered to remove low-frequency patterns.
     // This is crucial for preventing OutOfMemoryError on large datasets.
-    public static int MAX_PATTERN_AMOUNT = 2500;
+    // Default of the "default" level; a run uses the value from its CompressionOptions.
+    public static final int MAX_PATTERN_AMOUNT = 2500;
+
+    // Longest run of non-separator bytes handled as one word. Longer runs (binary data, minified text)
+    // are cut into words of exactly this length on both sides, which keeps buffers and matching cost bounded.
+    public static final int MAX_TOKEN_LENGTH = 256;
+
+    // Order-2 contexts: at most this many pair contexts are opened per analysis; later pairs use order 1.
+    public static final int MAX_PAIR_CONTEXTS = 4096;
+
+    // A pair context seen fewer times than this (or than twice its pattern count) does not pay for its
+    // own sub-tree in the header and is folded back into its order-1 context after analysis.
+    public static final int MIN_PAIR_CONTEXT_FREQUENCY = 64;
+
+    // Phrase mining (opt-in): runs of 2 to MAX_PHRASE_TOKENS tokens, separators included, up to
+    // MAX_PHRASE_LENGTH bytes. At most MAX_PHRASE_CANDIDATES are counted at once (rare ones are dropped
+    // when the table fills up), and the MAX_PHRASES that save most, seen at least MIN_PHRASE_FREQUENCY
+    // times, get a Super-Tree code of their own.
+    public static final int MAX_PHRASE_TOKENS = 4;
+    public static final int MAX_PHRASE_LENGTH = 32;
+    public static final int MAX_PHRASE_CANDIDATES = 1 << 16;
+    public static final int MAX_PHRASES = 1024;
+    public static final int MIN_PHRASE_FREQUENCY = 16;
+
+    // A phrase leaf costs about 100 header bytes; one whose occurrences cover fewer input bytes than
+    // this rarely saves as much in the payload.
+    public static final int MIN_PHRASE_COVERAGE = 2048;
+
+    // Log templates (opt-in): lines of at most MAX_TEMPLATE_LINE_LENGTH bytes and MAX_TEMPLATE_FIELDS
+    // space-separated fields are grouped Drain-style; a line joins the most similar group of its shape
+    // when at least TEMPLATE_SIMILARITY of its fields equal the group's constant fields. Memory stays
+    // bounded by MAX_TEMPLATE_GROUPS (at most MAX_TEMPLATE_GROUPS_PER_KEY per field count and first
+    // field). The MAX_TEMPLATES largest groups of at least MIN_TEMPLATE_LINES lines are kept.
+    public static final int MAX_TEMPLATE_LINE_LENGTH = 2048;
+    public static final int MAX_TEMPLATE_FIELDS = 64;
+    public static final double TEMPLATE_SIMILARITY = 0.5;
+    public static final int MAX_TEMPLATE_GROUPS = 4096;
+    public static final int MAX_TEMPLATE_GROUPS_PER_KEY = 64;
+    public static final int MAX_TEMPLATES = 1024;
+    public static final int MIN_TEMPLATE_LINES = 8;
+
+    // Word cache of the Encoder (per thread, Huffman coder only): up to WORD_CACHE_ENTRIES words of
+    // at most WORD_CACHE_MAX_LENGTH bytes, mapped to the bits written for them.
+    public static final int WORD_CACHE_ENTRIES = 4096;
+    public static final int WORD_CACHE_MAX_LENGTH = 24;
+
+    // Number of input bytes encoded as one independent block.
+    // Blocks start with an empty context on both sides, so they can be encoded and decoded in parallel.
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    // File format identification written at the start of every compressed file ("PWHA").
+    public static final int FILE_MAGIC = 0x50574841;
+    // Format version written after the magic. Only this version is read; bump it whenever the layout changes.
+    public static final int FORMAT_VERSION = 1;
+
+    // Block types: entropy-coded (Huffman bits or rANS, as the header says), or the raw bytes copied through unchanged.
+    public static final int BLOCK_HUFFMAN = 0;
+    public static final int BLOCK_STORED = 1;
+
+    // Blocks whose order-0 entropy reaches this many bits per byte are stored without trying to encode them.
+    public static final double STORED_ENTROPY_THRESHOLD = 7.8;
+
+    // The analysis applies the threshold above to segments of this many bytes (log2) within a block,
+    // so an incompressible part of a block does not flood the dictionary with random patterns.
+    public static final int ANALYSIS_SEGMENT_BITS = 16;
 }
@@ -0,0 +1,39 @@
+package com.pwha.util;
+
+/**
+ * Cheap byte statistics used to decide whether a block is worth encoding.
+ */
+public class EntropyUtils {
+
+    private EntropyUtils() {} // Prevent instantiation
+
+    /**
+     * Order-0 (Shannon) entropy of a byte range in bits per byte.
+     * <p>
+     * This is the average code length an ideal single-byte Huffman code would approach,
+     * so a value close to 8 means the bytes are effectively random: no code can shrink them.
+     *
+     * @return Entropy between 0 and 8, or 0 for an empty range.
+     */
+    public static double orderZeroEntropy(byte[] data, int from, int length) {
+        if(length <= 0) return 0;
+
+        int[] histogram = new int[256];
+        for(int i = from; i < from + length; i++) {
+            histogram[data[i] & 0xFF]++;
+        }
+        return entropy(histogram, length);
+    }
+
+    // Entropy in bits per symbol of a histogram whose counts sum to 'total'.
+    public static double entropy(int[] histogram, long total) {
+        if(total <= 0) return 0;
+        double bits = 0;
+        for(int count : histogram) {
+            if(count == 0) continue;
+            double p = (double) count / total;
+            bits -= p * (Math.log(p) / Math.log(2));
+        }
+        return bits;
+    }
+}
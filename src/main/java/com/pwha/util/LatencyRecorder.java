@@ -0,0 +1,53 @@
+package com.pwha.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size recorder for latency samples.
+ * <p>
+ * Keeps the most recent {@code capacity} samples in a ring buffer, so memory stays constant no
+ * matter how many jobs are recorded. Percentiles are computed on demand by sorting a snapshot,
+ * which is cheap compared to the jobs being measured.
+ */
+public class LatencyRecorder {
+
+    // Ring buffer of samples in nanoseconds.
+    private final long[] samples;
+
+    // Total number of samples recorded so far (also the next write position modulo capacity).
+    private long count;
+
+    public LatencyRecorder(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[(int) (count % samples.length)] = nanos;
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the given percentile of the retained samples (nearest-rank method).
+     *
+     * @param percentile Value between 0 and 100 (e.g., 50, 95, 99).
+     * @return The latency in nanoseconds, or 0 if nothing has been recorded.
+     */
+    public long percentile(double percentile) {
+        long[] snapshot;
+        synchronized (this) {
+            if(count == 0) return 0;
+            snapshot = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+        }
+        Arrays.sort(snapshot);
+
+        int rank = (int) Math.ceil(percentile / 100.0 * snapshot.length);
+        return snapshot[Math.min(snapshot.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -0,0 +1,186 @@
+package com.pwha.util;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An immutable set of Word Separators.
+ * <p>
+ * Every compression job tokenizes with its own set (see {@code CompressionOptions}); the set is
+ * written to the file header so the Decoder resets its context on exactly the same bytes.
+ * <p>
+ * Two access paths:
+ * 1. **Lookup Table:** {@link #isSeparator(byte)} indexes a {@code boolean[256]} by the unsigned
+ *    byte value: no boxing, no hashing.
+ * 2. **Bulk Scan:** {@link #nextSeparator(byte[], int, int)} finds the next separator eight bytes
+ *    at a time (SWAR, "SIMD Within A Register"), like {@code memchr} for a small set of bytes.
+ *    Sets larger than {@link #SWAR_LIMIT} bytes are scanned with the table, which is cheaper then.
+ */
+public final class SeparatorSet {
+
+    // The set used before separators became configurable (" \n\t.,;!?").
+    public static final SeparatorSet DEFAULT = of(Constant.SEPARATORS);
+
+    // Above this many separators, one SWAR step costs more than eight table lookups.
+    public static final int SWAR_LIMIT = 8;
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    // Reads 8 bytes of a byte[] as one little-endian long, so byte i of the word is array index i.
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong SEGMENT_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    // The separators in ascending unsigned order (the header representation).
+    private final byte[] bytes;
+
+    // Lookup table indexed by the unsigned byte value.
+    private final boolean[] table = new boolean[256];
+
+    // Every separator broadcast to the 8 bytes of a long (e.g. ' ' -> 0x2020202020202020L), or null above SWAR_LIMIT.
+    private final long[] patterns;
+
+    private SeparatorSet(boolean[] members) {
+        int count = 0;
+        for(boolean member : members) if(member) count++;
+
+        this.bytes = new byte[count];
+        int i = 0;
+        for(int value = 0; value < 256; value++) {
+            if(members[value]) {
+                table[value] = true;
+                bytes[i++] = (byte) value;
+            }
+        }
+
+        if(count <= SWAR_LIMIT) {
+            patterns = new long[count];
+            for(int p = 0; p < count; p++) {
+                patterns[p] = (bytes[p] & 0xFFL) * LOW_BITS;
+            }
+        } else {
+            patterns = null;
+        }
+    }
+
+    /**
+     * A set made of the given bytes (duplicates are ignored).
+     */
+    public static SeparatorSet of(byte[] separators) {
+        boolean[] members = new boolean[256];
+        for(byte b : separators) members[b & 0xFF] = true;
+        return new SeparatorSet(members);
+    }
+
+    /**
+     * A set made of the characters of a string, taken as ISO-8859-1 bytes.
+     * Escapes {@code \n}, {@code \t}, {@code \r} and {@code \\} are understood, so sets can be typed on a command line.
+     */
+    public static SeparatorSet of(String separators) {
+        String unescaped = separators.replace("\\n", "\n").replace("\\t", "\t").replace("\\r", "\r").replace("\\\\", "\\");
+        return of(unescaped.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    public boolean isSeparator(byte b) {
+        return table[b & 0xFF];
+    }
+
+    // Copy of the separators in ascending unsigned order.
+    public byte[] toBytes() {
+        return bytes.clone();
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    /**
+     * Index of the first separator in {@code data[from, to)}, or {@code to} if there is none.
+     * <p>
+     * Logic (per 8-byte word {@code x}, for every separator {@code s}):
+     * 1. {@code v = x ^ broadcast(s)} turns the bytes equal to {@code s} into zero bytes.
+     * 2. {@code (v - 0x01..01) & ~v & 0x80..80} sets the high bit of the lowest zero byte
+     *    (bytes above it may be flagged too, which never affects the lowest one).
+     * 3. The flags of all separators are OR-ed; the lowest set bit locates the first separator.
+     * The tail (fewer than 8 bytes) goes through the lookup table.
+     */
+    public int nextSeparator(byte[] data, int from, int to) {
+        int i = from;
+        if(patterns != null) {
+            for(; i + Long.BYTES <= to; i += Long.BYTES) {
+                long mask = separatorMask((long) LONG_VIEW.get(data, i));
+                if(mask != 0) {
+                    return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        }
+        for(; i < to; i++) {
+            if(table[data[i] & 0xFF]) return i;
+        }
+        return to;
+    }
+
+    /**
+     * Same as {@link #nextSeparator(byte[], int, int)} for off-heap or mapped memory.
+     */
+    public long nextSeparator(MemorySegment segment, long from, long to) {
+        long i = from;
+        if(patterns != null) {
+            for(; i + Long.BYTES <= to; i += Long.BYTES) {
+                long mask = separatorMask(segment.get(SEGMENT_LONG, i));
+                if(mask != 0) {
+                    return i + (Long.numberOfTrailingZeros(mask) >>> 3);
+                }
+            }
+        }
+        for(; i < to; i++) {
+            if(table[segment.get(ValueLayout.JAVA_BYTE, i) & 0xFF]) return i;
+        }
+        return to;
+    }
+
+    // High bit set in (at least) the lowest byte of 'word' that holds a separator; 0 if none does.
+    private long separatorMask(long word) {
+        long mask = 0;
+        for(long pattern : patterns) {
+            long v = word ^ pattern;
+            mask |= (v - LOW_BITS) & ~v & HIGH_BITS;
+        }
+        return mask;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SeparatorSet other && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    // Printable form, e.g. "[ \n,;]" with control bytes escaped.
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for(byte b : bytes) {
+            int value = b & 0xFF;
+            switch(value) {
+                case '\n' -> sb.append("\\n");
+                case '\t' -> sb.append("\\t");
+                case '\r' -> sb.append("\\r");
+                case '\\' -> sb.append("\\\\");
+                default -> {
+                    if(value >= 32 && value < 127) sb.append((char) value);
+                    else sb.append(String.format("\\x%02X", value));
+                }
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -1,23 +1,28 @@
 package com.pwha.util;
 
-import java.util.HashSet;
+import java.lang.foreign.MemorySegment;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * Utility class to identify Word Separators.
  * Defines which characters (e.g., Space, Newline, Punctuation) delimit words.
- * Used by ByteReader to split the stream into processable tokens.
+ * <p>
+ * Static shortcuts for the default set ({@link SeparatorSet#DEFAULT}). The pipeline itself uses the
+ * {@link SeparatorSet} of each job, which may differ from the default.
  */
 public class SeparatorUtils {
 
-    // Hash set for O(1) lookup performance
-    private static final Set<Byte> SEPERATOR_SET = new HashSet<Byte>();
+    // The default separators as a read-only set, for callers that iterate over them.
+    private static final Set<Byte> SEPARATOR_SET;
 
-    // Static initialization block to populate the set from Constants
     static {
-        for(byte b : Constant.SEPARATORS.getBytes()){
-            SEPERATOR_SET.add(b);
+        Set<Byte> separators = new LinkedHashSet<>();
+        for(byte b : SeparatorSet.DEFAULT.toBytes()){
+            separators.add(b);
         }
+        SEPARATOR_SET = Collections.unmodifiableSet(separators);
     }
 
     private SeparatorUtils() {} // Prevent instantiation
@@ -26,10 +31,20 @@ public class SeparatorUtils {
      * Checks if a byte corresponds to a separator character.
      */
     public static boolean isSeparator(byte b){
-        return SEPERATOR_SET.contains(b);
+        return SeparatorSet.DEFAULT.isSeparator(b);
     }
 
     public static Set<Byte> getSeparators(){
-        return SEPERATOR_SET;
+        return SEPARATOR_SET;
+    }
+
+    // See SeparatorSet#nextSeparator(byte[], int, int).
+    public static int nextSeparator(byte[] data, int from, int to){
+        return SeparatorSet.DEFAULT.nextSeparator(data, from, to);
+    }
+
+    // See SeparatorSet#nextSeparator(MemorySegment, long, long).
+    public static long nextSeparator(MemorySegment segment, long from, long to){
+        return SeparatorSet.DEFAULT.nextSeparator(segment, from, to);
     }
 }
@@ -0,0 +1,71 @@
+package com.pwha.util;
+
+/**
+ * UTF-8 helpers working directly on byte arrays (no String/Charset round trip).
+ * <p>
+ * Only well-formed sequences are recognized: no overlong forms, no surrogates, nothing above
+ * U+10FFFF. Anything else is treated byte by byte, so {@link #encode(int)} always restores the
+ * exact bytes a code point was decoded from.
+ */
+public class Utf8Utils {
+
+    private Utf8Utils() {} // Prevent instantiation
+
+    /**
+     * Number of bytes announced by a lead byte: 2-4 for multi-byte leads, 1 for ASCII,
+     * continuation bytes and invalid leads (0xF5 and above can only start values beyond U+10FFFF).
+     */
+    public static int sequenceLength(int lead) {
+        lead &= 0xFF;
+        if(lead >= 0xF5) return 1;
+        if(lead >= 0xF0) return 4;
+        if(lead >= 0xE0) return 3;
+        if(lead >= 0xC0) return 2;
+        return 1;
+    }
+
+    /**
+     * Length of the well-formed multi-byte sequence starting at {@code data[from]} and ending
+     * before {@code to}, or 1 if there is none (ASCII, malformed or truncated input).
+     */
+    public static int validSequenceLength(byte[] data, int from, int to) {
+        int length = sequenceLength(data[from]);
+        if(length == 1 || from + length > to) return 1;
+        for(int i = 1; i < length; i++) {
+            if((data[from + i] & 0xC0) != 0x80) return 1;
+        }
+        int codePoint = decode(data, from, length);
+        // Reject overlong forms, surrogates and values beyond the Unicode range.
+        int minimum = length == 2 ? 0x80 : length == 3 ? 0x800 : 0x10000;
+        if(codePoint < minimum || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return 1;
+        }
+        return length;
+    }
+
+    // Code point of the sequence data[from, from + length); the sequence must be well-formed.
+    public static int decode(byte[] data, int from, int length) {
+        int codePoint = data[from] & (0xFF >>> (length + 1));
+        for(int i = 1; i < length; i++) {
+            codePoint = (codePoint << 6) | (data[from + i] & 0x3F);
+        }
+        return codePoint;
+    }
+
+    // UTF-8 bytes of a code point (U+0080 and above use the multi-byte forms).
+    public static byte[] encode(int codePoint) {
+        if(codePoint < 0x80) {
+            return new byte[]{(byte) codePoint};
+        }
+        if(codePoint < 0x800) {
+            return new byte[]{(byte) (0xC0 | codePoint >>> 6), (byte) (0x80 | codePoint & 0x3F)};
+        }
+        if(codePoint < 0x10000) {
+            return new byte[]{(byte) (0xE0 | codePoint >>> 12), (byte) (0x80 | codePoint >>> 6 & 0x3F),
+                    (byte) (0x80 | codePoint & 0x3F)};
+        }
+        return new byte[]{(byte) (0xF0 | codePoint >>> 18), (byte) (0x80 | codePoint >>> 12 & 0x3F),
+                (byte) (0x80 | codePoint >>> 6 & 0x3F), (byte) (0x80 | codePoint & 0x3F)};
+    }
+}
@@ -0,0 +1,39 @@
+package com.pwha.bench;
+
+import com.pwha.bench.CorpusGenerator.Corpus;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CorpusGeneratorTest {
+
+    @ParameterizedTest
+    @EnumSource(Corpus.class)
+    void generatesTheSameBytesEveryTime(Corpus corpus) throws Exception {
+        byte[] data = CorpusGenerator.generate(corpus, 100_000);
+        assertEquals(100_000, data.length);
+        assertArrayEquals(data, CorpusGenerator.generate(corpus, 100_000));
+
+        // A shorter corpus is a prefix of a longer one.
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CorpusGenerator.write(corpus, 1_000, out);
+        assertArrayEquals(Arrays.copyOf(data, 1_000), out.toByteArray());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = Corpus.class, names = "RANDOM", mode = EnumSource.Mode.EXCLUDE)
+    void generatesText(Corpus corpus) {
+        byte[] data = CorpusGenerator.generate(corpus, 100_000);
+        long lines = 0;
+        for(byte b : data) {
+            if(b == '\n') {
+                lines++;
+            }
+        }
+        assertTrue(lines > 0, "No line breaks in " + corpus);
+    }
+}
@@ -0,0 +1,136 @@
+package com.pwha.engine;
+
+import com.pwha.core.HuffmanStructure;
+import com.pwha.io.ByteReader;
+import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.model.node.InternalNode;
+import com.pwha.model.node.SimpleLeaf;
+import com.pwha.service.FrequencyService;
+import com.pwha.util.Constant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecoderTest {
+
+    private static final String[] WORDS = {"the", "of", "and", "decoder", "context", "pattern", "tree", "huffman",
+            "compression", "lazy", "build", "switch", "a", "is", "every", "sub-tree", "data,", "word."};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsWithLazyAndEagerSubTrees() throws Exception {
+        Path input = dir.resolve("input.txt");
+        Files.write(input, text(20_000));
+        Path compressed = dir.resolve("input.pwha");
+        encoder(Files.readAllBytes(input)).compress(input.toString(), compressed.toString());
+
+        Path lazy = dir.resolve("lazy.txt");
+        Path eager = dir.resolve("eager.txt");
+        new Decoder(true).decompress(compressed.toString(), lazy.toString());
+        new Decoder(false).decompress(compressed.toString(), eager.toString());
+
+        assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(lazy));
+        assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(eager));
+    }
+
+    @Test
+    void rebuildsTheEncodersSubTreesFromTheHeader() throws Exception {
+        Map<Integer, ContextLeaf> dictionary = dictionary(text(20_000));
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+
+        // The header is the Java serialization of the map: the sub-trees are transient.
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(header)) {
+            out.writeObject(dictionary);
+        }
+        Map<?, ?> stored;
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(header.toByteArray()))) {
+            stored = (Map<?, ?>) in.readObject();
+        }
+
+        for(ContextLeaf leaf : dictionary.values()) {
+            ContextLeaf copy = (ContextLeaf) stored.get(leaf.getSymbol());
+            assertFalse(copy.isSubTreeBuilt());
+            HuffmanStructure.ensureSubTree(copy);
+            assertEquals(codesOf(leaf.getSubTreeRoot()), codesOf(copy.getSubTreeRoot()), "Context " + leaf.getSymbol());
+        }
+    }
+
+    @Test
+    void rejectsOtherFormats() throws Exception {
+        byte[] data = text(2_000);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        encoder(data).compress(new ByteArrayInputStream(data), compressed, data.length, null);
+        byte[] file = compressed.toByteArray();
+
+        // Another format version.
+        file[4]++;
+        IOException version = assertThrows(IOException.class, () -> decode(file));
+        assertEquals("Unsupported PWHA format version: " + (Constant.FORMAT_VERSION + 1), version.getMessage());
+
+        // A headerless file: the serialized dictionary the first releases started with.
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(legacy)) {
+            out.writeObject(dictionary(data));
+        }
+        IOException magic = assertThrows(IOException.class, () -> decode(legacy.toByteArray()));
+        assertEquals("Not a PWHA file", magic.getMessage());
+    }
+
+    private static void decode(byte[] file) throws Exception {
+        new Decoder().decompress(new ByteArrayInputStream(file), OutputStream.nullOutputStream(), file.length, null);
+    }
+
+    private static Encoder encoder(byte[] data) throws IOException {
+        Map<Integer, ContextLeaf> dictionary = dictionary(data);
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+        return new Encoder(root, dictionary);
+    }
+
+    private static Map<Integer, ContextLeaf> dictionary(byte[] data) throws IOException {
+        FrequencyService service = new FrequencyService();
+        new ByteReader(service, new ByteArrayInputStream(data)).collectWords();
+        return service.getFrequencyMap();
+    }
+
+    // Pattern -> code, read off the tree ('0' left, '1' right).
+    private static Map<ByteArrayWrapper, String> codesOf(HNode root) {
+        Map<ByteArrayWrapper, String> codes = new HashMap<>();
+        collect(root, "", codes);
+        return codes;
+    }
+
+    private static void collect(HNode node, String code, Map<ByteArrayWrapper, String> codes) {
+        if(node instanceof SimpleLeaf leaf) {
+            codes.put(leaf.getPattern(), code);
+        } else if(node instanceof InternalNode internal) {
+            collect(internal.getLeft(), code + "0", codes);
+            collect(internal.getRight(), code + "1", codes);
+        }
+    }
+
+    // Seeded text over a small vocabulary, separated by spaces and the odd newline.
+    static byte[] text(int words) {
+        Random random = new Random(1);
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < words; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,141 @@
+package com.pwha.engine;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.core.HuffmanStructure;
+import com.pwha.engine.EntropyCoder.SymbolReader;
+import com.pwha.io.BitWriter;
+import com.pwha.io.ByteReader;
+import com.pwha.model.ByteArrayWrapper;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.model.node.InternalNode;
+import com.pwha.model.node.SimpleLeaf;
+import com.pwha.service.FrequencyService;
+import com.pwha.util.SeparatorSet;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The table-driven reader, at the end of a block in particular: the last byte is padded with zero bits
+ * that may look like more codes, so a run must never produce more than the bytes the Decoder asks for.
+ */
+class HuffmanCoderTest {
+
+    private static HuffmanCoder coder;
+    private static ContextLeaf context;
+    private static List<ByteArrayWrapper> patterns;
+
+    @BeforeAll
+    static void buildDictionary() throws Exception {
+        byte[] data = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+        FrequencyService service = new FrequencyService();
+        new ByteReader(service, new ByteArrayInputStream(data), data.length).collectWords();
+        Map<Integer, ContextLeaf> dictionary = service.getFrequencyMap();
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+        coder = new HuffmanCoder(root, SeparatorSet.DEFAULT);
+
+        // The context with the most patterns: short and long codes, single bytes and runs.
+        context = dictionary.values().stream()
+                .max(Comparator.comparingInt(ContextLeaf::getPatternCount))
+                .orElseThrow();
+        patterns = new ArrayList<>();
+        collect(context.getSubTreeRoot(), patterns);
+        patterns.sort(Comparator.comparing(pattern -> Arrays.toString(pattern.data())));
+        assertTrue(patterns.size() > 16, "Too few patterns: " + patterns.size());
+    }
+
+    @Test
+    void stopsRunsAtTheEndOfEveryBlock() throws Exception {
+        Random random = new Random(7);
+        for(int count = 1; count <= 200; count++) {
+            List<ByteArrayWrapper> block = new ArrayList<>();
+            for(int i = 0; i < count; i++) {
+                block.add(patterns.get(random.nextInt(patterns.size())));
+            }
+            assertDecodes(block);
+        }
+    }
+
+    @Test
+    void decodesEachPatternAlone() throws Exception {
+        for(ByteArrayWrapper pattern : patterns) {
+            assertDecodes(List.of(pattern));
+        }
+    }
+
+    @Test
+    void leavesOverlongRunsToSingleReads() throws Exception {
+        ByteArrayWrapper pattern = patterns.stream()
+                .min(Comparator.comparingInt(p -> context.getSubCode(p).length()))
+                .orElseThrow();
+        byte[] encoded = encode(List.of(pattern, pattern, pattern, pattern));
+
+        // No room for a run, not even for the first pattern.
+        byte[] out = new byte[16];
+        SymbolReader reader = coder.newReader(encoded);
+        assertEquals(0, reader.readRun(context, out, 0, pattern.length() - 1));
+        SimpleLeaf leaf = (SimpleLeaf) reader.read(context);
+        assertArrayEquals(pattern.data(), leaf.getPattern().data());
+    }
+
+    // Decodes the block the way the Decoder does: runs first, a single read when no run fits.
+    private static void assertDecodes(List<ByteArrayWrapper> block) throws Exception {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for(ByteArrayWrapper pattern : block) {
+            expected.write(pattern.data());
+        }
+        byte[] raw = expected.toByteArray();
+
+        SymbolReader reader = coder.newReader(encode(block));
+        byte[] out = new byte[raw.length];
+        int at = 0;
+        while(at < raw.length) {
+            int run = reader.readRun(context, out, at, raw.length - at);
+            assertTrue(run <= raw.length - at, "Run overruns the block");
+            if(run == 0) {
+                HNode node = reader.read(context);
+                assertInstanceOf(SimpleLeaf.class, node, "Block ended early at " + at + " of " + raw.length);
+                byte[] pattern = ((SimpleLeaf) node).getPattern().data();
+                assertTrue(pattern.length <= raw.length - at, "Pattern overruns the block");
+                System.arraycopy(pattern, 0, out, at, pattern.length);
+                run = pattern.length;
+            }
+            at += run;
+        }
+        assertArrayEquals(raw, out);
+    }
+
+    private static void collect(HNode node, List<ByteArrayWrapper> patterns) {
+        if(node instanceof SimpleLeaf leaf) {
+            patterns.add(leaf.getPattern());
+        } else if(node instanceof InternalNode internal) {
+            collect(internal.getLeft(), patterns);
+            collect(internal.getRight(), patterns);
+        }
+    }
+
+    private static byte[] encode(List<ByteArrayWrapper> block) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(BitWriter out = new BitWriter(bytes)) {
+            EntropyCoder.SymbolWriter writer = coder.newWriter(out);
+            for(ByteArrayWrapper pattern : block) {
+                writer.write(context, context.getSubCode(pattern));
+            }
+            writer.finish();
+        }
+        return bytes.toByteArray();
+    }
+}
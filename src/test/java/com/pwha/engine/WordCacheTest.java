@@ -0,0 +1,132 @@
+package com.pwha.engine;
+
+import com.pwha.engine.EntropyCoder.SymbolWriter;
+import com.pwha.model.node.ContextLeaf;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WordCacheTest {
+
+    // Passes the codes nowhere: the cache only needs them recorded.
+    private static final SymbolWriter SINK = new SymbolWriter() {
+        @Override
+        public void write(ContextLeaf table, String code) {
+        }
+
+        @Override
+        public void write(ContextLeaf table, long bits, int length) {
+        }
+
+        @Override
+        public void finish() {
+        }
+    };
+
+    @Test
+    void returnsTheRecordedBits() throws Exception {
+        WordCache cache = new WordCache(64, 16);
+        byte[] word = bytes("hello");
+        put(cache, word, "101");
+
+        int slot = find(cache, word);
+        assertTrue(slot >= 0);
+        assertEquals(0b101, cache.bits(slot));
+        assertEquals(3, cache.bitCount(slot));
+        assertEquals(-1, find(cache, bytes("hellp")));
+    }
+
+    @Test
+    void concatenatesStringAndBulkCodes() throws Exception {
+        WordCache cache = new WordCache(64, 16);
+        byte[] word = bytes("word");
+        SymbolWriter recorder = cache.record(SINK);
+        recorder.write(null, "10");
+        recorder.write(null, 0b0111, 4);
+        recorder.write(null, 0, 0); // Empty code (a single-leaf tree).
+        cache.put(word, 0, word.length, WordCache.hash(word, 0, word.length));
+
+        int slot = find(cache, word);
+        assertEquals(0b100111, cache.bits(slot));
+        assertEquals(6, cache.bitCount(slot));
+    }
+
+    @Test
+    void keepsExactly64Bits() throws Exception {
+        WordCache cache = new WordCache(64, 16);
+        byte[] fits = bytes("fits");
+        byte[] tooLong = bytes("too long");
+
+        put(cache, fits, "1".repeat(40), "0".repeat(23) + "1");
+        put(cache, tooLong, "1".repeat(40), "0".repeat(25));
+
+        int slot = find(cache, fits);
+        assertEquals(64, cache.bitCount(slot));
+        assertEquals(-1L << 24 | 1, cache.bits(slot));
+        assertEquals(-1, find(cache, tooLong));
+    }
+
+    @Test
+    void evictsWithSecondChance() throws Exception {
+        // Four entries: a single set, so every word competes for the same slots.
+        WordCache cache = new WordCache(WordCache.WAYS, 8);
+        byte[][] words = {bytes("w0"), bytes("w1"), bytes("w2"), bytes("w3"), bytes("w4"), bytes("w5")};
+        for(int i = 0; i < 4; i++) {
+            put(cache, words[i], "1");
+        }
+
+        // Referenced words get their second chance: the only unreferenced one goes.
+        for(int i = 0; i < 3; i++) {
+            assertTrue(find(cache, words[i]) >= 0);
+        }
+        put(cache, words[4], "1");
+        assertEquals(-1, find(cache, words[3]));
+
+        // The marks were cleared on the way: the next insert takes the first slot.
+        put(cache, words[5], "1");
+        assertEquals(-1, find(cache, words[0]));
+        for(int i : new int[]{1, 2, 4, 5}) {
+            assertTrue(find(cache, words[i]) >= 0, "Lost w" + i);
+        }
+    }
+
+    @Test
+    void fitsUpToMaxLength() {
+        WordCache cache = new WordCache(16, 3);
+        assertTrue(cache.fits(5, 8));
+        assertFalse(cache.fits(5, 9));
+
+        assertThrows(IllegalArgumentException.class, () -> new WordCache(16, 0));
+        assertThrows(IllegalArgumentException.class, () -> new WordCache(16, Byte.MAX_VALUE + 1));
+    }
+
+    @Test
+    void findsWordsInsideLargerBuffers() throws Exception {
+        WordCache cache = new WordCache(64, 16);
+        byte[] line = bytes("say hello world");
+        cache.record(SINK).write(null, "11");
+        cache.put(line, 4, 9, WordCache.hash(line, 4, 9));
+
+        byte[] word = bytes("hello");
+        assertEquals(WordCache.hash(line, 4, 9), WordCache.hash(word, 0, word.length));
+        assertTrue(find(cache, word) >= 0);
+    }
+
+    private static void put(WordCache cache, byte[] word, String... codes) throws Exception {
+        SymbolWriter recorder = cache.record(SINK);
+        for(String code : codes) {
+            recorder.write(null, code);
+        }
+        cache.put(word, 0, word.length, WordCache.hash(word, 0, word.length));
+    }
+
+    private static int find(WordCache cache, byte[] word) {
+        return cache.find(word, 0, word.length, WordCache.hash(word, 0, word.length));
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
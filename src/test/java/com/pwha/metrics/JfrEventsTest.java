@@ -0,0 +1,60 @@
+package com.pwha.metrics;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.service.CompressionService;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JfrEventsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsOneEventPerBlock() throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+        CompressionService service = new CompressionService(16 * 1024, 2, null);
+
+        Path dump = dir.resolve("pwha.jfr");
+        try(Recording recording = new Recording()) {
+            for(String event : new String[]{"Analysis", "SuperTreeBuild", "SubTreeBuild", "EncodeBlock", "DecodeBlock"}) {
+                recording.enable("com.pwha." + event).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            service.compress(input, compressed);
+            service.decompress(compressed.toByteArray(), new ByteArrayOutputStream());
+            recording.stop();
+            recording.dump(dump);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+        assertEquals(1, count(events, "com.pwha.Analysis"));
+        // Built by the encoder, then again from the header by the decoder.
+        assertEquals(2, count(events, "com.pwha.SuperTreeBuild"));
+        assertTrue(count(events, "com.pwha.SubTreeBuild") > 0);
+        assertEquals(4, count(events, "com.pwha.EncodeBlock"));
+        assertEquals(4, count(events, "com.pwha.DecodeBlock"));
+
+        long decoded = events.stream()
+                .filter(event -> event.getEventType().getName().equals("com.pwha.DecodeBlock"))
+                .mapToLong(event -> event.getInt("rawBytes"))
+                .sum();
+        assertEquals(input.length, decoded);
+    }
+
+    private static long count(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).count();
+    }
+}
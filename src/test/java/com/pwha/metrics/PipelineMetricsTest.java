@@ -0,0 +1,37 @@
+package com.pwha.metrics;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.service.CompressionService;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineMetricsTest {
+
+    @Test
+    void recordsEveryStageOfARoundTrip() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        CompressionService service = new CompressionService(16 * 1024, 2, null, metrics);
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        service.compress(input, compressed);
+        service.decompress(compressed.toByteArray(), new ByteArrayOutputStream());
+
+        for(Stage stage : Stage.values()) {
+            assertEquals(1L, metrics.getStageCount().get(stage.name()), stage.name());
+        }
+        assertEquals(input.length, metrics.getStageBytesIn().get(Stage.ANALYSIS.name()));
+        assertEquals(input.length, metrics.getStageBytesOut().get(Stage.DECODE.name()));
+        assertTrue(metrics.getPatternsInserted() > 0);
+        assertTrue(metrics.getGreedyWords() > 0);
+        assertTrue(metrics.getContextReport().length > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getGreedyWords());
+        assertEquals(0, metrics.getContextReport().length);
+    }
+}
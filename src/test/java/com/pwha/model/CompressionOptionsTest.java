@@ -0,0 +1,38 @@
+package com.pwha.model;
+
+import com.pwha.engine.ParseStrategy;
+import com.pwha.model.CompressionOptions.Level;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionOptionsTest {
+
+    @Test
+    void parsesLevels() {
+        assertEquals(Level.MAX, Level.parse("max"));
+        assertEquals(Level.FAST, Level.parse("FAST"));
+        assertThrows(IllegalArgumentException.class, () -> Level.parse("best"));
+        for(Level level : Level.values()) {
+            assertEquals(level, Level.fromId(level.id()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Level.fromId(7));
+    }
+
+    @Test
+    void keepsTheOtherFieldsOnOverride() {
+        CompressionOptions options = CompressionOptions.of(Level.MAX).withMaxPatternLength(4);
+        assertEquals(Level.MAX, options.level());
+        assertEquals(4, options.maxPatternLength());
+        assertEquals(CompressionOptions.of(Level.MAX).maxPatternAmount(), options.maxPatternAmount());
+        assertEquals(ParseStrategy.OPTIMAL, options.parseStrategy());
+    }
+
+    @Test
+    void rejectsInvalidValues() {
+        assertThrows(IllegalArgumentException.class, () -> CompressionOptions.defaults().withMaxPatternLength(0));
+        assertThrows(IllegalArgumentException.class, () -> CompressionOptions.defaults().withMaxPatternAmount(-1));
+        assertThrows(IllegalArgumentException.class, () -> CompressionOptions.defaults().withParseStrategy(null));
+        assertThrows(IllegalArgumentException.class, () -> CompressionOptions.defaults().withPhrases(true).withTemplates(true));
+    }
+}
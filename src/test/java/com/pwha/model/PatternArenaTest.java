@@ -0,0 +1,79 @@
+package com.pwha.model;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.core.HuffmanStructure;
+import com.pwha.io.ByteReader;
+import com.pwha.model.node.ContextLeaf;
+import com.pwha.model.node.HNode;
+import com.pwha.service.FrequencyService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatternArenaTest {
+
+    private static Map<Integer, ContextLeaf> dictionary;
+
+    @BeforeAll
+    static void buildDictionary() throws Exception {
+        byte[] data = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+        FrequencyService service = new FrequencyService();
+        new ByteReader(service, new ByteArrayInputStream(data), data.length).collectWords();
+        dictionary = service.getFrequencyMap();
+        HNode root = HuffmanStructure.buildSuperTree(HuffmanStructure.setQueue(dictionary));
+        HuffmanStructure.buildDictionary(root, "", dictionary);
+    }
+
+    @Test
+    void findsEveryCodeOfTheDictionary() {
+        try(PatternArena arena = PatternArena.compile(dictionary)) {
+            int patterns = 0;
+            for(ContextLeaf leaf : dictionary.values()) {
+                for(Map.Entry<ByteArrayWrapper, String> entry : leaf.getSubDictionary().entrySet()) {
+                    byte[] pattern = entry.getKey().data();
+                    String code = entry.getValue();
+                    long slot = arena.find(leaf.getSymbol(), pattern, 0, pattern.length);
+                    assertTrue(slot >= 0, "Missing pattern in context " + leaf.getSymbol());
+                    assertEquals(code.length(), arena.codeLength(slot));
+                    assertEquals(code.isEmpty() ? 0 : Long.parseUnsignedLong(code, 2), arena.codeBits(slot));
+                    patterns++;
+                }
+            }
+            assertEquals(patterns, arena.size());
+            assertTrue(arena.byteSize() > 0);
+        }
+    }
+
+    @Test
+    void findsPatternsInsideLargerBuffers() {
+        ContextLeaf leaf = dictionary.values().stream().filter(l -> l.getPatternCount() > 0).findFirst().orElseThrow();
+        Map.Entry<ByteArrayWrapper, String> entry = leaf.getSubDictionary().entrySet().iterator().next();
+        byte[] pattern = entry.getKey().data();
+        byte[] buffer = new byte[pattern.length + 6];
+        System.arraycopy(pattern, 0, buffer, 3, pattern.length);
+
+        try(PatternArena arena = PatternArena.compile(dictionary)) {
+            assertEquals(arena.find(leaf.getSymbol(), pattern, 0, pattern.length),
+                    arena.find(leaf.getSymbol(), buffer, 3, 3 + pattern.length));
+            byte[] unknown = "\u0001\u0002\u0003".getBytes(StandardCharsets.US_ASCII);
+            assertEquals(-1, arena.find(leaf.getSymbol(), unknown, 0, unknown.length));
+        }
+    }
+
+    @Test
+    void failsLookupsAfterClose() {
+        PatternArena arena = PatternArena.compile(dictionary);
+        byte[] word = "the".getBytes(StandardCharsets.US_ASCII);
+        arena.find('t', word, 1, 3);
+        arena.close();
+
+        assertThrows(IllegalStateException.class, () -> arena.find('t', word, 1, 3));
+        assertThrows(IllegalStateException.class, () -> arena.codeBits(0));
+    }
+}
@@ -0,0 +1,74 @@
+package com.pwha.service;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.model.CompressionOptions;
+import com.pwha.service.AutoTuner.Candidate;
+import com.pwha.service.AutoTuner.Result;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AutoTunerTest {
+
+    private static final int SAMPLE_SIZE = 16 * 1024;
+
+    @Test
+    void picksTheSmallestEstimateWithoutBudget() throws Exception {
+        Result result = new AutoTuner(2, 8, SAMPLE_SIZE, AutoTuner.defaultGrid())
+                .tune(CorpusGenerator.generate(Corpus.ENGLISH, 256 * 1024), null);
+
+        assertEquals(AutoTuner.defaultGrid().size(), result.candidates().size());
+        long smallest = result.candidates().stream().mapToLong(Candidate::estimatedBytes).min().orElseThrow();
+        assertEquals(smallest, result.best().estimatedBytes());
+        assertEquals(8L * SAMPLE_SIZE, result.sampleBytes());
+    }
+
+    @Test
+    void estimatesTheCompressedSize() throws Exception {
+        // Small enough to be sampled whole: the estimate covers exactly what the Encoder writes, header included.
+        byte[] input = CorpusGenerator.generate(Corpus.LOGS, 4 * SAMPLE_SIZE);
+        List<CompressionOptions> grid = List.of(CompressionOptions.defaults(), CompressionOptions.of(CompressionOptions.Level.FAST),
+                CompressionOptions.defaults().withTemplates(true));
+        Result result = new AutoTuner(2, 8, SAMPLE_SIZE, grid).tune(input, null);
+
+        for(Candidate candidate : result.candidates()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new CompressionService(SAMPLE_SIZE, 1, candidate.options(), null, MetricsListener.NOOP).compress(input, out);
+            assertEquals(out.size(), candidate.estimatedBytes(), out.size() * 0.002, candidate.options().toString());
+        }
+    }
+
+    @Test
+    void fallsBackToTheFastestCandidateOverBudget() throws Exception {
+        // No candidate compresses anything in a nanosecond.
+        Result result = new AutoTuner(2, 4, SAMPLE_SIZE, AutoTuner.defaultGrid())
+                .tune(CorpusGenerator.generate(Corpus.ENGLISH, 256 * 1024), Duration.ofNanos(1));
+
+        if(!result.candidates().isEmpty()) {
+            Candidate fastest = result.candidates().stream().min(Comparator.comparingLong(Candidate::predictedNanos)).orElseThrow();
+            assertEquals(fastest, result.best());
+        } else {
+            assertEquals(CompressionOptions.Level.FAST, result.best().options().level());
+        }
+    }
+
+    @Test
+    void keepsTheDefaultsForEmptyInput() throws Exception {
+        Result result = new AutoTuner().tune(new byte[0], null);
+        assertEquals(CompressionOptions.defaults(), result.best().options());
+        assertEquals(0, result.sampleBytes());
+    }
+
+    @Test
+    void rejectsEmptyGrids() {
+        assertThrows(IllegalArgumentException.class, () -> new AutoTuner(1, 1, SAMPLE_SIZE, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> new AutoTuner(1, 0, SAMPLE_SIZE, AutoTuner.defaultGrid()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.pwha.service;
+
+import com.pwha.metrics.MetricsListener;
+import com.pwha.model.CompressionOptions;
+import com.pwha.service.BatchCompressor.CompressionJob;
+import com.pwha.service.BatchCompressor.JobResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCompressorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTripsEveryJob() throws Exception {
+        List<Path> inputs = new ArrayList<>();
+        for(int i = 0; i < 12; i++) {
+            Path input = dir.resolve("in/file" + i + ".txt");
+            Files.createDirectories(input.getParent());
+            Files.write(input, text(i, 4 * 1024 + i * 513));
+            inputs.add(input);
+        }
+
+        try(BatchCompressor batch = new BatchCompressor(2, 3, 1024)) {
+            List<CompletableFuture<JobResult>> jobs = batch.submitAll(inputs.stream()
+                    .map(input -> new CompressionJob(input, dir.resolve("out").resolve(input.getFileName() + ".pwha"))));
+            for(CompletableFuture<JobResult> job : jobs) {
+                JobResult result = job.get();
+                assertEquals(Files.size(result.input()), result.inputBytes());
+                assertEquals(Files.size(result.output()), result.outputBytes());
+                // The queue never holds more than maxPendingJobs.
+                assertTrue(batch.getQueueDepth() <= 3);
+            }
+
+            for(Path input : inputs) {
+                Path restored = dir.resolve("restored").resolve(input.getFileName());
+                batch.submitDecompression(dir.resolve("out").resolve(input.getFileName() + ".pwha"), restored).get();
+                assertArrayEquals(Files.readAllBytes(input), Files.readAllBytes(restored));
+            }
+
+            BatchCompressor.Stats stats = batch.getStats();
+            assertEquals(24, stats.completed());
+            assertEquals(0, stats.failed());
+            assertTrue(stats.p50Nanos() <= stats.p99Nanos());
+        }
+    }
+
+    @Test
+    void countsFailedJobs() throws Exception {
+        try(BatchCompressor batch = new BatchCompressor(1, 2, 1024)) {
+            CompletableFuture<JobResult> job = batch.submit(dir.resolve("missing.txt"), dir.resolve("missing.pwha"));
+            assertThrows(ExecutionException.class, job::get);
+
+            // The permit came back: the queue is empty again.
+            assertEquals(0, batch.getQueueDepth());
+            assertEquals(1, batch.getStats().failed());
+        }
+    }
+
+    @Test
+    void restoresTheInterruptOnClose() {
+        BatchCompressor batch = new BatchCompressor(1, 2, 1024);
+        Thread.currentThread().interrupt();
+        batch.close();
+        // Thread.interrupted() also clears the flag again for the next tests.
+        assertTrue(Thread.interrupted(), "The interrupt was swallowed");
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void runsThePreflightOnlyWhenEnabled(boolean preflight) throws Exception {
+        Path input = dir.resolve("input.txt");
+        Files.write(input, text(0, 8 * 1024));
+        AtomicInteger verdicts = new AtomicInteger();
+        MetricsListener metrics = new MetricsListener() {
+            @Override
+            public void preflightCompleted(String decision, double entropy, double separatorDensity) {
+                verdicts.incrementAndGet();
+            }
+        };
+
+        try(BatchCompressor batch = new BatchCompressor(1, 2, 1024, CompressionOptions.defaults(), preflight, metrics)) {
+            batch.submit(input, dir.resolve("input.pwha")).get();
+        }
+        assertEquals(preflight ? 1 : 0, verdicts.get());
+    }
+
+    @Test
+    void rejectsEmptyPools() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchCompressor(0, 1, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new BatchCompressor(1, 0, 1024));
+    }
+
+    private static byte[] text(int seed, int size) {
+        StringBuilder text = new StringBuilder();
+        IntStream.iterate(seed, i -> i + 1).takeWhile(i -> text.length() < size)
+                .forEach(i -> text.append("line ").append(i % 97).append(" of file ").append(seed).append('\n'));
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
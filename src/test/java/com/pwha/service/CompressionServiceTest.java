@@ -0,0 +1,361 @@
+package com.pwha.service;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.engine.EntropyCoder;
+import com.pwha.engine.ParseStrategy;
+import com.pwha.metrics.MetricsListener;
+import com.pwha.metrics.PipelineMetrics;
+import com.pwha.model.CompressionOptions;
+import com.pwha.model.CompressionOptions.Level;
+import com.pwha.model.CompressionResult;
+import com.pwha.tokenizer.Tokenizers;
+import com.pwha.util.SeparatorSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round trips through the whole pipeline, across block boundaries and worker threads.
+ */
+class CompressionServiceTest {
+
+    // Small blocks, so every input spans several of them.
+    private static final int BLOCK_SIZE = 16 * 1024;
+
+    @TempDir
+    Path dir;
+
+    static Stream<Arguments> formats() {
+        List<Arguments> formats = new ArrayList<>();
+        for(Corpus corpus : new Corpus[]{Corpus.ENGLISH, Corpus.LOGS}) {
+            for(EntropyCoder.Backend coder : EntropyCoder.Backend.values()) {
+                for(int order = 1; order <= 2; order++) {
+                    for(String mode : new String[]{"words", "phrases", "templates"}) {
+                        for(boolean offHeap : new boolean[]{false, true}) {
+                            formats.add(Arguments.of(corpus, coder, order, mode, offHeap));
+                        }
+                    }
+                }
+            }
+        }
+        return formats.stream();
+    }
+
+    @ParameterizedTest(name = "{0} {1} order={2} {3} offHeap={4}")
+    @MethodSource("formats")
+    void roundTripsEveryFormat(Corpus corpus, EntropyCoder.Backend coder, int order, String mode, boolean offHeap) throws Exception {
+        CompressionOptions options = CompressionOptions.defaults()
+                .withCoder(coder)
+                .withContextOrder(order)
+                .withPhrases(mode.equals("phrases"))
+                .withTemplates(mode.equals("templates"))
+                .withOffHeap(offHeap);
+        byte[] input = CorpusGenerator.generate(corpus, 64 * 1024);
+
+        CompressionResult result = roundTrip(new CompressionService(BLOCK_SIZE, 2, options, null, MetricsListener.NOOP), input);
+        assertTrue(result.contextCount() > 0, "The dictionary was skipped");
+    }
+
+    // The frequent pairs get contexts of their own, on top of the order-1 ones.
+    @Test
+    void addsPairContextsAtOrder2() throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 128 * 1024);
+        long order1 = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), null, MetricsListener.NOOP), input)
+                .contextCount();
+        long order2 = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults().withContextOrder(2), null,
+                MetricsListener.NOOP), input).contextCount();
+        assertTrue(order2 > order1, "Order 2: " + order2 + ", order 1: " + order1);
+    }
+
+    // Log lines repeat whole runs of tokens: some of them become phrase leaves.
+    @Test
+    void selectsPhrasesForRepeatedRuns() throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.LOGS, 256 * 1024);
+        CompressionOptions phrases = CompressionOptions.defaults().withPhrases(true);
+
+        CompressionResult words = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), null,
+                MetricsListener.NOOP), input);
+        CompressionResult withPhrases = roundTrip(new CompressionService(BLOCK_SIZE, 2, phrases, null, MetricsListener.NOOP), input);
+        assertTrue(withPhrases.contextCount() > words.contextCount(), "No phrase was selected");
+    }
+
+    @Test
+    void codesLogLinesByTemplate() throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.LOGS, 256 * 1024);
+        CompressionOptions templates = CompressionOptions.defaults().withTemplates(true);
+
+        long words = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), null, MetricsListener.NOOP), input)
+                .compressedSize();
+        long templated = roundTrip(new CompressionService(BLOCK_SIZE, 2, templates, null, MetricsListener.NOOP), input)
+                .compressedSize();
+        assertTrue(templated < words, "Templates: " + templated + ", words: " + words);
+    }
+
+    // The off-heap table only changes where the codes are looked up.
+    @ParameterizedTest
+    @EnumSource(EntropyCoder.Backend.class)
+    void writesTheSameFileOffHeap(EntropyCoder.Backend coder) throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.SOURCE, 64 * 1024);
+        CompressionOptions options = CompressionOptions.defaults().withCoder(coder).withParseStrategy(ParseStrategy.OPTIMAL);
+
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        new CompressionService(BLOCK_SIZE, 2, options, null, MetricsListener.NOOP).compress(input, heap);
+        ByteArrayOutputStream offHeap = new ByteArrayOutputStream();
+        new CompressionService(BLOCK_SIZE, 2, options.withOffHeap(true), null, MetricsListener.NOOP).compress(input, offHeap);
+        assertArrayEquals(heap.toByteArray(), offHeap.toByteArray());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Corpus.class)
+    void roundTripsEveryCorpus(Corpus corpus) throws Exception {
+        roundTrip(new CompressionService(BLOCK_SIZE, 2, null), CorpusGenerator.generate(corpus, 64 * 1024));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    void roundTripsOnWorkerThreads(int threads) throws Exception {
+        List<String> log = new ArrayList<>();
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+
+        CompressionResult result = roundTrip(new CompressionService(BLOCK_SIZE, threads, log::add), input);
+        assertEquals(input.length, result.originalSize());
+        assertTrue(result.contextCount() > 0);
+        assertTrue(log.contains("Stage 3: Compressing..."), log.toString());
+    }
+
+    // Blocks that end inside words and separator runs.
+    @ParameterizedTest
+    @ValueSource(ints = {1, 7, 100, 1000})
+    void roundTripsTinyBlocks(int blockSize) throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 8 * 1024);
+        for(EntropyCoder.Backend coder : EntropyCoder.Backend.values()) {
+            CompressionOptions options = CompressionOptions.defaults().withCoder(coder);
+            roundTrip(new CompressionService(blockSize, 1, options, false, null, MetricsListener.NOOP), input);
+        }
+    }
+
+    @Test
+    void roundTripsEmptyInput() throws Exception {
+        roundTrip(new CompressionService(), new byte[0]);
+    }
+
+    // Same dictionary, same header: only the split of the words differs.
+    @ParameterizedTest
+    @EnumSource(value = Corpus.class, names = {"ENGLISH", "LOGS", "SOURCE"})
+    void optimalParseIsNeverLargerThanGreedy(Corpus corpus) throws Exception {
+        byte[] input = CorpusGenerator.generate(corpus, 64 * 1024);
+        long greedy = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), null, MetricsListener.NOOP), input)
+                .compressedSize();
+        long optimal = roundTrip(new CompressionService(BLOCK_SIZE, 2,
+                CompressionOptions.defaults().withParseStrategy(ParseStrategy.OPTIMAL), null, MetricsListener.NOOP), input)
+                .compressedSize();
+        assertTrue(optimal <= greedy, "Optimal: " + optimal + ", greedy: " + greedy);
+    }
+
+    // The level is read back from the header: the decoding service uses its own defaults.
+    @ParameterizedTest
+    @EnumSource(Level.class)
+    void roundTripsEveryLevel(Level level) throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024);
+        roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.of(level), null, MetricsListener.NOOP),
+                new CompressionService(), input);
+    }
+
+    @Test
+    void storesIncompressibleBlocks() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        byte[] input = CorpusGenerator.generate(Corpus.RANDOM, 128 * 1024);
+
+        // Without the preflight, the analysis skips the noise and the Encoder stores every block:
+        // no dictionary, no expansion.
+        CompressionResult result = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), false, null, metrics), input);
+        assertEquals(8, metrics.getStoredBlocks());
+        assertEquals(input.length, metrics.getStoredBytes());
+        assertEquals(0, result.patternCount());
+        assertTrue(result.compressedSize() < input.length + 1024, "Stored size: " + result.compressedSize());
+    }
+
+    // Text blocks are coded, noise blocks are stored, both in the same file.
+    @Test
+    void storesOnlyTheIncompressibleBlocks() throws Exception {
+        PipelineMetrics metrics = new PipelineMetrics();
+        byte[] text = CorpusGenerator.generate(Corpus.ENGLISH, 2 * BLOCK_SIZE);
+        byte[] noise = CorpusGenerator.generate(Corpus.RANDOM, 2 * BLOCK_SIZE);
+        byte[] input = new byte[text.length + noise.length];
+        System.arraycopy(text, 0, input, 0, text.length);
+        System.arraycopy(noise, 0, input, text.length, noise.length);
+
+        roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), false, null, metrics), input);
+        assertEquals(2, metrics.getStoredBlocks());
+    }
+
+    // Words split at the limit, separators right after a split, and the decoder splitting at the same place.
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 5, 256})
+    void roundTripsLongWords(int maxTokenLength) throws Exception {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < 200; i++) {
+            text.append("x".repeat(i)).append(i % 3 == 0 ? "abcde " : " ");
+        }
+        byte[] input = (text + "y".repeat(40_000)).getBytes(StandardCharsets.US_ASCII);
+        CompressionOptions options = CompressionOptions.defaults().withMaxTokenLength(maxTokenLength);
+
+        roundTrip(new CompressionService(BLOCK_SIZE, 2, options, false, null, MetricsListener.NOOP), input);
+    }
+
+    // The separators are read back from the header.
+    @Test
+    void roundTripsCustomSeparators() throws Exception {
+        byte[] input = CorpusGenerator.generate(Corpus.CSV, 64 * 1024);
+        CompressionOptions options = CompressionOptions.defaults().withSeparators(SeparatorSet.of(",\\n"));
+
+        roundTrip(new CompressionService(BLOCK_SIZE, 2, options, false, null, MetricsListener.NOOP), new CompressionService(), input);
+    }
+
+    @Test
+    void codesSeparatorFreeInputBytePerByte() throws Exception {
+        List<String> log = new ArrayList<>();
+        CompressionOptions options = CompressionOptions.defaults().withContextOrder(2).withCoder(EntropyCoder.Backend.RANS);
+
+        CompressionResult result = roundTrip(new CompressionService(BLOCK_SIZE, 1, options, log::add, MetricsListener.NOOP), hex(64 * 1024));
+        assertTrue(log.stream().anyMatch(line -> line.startsWith("Preflight : single_byte")), log.toString());
+        // The patterns are dropped, the caller's other options are kept.
+        assertTrue(log.stream().anyMatch(line -> line.contains("length=1,") && line.contains("order=2") && line.contains("rans")),
+                log.toString());
+        // Hex digits take 4 bits, plus the header.
+        assertTrue(result.compressedSize() < 48 * 1024, "Single-byte size: " + result.compressedSize());
+    }
+
+    @Test
+    void analysesMixedInput() throws Exception {
+        List<String> log = new ArrayList<>();
+        byte[] text = CorpusGenerator.generate(Corpus.ENGLISH, 256 * 1024);
+        byte[] noise = CorpusGenerator.generate(Corpus.RANDOM, 256 * 1024);
+        byte[] input = new byte[text.length + noise.length];
+        System.arraycopy(text, 0, input, 0, text.length);
+        System.arraycopy(noise, 0, input, text.length, noise.length);
+
+        CompressionResult result = roundTrip(new CompressionService(BLOCK_SIZE, 2, log::add), input);
+        assertTrue(log.stream().anyMatch(line -> line.startsWith("Preflight : pattern")), log.toString());
+        // The text is coded as if it were alone, the noise is stored.
+        long textAlone = roundTrip(new CompressionService(BLOCK_SIZE, 2, null), text).compressedSize();
+        assertTrue(result.compressedSize() < textAlone + noise.length + 1024,
+                "Mixed size: " + result.compressedSize() + ", text alone: " + textAlone);
+    }
+
+    // The tokenizer is read back from the header.
+    @ParameterizedTest
+    @ValueSource(strings = {"text", "utf8", "log", "csv"})
+    void roundTripsEveryTokenizer(String name) throws Exception {
+        CompressionOptions options = CompressionOptions.defaults().withTokenizer(Tokenizers.byName(name)).withMaxTokenLength(7);
+        for(Corpus corpus : new Corpus[]{Corpus.LOGS, Corpus.CSV}) {
+            byte[] input = CorpusGenerator.generate(corpus, 64 * 1024);
+            roundTrip(new CompressionService(BLOCK_SIZE, 2, options, false, null, MetricsListener.NOOP), new CompressionService(), input);
+        }
+    }
+
+    // Words starting with multi-byte characters get one context per character instead of per lead byte.
+    @Test
+    void keysUtf8ContextsByCodePoint() throws Exception {
+        byte[] input = multilingual(128 * 1024);
+        CompressionOptions utf8 = CompressionOptions.defaults().withTokenizer(Tokenizers.UTF8);
+
+        CompressionResult bytes = roundTrip(new CompressionService(BLOCK_SIZE, 2, CompressionOptions.defaults(), false, null,
+                MetricsListener.NOOP), input);
+        CompressionResult codePoints = roundTrip(new CompressionService(BLOCK_SIZE, 2, utf8, false, null, MetricsListener.NOOP),
+                new CompressionService(), input);
+        assertTrue(codePoints.contextCount() > bytes.contextCount(),
+                "Code point contexts: " + codePoints.contextCount() + ", byte contexts: " + bytes.contextCount());
+    }
+
+    // Invalid leads, overlongs, surrogates, values beyond U+10FFFF and truncated tails stay byte contexts.
+    @Test
+    void roundTripsMalformedUtf8() throws Exception {
+        byte[][] malformed = {
+                {(byte) 0xFB, (byte) 0xB8, (byte) 0xBD, (byte) 0xB8}, {(byte) 0xFF, (byte) 0x80}, {(byte) 0xF8, (byte) 0x88, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xC0, (byte) 0x80}, {(byte) 0xE0, (byte) 0x80, (byte) 0x80}, {(byte) 0xF0, (byte) 0x80, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xED, (byte) 0xA0, (byte) 0x80}, {(byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80},
+                {(byte) 0xE2, (byte) 0x82}, {(byte) 0xF0, (byte) 0x9F, (byte) 0x98}, {(byte) 0xC3}};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Random random = new Random(42);
+        while(out.size() < 64 * 1024) {
+            out.writeBytes(malformed[random.nextInt(malformed.length)]);
+            out.writeBytes("x ".getBytes(StandardCharsets.US_ASCII));
+            out.writeBytes("é€😀 ".getBytes(StandardCharsets.UTF_8));
+        }
+        // Ends on a truncated sequence.
+        out.writeBytes(new byte[]{(byte) 0xF0, (byte) 0x9F});
+        CompressionOptions utf8 = CompressionOptions.defaults().withTokenizer(Tokenizers.UTF8).withMaxTokenLength(5);
+
+        roundTrip(new CompressionService(1000, 2, utf8, false, null, MetricsListener.NOOP), new CompressionService(), out.toByteArray());
+    }
+
+    @Test
+    void reportsProgressUpToCompletion() throws Exception {
+        Path input = dir.resolve("input.txt");
+        Files.write(input, CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024));
+        List<Double> progress = new ArrayList<>();
+
+        new CompressionService(BLOCK_SIZE, 2, null).compress(input.toString(), dir.resolve("input.pwha").toString(), progress::add);
+        assertEquals(100.0, progress.get(progress.size() - 1));
+        for(int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) >= progress.get(i - 1), "Progress went back: " + progress);
+        }
+    }
+
+    private CompressionResult roundTrip(CompressionService service, byte[] data) throws Exception {
+        return roundTrip(service, service, data);
+    }
+
+    private CompressionResult roundTrip(CompressionService compressor, CompressionService decompressor, byte[] data) throws Exception {
+        Path input = dir.resolve("input.txt");
+        Path compressed = dir.resolve("input.pwha");
+        Path restored = dir.resolve("restored.txt");
+        Files.write(input, data);
+
+        CompressionResult result = compressor.compress(input.toString(), compressed.toString(), null);
+        assertEquals(Files.size(compressed), result.compressedSize());
+        decompressor.decompress(compressed.toString(), restored.toString(), null);
+        assertArrayEquals(data, Files.readAllBytes(restored));
+        return result;
+    }
+
+    // Seeded Turkish, Cyrillic and CJK words: two and three byte characters at the start of words.
+    private static byte[] multilingual(int size) {
+        String[] words = {"çalışma", "öğrenci", "şehir", "ışık", "üzüm", "ğ", "привет", "мир", "книга", "язык",
+                "漢字", "日本語", "中文", "文字", "the", "and", "of"};
+        Random random = new Random(11);
+        StringBuilder text = new StringBuilder();
+        while(text.length() < size / 2) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(10) == 0 ? '\n' : ' ');
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Random hex digits: low entropy, but no separator to split words at.
+    private static byte[] hex(int size) {
+        Random random = new Random(42);
+        byte[] digits = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[size];
+        for(int i = 0; i < size; i++) {
+            data[i] = digits[random.nextInt(digits.length)];
+        }
+        return data;
+    }
+}
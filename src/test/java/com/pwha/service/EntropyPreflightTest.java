@@ -0,0 +1,46 @@
+package com.pwha.service;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.service.EntropyPreflight.Decision;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EntropyPreflightTest {
+
+    // Four samples of 4 KB.
+    private final EntropyPreflight preflight = new EntropyPreflight(4, 4096);
+
+    @Test
+    void keepsPatternsForText() throws IOException {
+        assertEquals(Decision.PATTERN, decide(CorpusGenerator.generate(Corpus.ENGLISH, 64 * 1024)));
+    }
+
+    @Test
+    void storesRandomData() throws IOException {
+        assertEquals(Decision.STORED, decide(CorpusGenerator.generate(Corpus.RANDOM, 64 * 1024)));
+    }
+
+    @Test
+    void keepsPatternsUnlessEverySampleAgrees() throws IOException {
+        // One sample of text among three of noise: the text still needs its patterns.
+        byte[] input = CorpusGenerator.generate(Corpus.RANDOM, 64 * 1024);
+        byte[] text = CorpusGenerator.generate(Corpus.ENGLISH, 16 * 1024);
+        System.arraycopy(text, 0, input, 32 * 1024, text.length);
+
+        assertEquals(Decision.PATTERN, decide(input));
+    }
+
+    @Test
+    void keepsPatternsForEmptyInput() throws IOException {
+        assertEquals(Decision.PATTERN, decide(new byte[0]));
+    }
+
+    private Decision decide(byte[] input) throws IOException {
+        return preflight.run(new ByteArrayInputStream(input), input.length).decision();
+    }
+}
@@ -0,0 +1,69 @@
+package com.pwha.service;
+
+import com.pwha.model.TemplateTable;
+import com.pwha.util.Constant;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateMinerTest {
+
+    @Test
+    void turnsTheVaryingFieldsIntoWildcards() {
+        TemplateMiner miner = new TemplateMiner();
+        for(int i = 0; i < 20; i++) {
+            add(miner, "2024-01-0" + (i % 9 + 1) + " INFO user " + (i % 2 == 0 ? "alice" : "bob") + " logged in");
+        }
+
+        TemplateTable table = miner.selectTemplates();
+        assertNotNull(table);
+        assertEquals(1, table.size());
+        assertArrayEquals(new String[]{null, "INFO", "user", null, "logged", "in"}, fields(table.get(0)));
+
+        assertEquals(0, match(table, "2025-12-31 INFO user carol logged in"));
+        assertEquals(-1, match(table, "2025-12-31 WARN user carol logged in"));
+        assertEquals(-1, match(table, "2025-12-31 INFO user carol logged in twice"));
+    }
+
+    @Test
+    void skipsRareGroups() {
+        TemplateMiner miner = new TemplateMiner();
+        for(int i = 0; i < Constant.MIN_TEMPLATE_LINES - 1; i++) {
+            add(miner, "job " + i + " finished");
+        }
+        assertNull(miner.selectTemplates());
+    }
+
+    @Test
+    void rejectsLinesWithEmptyFields() {
+        int[] starts = new int[Constant.MAX_TEMPLATE_FIELDS];
+        int[] ends = new int[Constant.MAX_TEMPLATE_FIELDS];
+        for(String line : new String[]{"", " leading", "trailing ", "two  spaces"}) {
+            byte[] data = line.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(-1, TemplateTable.splitFields(data, 0, data.length, starts, ends), "'" + line + "'");
+        }
+    }
+
+    private static void add(TemplateMiner miner, String line) {
+        byte[] data = line.getBytes(StandardCharsets.US_ASCII);
+        miner.addLine(data, 0, data.length);
+    }
+
+    private static int match(TemplateTable table, String line) {
+        byte[] data = line.getBytes(StandardCharsets.US_ASCII);
+        int[] starts = new int[Constant.MAX_TEMPLATE_FIELDS];
+        int[] ends = new int[Constant.MAX_TEMPLATE_FIELDS];
+        int fields = TemplateTable.splitFields(data, 0, data.length, starts, ends);
+        return table.match(data, starts, ends, fields);
+    }
+
+    private static String[] fields(byte[][] template) {
+        String[] fields = new String[template.length];
+        for(int i = 0; i < template.length; i++) {
+            fields[i] = template[i] == null ? null : new String(template[i], StandardCharsets.US_ASCII);
+        }
+        return fields;
+    }
+}
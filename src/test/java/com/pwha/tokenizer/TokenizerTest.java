@@ -0,0 +1,104 @@
+package com.pwha.tokenizer;
+
+import com.pwha.bench.CorpusGenerator;
+import com.pwha.bench.CorpusGenerator.Corpus;
+import com.pwha.tokenizer.Tokenizer.TokenVisitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenizerTest {
+
+    // Turkish, Greek, CJK and emoji: two, three and four byte sequences next to ASCII.
+    private static final String MULTI_BYTE = "Çalışkan öğrenciler şöyle düşündü; Ελληνικά κείμενα, 漢字かな混じり文 😀🚀 mixed with ascii words.\n";
+
+    static List<Tokenizer> tokenizers() {
+        return Tokenizers.available();
+    }
+
+    @ParameterizedTest
+    @MethodSource("tokenizers")
+    void coversTheBlockInOrder(Tokenizer tokenizer) throws Exception {
+        byte[] data = CorpusGenerator.generate(Corpus.LOGS, 32 * 1024);
+        for(int maxTokenLength : new int[]{1, 4, 256}) {
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            List<Integer> lengths = new ArrayList<>();
+            tokenizer.tokenize(data, data.length, maxTokenLength, new TokenVisitor() {
+                @Override
+                public void word(byte[] block, int from, int to) {
+                    assertEquals(joined.size(), from, "Gap before a word");
+                    joined.write(block, from, to - from);
+                    lengths.add(to - from);
+                }
+
+                @Override
+                public void separator(byte[] block, int index, int wordStart) {
+                    assertEquals(joined.size(), index, "Gap before a separator");
+                    assertTrue(tokenizer.separators().isSeparator(block[index]));
+                    joined.write(block[index]);
+                }
+            });
+            assertArrayEquals(data, joined.toByteArray());
+            assertTrue(lengths.stream().allMatch(length -> length > 0 && length <= maxTokenLength), lengths.toString());
+        }
+    }
+
+    @Test
+    void neverSplitsACodePoint() throws Exception {
+        byte[] data = MULTI_BYTE.repeat(50).replace(" ", "").getBytes(StandardCharsets.UTF_8);
+        for(int maxTokenLength = 4; maxTokenLength <= 12; maxTokenLength++) {
+            for(byte[] word : words(Tokenizers.UTF8, data, maxTokenLength)) {
+                try {
+                    StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(word));
+                } catch(CharacterCodingException e) {
+                    fail("Split inside a character at maxTokenLength " + maxTokenLength);
+                }
+            }
+        }
+    }
+
+    @Test
+    void boundsMalformedWords() throws Exception {
+        // Continuation bytes only: no code point ever ends, the limit still does.
+        byte[] data = new byte[100];
+        Arrays.fill(data, (byte) 0x80);
+        for(byte[] word : words(Tokenizers.UTF8, data, 8)) {
+            assertTrue(word.length <= 8);
+        }
+    }
+
+    @Test
+    void resolvesBuiltInTokenizers() {
+        for(Tokenizer tokenizer : Tokenizers.available()) {
+            assertSame(tokenizer, Tokenizers.byId(tokenizer.id()));
+            assertSame(tokenizer, Tokenizers.byName(tokenizer.name().toUpperCase()));
+        }
+        assertThrows(IllegalArgumentException.class, () -> Tokenizers.byId(127));
+        assertThrows(IllegalArgumentException.class, () -> Tokenizers.byName("xml"));
+    }
+
+    private static List<byte[]> words(Tokenizer tokenizer, byte[] data, int maxTokenLength) throws Exception {
+        List<byte[]> words = new ArrayList<>();
+        tokenizer.tokenize(data, data.length, maxTokenLength, new TokenVisitor() {
+            @Override
+            public void word(byte[] block, int from, int to) {
+                words.add(Arrays.copyOfRange(block, from, to));
+            }
+
+            @Override
+            public void separator(byte[] block, int index, int wordStart) {
+            }
+        });
+        return words;
+    }
+}
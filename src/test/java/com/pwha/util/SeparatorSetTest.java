@@ -0,0 +1,99 @@
+package com.pwha.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The word-at-a-time scan against a byte-by-byte reference, on every alignment and tail length.
+ */
+class SeparatorSetTest {
+
+    // The default, single bytes, high bytes, and sets at and above the SWAR limit.
+    static Stream<SeparatorSet> sets() {
+        return Stream.of(SeparatorSet.DEFAULT,
+                SeparatorSet.of(" "),
+                SeparatorSet.of(new byte[]{0, (byte) 0x80, (byte) 0xFF}),
+                SeparatorSet.of("|,;:\\t\\n=&"),
+                SeparatorSet.of(" \\n\\t.,;!?()[]{}<>"));
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void findsTheSameSeparatorAsTheTable(SeparatorSet separators) {
+        byte[] members = separators.toBytes();
+        Random random = new Random(3);
+        byte[] data = new byte[64];
+        for(int round = 0; round < 2000; round++) {
+            // Mostly non-separators, with bytes from the whole range (high bits, 0x00, 0xFF...).
+            for(int i = 0; i < data.length; i++) {
+                data[i] = random.nextInt(8) == 0 ? members[random.nextInt(members.length)] : (byte) random.nextInt(256);
+            }
+            int from = random.nextInt(data.length);
+            int to = from + random.nextInt(data.length - from + 1);
+            assertEquals(naive(separators, data, from, to), separators.nextSeparator(data, from, to), "Round " + round);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void findsEverySeparatorAtEveryPosition(SeparatorSet separators) {
+        byte filler = 0x41;
+        while(separators.isSeparator(filler)) filler++;
+        for(byte separator : separators.toBytes()) {
+            for(int at = 0; at < 24; at++) {
+                byte[] data = new byte[24];
+                Arrays.fill(data, filler);
+                data[at] = separator;
+                assertEquals(at, separators.nextSeparator(data, 0, data.length));
+                assertEquals(data.length, separators.nextSeparator(data, at + 1, data.length));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("sets")
+    void scansMemorySegmentsLikeArrays(SeparatorSet separators) {
+        Random random = new Random(5);
+        byte[] data = new byte[1000];
+        random.nextBytes(data);
+        try(Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(data.length);
+            segment.copyFrom(MemorySegment.ofArray(data));
+            for(int from = 0; from < data.length; from += 7) {
+                assertEquals(separators.nextSeparator(data, from, data.length),
+                        separators.nextSeparator(segment, from, data.length));
+            }
+        }
+    }
+
+    @Test
+    void returnsTheEndForEmptyRanges() {
+        byte[] data = " ".getBytes();
+        assertEquals(0, SeparatorSet.DEFAULT.nextSeparator(data, 0, 0));
+        assertEquals(1, SeparatorSet.DEFAULT.nextSeparator(data, 1, 1));
+    }
+
+    @Test
+    void parsesEscapes() {
+        SeparatorSet separators = SeparatorSet.of(" \\n\\t,,");
+        assertArrayEquals(new byte[]{'\t', '\n', ' ', ','}, separators.toBytes());
+        assertEquals("[\\t\\n ,]", separators.toString());
+        assertEquals(SeparatorSet.of(new byte[]{',', ' ', '\n', '\t'}), separators);
+    }
+
+    private static int naive(SeparatorSet separators, byte[] data, int from, int to) {
+        for(int i = from; i < to; i++) {
+            if(separators.isSeparator(data[i])) return i;
+        }
+        return to;
+    }
+}